@@ -4,6 +4,7 @@ plugins {
     java
     application
     id("net.ltgt.errorprone") version "0.8.1"
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 java {
@@ -48,6 +49,24 @@ tasks {
     }
 }
 
+// Storage tests once more with packed index of mem tables
+val testPackedIndex by tasks.registering(Test::class) {
+    description = "Runs storage tests with packed index of mem tables."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    maxHeapSize = "256m"
+    useJUnitPlatform()
+    systemProperty("dao.memTableIndex", "PACKED")
+    filter {
+        includeTestsMatching("ru.mail.polis.dao.*")
+    }
+}
+
+tasks.named("check") {
+    dependsOn(testPackedIndex)
+}
+
 application {
     // Define the main class for the application
     mainClassName = "ru.mail.polis.Cluster"
@@ -66,4 +85,15 @@ tasks.withType<JavaCompile> {
 // Error prone options
 tasks.named<JavaCompile>("compileTestJava") {
     options.errorprone.isEnabled.set(false)
+}
+
+// Benchmarks and code generated by JMH are not checked
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.errorprone.isEnabled.set(false)
+    options.compilerArgs.remove("-Werror")
+}
+
+tasks.named<JavaCompile>("jmhCompileGeneratedClasses") {
+    options.errorprone.isEnabled.set(false)
+    options.compilerArgs.remove("-Werror")
 }
\ No newline at end of file
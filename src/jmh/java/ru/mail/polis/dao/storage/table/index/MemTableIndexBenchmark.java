@@ -0,0 +1,86 @@
+package ru.mail.polis.dao.storage.table.index;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare mem table indexes, run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+public class MemTableIndexBenchmark {
+    private static final int KEY_LENGTH = 16;
+    private static final int SCAN_LENGTH = 100;
+
+    @Param({"SKIP_LIST", "PACKED"})
+    private MemTableIndex.Type type;
+
+    @Param({"100000"})
+    private int size;
+
+    private MemTableIndex index;
+    private ByteBuffer[] keys;
+    private Value value;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        index = MemTableIndex.of(type);
+        value = Value.of(ByteBuffer.allocate(KEY_LENGTH));
+        keys = new ByteBuffer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = randomKey();
+            index.put(keys[i], value);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Value put() {
+        return index.put(randomKey(), value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Value get() {
+        return index.get(keys[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void scan(final Blackhole blackhole) {
+        final Iterator<Map.Entry<ByteBuffer, Value>> iterator =
+                index.iterator(keys[ThreadLocalRandom.current().nextInt(size)]);
+        for (int i = 0; i < SCAN_LENGTH && iterator.hasNext(); i++) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    private static ByteBuffer randomKey() {
+        final byte[] key = new byte[KEY_LENGTH];
+        ThreadLocalRandom.current().nextBytes(key);
+        return ByteBuffer.wrap(key);
+    }
+}
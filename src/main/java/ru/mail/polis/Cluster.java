@@ -18,6 +18,7 @@ package ru.mail.polis;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.client.ClientConfig;
 import ru.mail.polis.dao.DAO;
 import ru.mail.polis.dao.DAOFactory;
 import ru.mail.polis.service.Service;
@@ -49,6 +50,10 @@ public final class Cluster {
             topology.add("http://localhost:" + port);
         }
 
+        // Nodes proxy to each other by persistent connections
+        final ClientConfig clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.POOLED;
+
         // Start nodes
         for (int i = 0; i < PORTS.length; i++) {
             final int port = PORTS[i];
@@ -62,7 +67,8 @@ public final class Cluster {
                     ServiceFactory.create(
                             port,
                             dao,
-                            topology);
+                            topology,
+                            clientConfig);
             storage.start();
             Runtime.getRuntime().addShutdownHook(
                     new Thread(() -> {
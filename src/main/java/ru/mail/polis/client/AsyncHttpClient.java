@@ -1,18 +1,67 @@
 package ru.mail.polis.client;
 
 import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
 import ru.mail.polis.dao.storage.cell.Value;
 
 import java.util.concurrent.CompletableFuture;
 
 public interface AsyncHttpClient {
-    CompletableFuture<Void> upsert(@NotNull final byte[] value, @NotNull final String id, @NotNull final String url);
+    /**
+     * Writes value stamped by coordinator, so all replicas store the same version of it.
+     */
+    CompletableFuture<Void> upsert(@NotNull final byte[] value,
+                                   final long timestamp,
+                                   @NotNull final String id,
+                                   @NotNull final String url);
 
-    CompletableFuture<Void> delete(@NotNull final String id, @NotNull final String url);
+    CompletableFuture<Void> merge(@NotNull final byte[] operand,
+                                  @NotNull final String id,
+                                  @NotNull final MergeOperator operator,
+                                  @NotNull final String url);
+
+    /**
+     * Writes tombstone stamped by coordinator.
+     */
+    CompletableFuture<Void> delete(final long timestamp, @NotNull final String id, @NotNull final String url);
 
     CompletableFuture<Value> get(@NotNull final String id, @NotNull final String url);
 
+    /**
+     * Reads only version of value without its data.
+     */
+    CompletableFuture<Digest> digest(@NotNull final String id, @NotNull final String url);
+
+    /**
+     * Writes present value or tombstone to lagging replica keeping its timestamp.
+     */
+    CompletableFuture<Void> repair(@NotNull final Value value, @NotNull final String id, @NotNull final String url);
+
+    /**
+     * Returns client sharing connections with this one, which sends requests to entities of keyspace.
+     */
+    AsyncHttpClient keyspace(@NotNull final String name);
+
     static AsyncHttpClient create() {
         return new AsyncHttpClientImpl();
     }
+
+    /**
+     * Create client of implementation chosen by config.
+     *
+     * @param config is tuning of client
+     */
+    static AsyncHttpClient create(@NotNull final ClientConfig config) {
+        switch (config.type) {
+            case JAVA_HTTP:
+                return create();
+            case POOLED:
+                return new PooledHttpClient(config);
+            case RPC:
+                return new RpcClient(config);
+            default:
+                throw new IllegalArgumentException("Unknown client type: " + config.type);
+        }
+    }
 }
@@ -1,7 +1,10 @@
 package ru.mail.polis.client;
 
 import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
 import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.utils.BytesUtils;
 import ru.mail.polis.utils.ConstUtils;
 
 import java.net.URI;
@@ -13,28 +16,60 @@ import java.util.concurrent.CompletableFuture;
 public final class AsyncHttpClientImpl implements AsyncHttpClient {
 
     private static final String ENTITY_PATH_ID = "/v0/entity?id=";
+    private static final String MERGE_PARAM = "&merge=";
 
     private final HttpClient client;
+    private final String entityPath;
 
     AsyncHttpClientImpl() {
-        client = HttpClient
+        this(HttpClient
                 .newBuilder()
                 .version(HttpClient.Version.HTTP_2)
-                .build();
+                .build(), ENTITY_PATH_ID);
+    }
+
+    private AsyncHttpClientImpl(@NotNull final HttpClient client,
+                                @NotNull final String entityPath) {
+        this.client = client;
+        this.entityPath = entityPath;
+    }
+
+    @Override
+    public AsyncHttpClient keyspace(@NotNull final String name) {
+        return new AsyncHttpClientImpl(client, "/v0/" + name + "/entity?id=");
     }
 
     @Override
     public CompletableFuture<Void> upsert(@NotNull final byte[] value,
+                                          final long timestamp,
                                           @NotNull final String id,
                                           @NotNull final String url) {
-        final HttpRequest httpRequest = builder(id, url).PUT(ofBytes(value)).build();
+        final HttpRequest httpRequest = builder(id, url)
+                .header(ConstUtils.TIMESTAMP_HEADER, Long.toString(timestamp))
+                .PUT(ofBytes(value))
+                .build();
         return sendAsyncRequest(httpRequest);
     }
 
     @Override
-    public CompletableFuture<Void> delete(@NotNull final String id,
+    public CompletableFuture<Void> merge(@NotNull final byte[] operand,
+                                         @NotNull final String id,
+                                         @NotNull final MergeOperator operator,
+                                         @NotNull final String url) {
+        final HttpRequest httpRequest = builder(id + MERGE_PARAM + operator.alias(), url)
+                .POST(ofBytes(operand))
+                .build();
+        return sendAsyncRequest(httpRequest);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final long timestamp,
+                                          @NotNull final String id,
                                           @NotNull final String url) {
-        final HttpRequest httpRequest = builder(id, url).DELETE().build();
+        final HttpRequest httpRequest = builder(id, url)
+                .header(ConstUtils.TIMESTAMP_HEADER, Long.toString(timestamp))
+                .DELETE()
+                .build();
         return sendAsyncRequest(httpRequest);
     }
 
@@ -46,10 +81,33 @@ public final class AsyncHttpClientImpl implements AsyncHttpClient {
                 .thenApply(Value::fromHttpResponse);
     }
 
+    @Override
+    public CompletableFuture<Digest> digest(@NotNull final String id,
+                                            @NotNull final String url) {
+        final HttpRequest httpRequest = builder(id, url)
+                .header(ConstUtils.DIGEST_HEADER, ConstUtils.PROXY_HEADER_VALUE)
+                .GET()
+                .build();
+        return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding())
+                .thenApply(Digest::fromHttpResponse);
+    }
+
+    @Override
+    public CompletableFuture<Void> repair(@NotNull final Value value,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        final HttpRequest.Builder builder = builder(id, url)
+                .header(ConstUtils.TIMESTAMP_HEADER, Long.toString(value.getTimestamp()));
+        final HttpRequest httpRequest = value.getState() == Value.State.PRESENT
+                ? builder.PUT(ofBytes(BytesUtils.body(value.getData()))).build()
+                : builder.DELETE().build();
+        return sendAsyncRequest(httpRequest);
+    }
+
     private HttpRequest.Builder builder(@NotNull final String id,
                                         @NotNull final String url) {
         return HttpRequest.newBuilder()
-                .uri(URI.create(url + ENTITY_PATH_ID + id))
+                .uri(URI.create(url + entityPath + id))
                 .header(ConstUtils.PROXY_HEADER_NAME, ConstUtils.PROXY_HEADER_VALUE)
                 .version(HttpClient.Version.HTTP_2);
     }
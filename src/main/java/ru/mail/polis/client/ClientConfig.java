@@ -0,0 +1,169 @@
+package ru.mail.polis.client;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tuning of client of other nodes, chosen at startup of service.
+ */
+public final class ClientConfig {
+
+    /**
+     * Implementation of client.
+     */
+    public Type type = Type.JAVA_HTTP;
+
+    /**
+     * Max count of persistent connections to each node for {@link Type#POOLED}.
+     */
+    public int poolSize = 16;
+
+    /**
+     * Count of threads waiting for responses of all nodes for {@link Type#POOLED}
+     * and executing requests of other nodes for {@link Type#RPC}.
+     */
+    public int workers = 32;
+
+    /**
+     * Timeout of connect and read of each request in milliseconds for {@link Type#POOLED} and {@link Type#RPC},
+     * also timeout of opening range streams of other nodes.
+     */
+    public int timeoutMs = 1000;
+
+    /**
+     * Port of {@link ru.mail.polis.service.rpc.RpcServer} for {@link Type#RPC}, zero for any free port.
+     */
+    public int rpcPort;
+
+    /**
+     * Max count of writes to one node sent in one request for {@link Type#RPC}, 1 disables batching.
+     */
+    public int batchSize = 64;
+
+    /**
+     * Max time the first write of batch waits for others in microseconds for {@link Type#RPC}.
+     */
+    public long batchDelayMicros = 200;
+
+    /**
+     * Read first only from ack replicas of from, the rest are queried when they fail or are slow.
+     */
+    public boolean readFromAck;
+
+    /**
+     * Percentile of latency of replica after which read from it is hedged by one more replica,
+     * zero disables hedging.
+     */
+    public double hedgePercentile = 95;
+
+    /**
+     * Delay of hedged read in milliseconds until latency of replica is observed.
+     */
+    public long hedgeDelayMs = 10;
+
+    /**
+     * Only one replica of read sends data, the rest send digests of value,
+     * data is read again only from the newest replica if its digest differs.
+     */
+    public boolean digestReads;
+
+    /**
+     * How replicas which answered read with stale value are repaired.
+     */
+    public ReadRepair readRepair = ReadRepair.NONE;
+
+    /**
+     * Probability of repair of each read from 0 to 1.
+     */
+    public double readRepairChance = 1;
+
+    /**
+     * Directory of hints of writes failed by replicas, null disables hinted handoff.
+     */
+    public Path hintsDirectory;
+
+    /**
+     * Age of hint in milliseconds after which it is dropped instead of replay.
+     */
+    public long hintTtlMs = TimeUnit.HOURS.toMillis(3);
+
+    /**
+     * Period of replay of hints in milliseconds.
+     */
+    public long hintReplayIntervalMs = 10_000;
+
+    /**
+     * Max rate of replayed hints to each node.
+     */
+    public int hintsPerSecond = 1000;
+
+    /**
+     * Period of anti-entropy repair with the next peer in milliseconds, zero disables it.
+     */
+    public long antiEntropyIntervalMs;
+
+    /**
+     * Depth of merkle trees of anti-entropy repair, each leaf covers 2^(32 - depth) tokens of ring.
+     */
+    public int merkleDepth = 10;
+
+    /**
+     * Max rate of rows scanned by anti-entropy repair.
+     */
+    public int repairRowsPerSecond = 100_000;
+
+    /**
+     * Timeout of requests of anti-entropy repair in milliseconds, peer scans its storage to answer.
+     */
+    public int repairTimeoutMs = 60_000;
+
+    /**
+     * Max rows scanned by each node for one request of anti-entropy repair, so one repair covers
+     * a bounded range of keys and entries are pulled by pages.
+     */
+    public int repairRangeRows = 100_000;
+
+    /**
+     * Max differing leaves of merkle tree whose entries are pulled by one request.
+     */
+    public int repairLeavesPerRequest = 64;
+
+    /**
+     * Max time of waiting for the next part of range stream of other node in milliseconds.
+     */
+    public int rangeReadTimeoutMs = 10_000;
+
+    public static ClientConfig defaults() {
+        return new ClientConfig();
+    }
+
+    public enum Type {
+        /**
+         * {@link java.net.http.HttpClient} shared by all nodes.
+         */
+        JAVA_HTTP,
+        /**
+         * Pools of persistent one-nio HTTP/1.1 connections, one pool per node.
+         */
+        POOLED,
+        /**
+         * Binary protocol over one connection per node, nodes serve it besides HTTP.
+         */
+        RPC
+    }
+
+    public enum ReadRepair {
+        /**
+         * Replicas converge only by later writes.
+         */
+        NONE,
+        /**
+         * Newest value is written to stale replicas after response is sent.
+         */
+        ASYNC,
+        /**
+         * Response waits until newest value is written to stale replicas.
+         */
+        BLOCKING
+    }
+}
@@ -0,0 +1,140 @@
+package ru.mail.polis.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import one.nio.http.HttpClient;
+import one.nio.http.HttpException;
+import one.nio.http.Response;
+import one.nio.net.ConnectionString;
+import one.nio.pool.PoolException;
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.utils.BytesUtils;
+import ru.mail.polis.utils.ConstUtils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Client keeping pool of persistent one-nio connections to each node.
+ * Request is a few strings written to connection taken from pool, so there are
+ * no URI parsing and request builders per call. One-nio connections do not pipeline,
+ * concurrency of node is bounded by size of its pool.
+ */
+public final class PooledHttpClient implements AsyncHttpClient {
+
+    private static final String ENTITY_PATH_ID = "/v0/entity?id=";
+    private static final String MERGE_PARAM = "&merge=";
+
+    private final ConcurrentMap<String, HttpClient> pools;
+    private final Executor workers;
+    private final String entityPath;
+    private final String params;
+
+    PooledHttpClient(@NotNull final ClientConfig config) {
+        this(new ConcurrentHashMap<>(), Executors.newFixedThreadPool(config.workers,
+                new ThreadFactoryBuilder().setNameFormat("pooled-client-%d").setDaemon(true).build()),
+                ENTITY_PATH_ID,
+                "?timeout=" + config.timeoutMs + "&clientMaxPoolSize=" + config.poolSize);
+    }
+
+    private PooledHttpClient(@NotNull final ConcurrentMap<String, HttpClient> pools,
+                             @NotNull final Executor workers,
+                             @NotNull final String entityPath,
+                             @NotNull final String params) {
+        this.pools = pools;
+        this.workers = workers;
+        this.entityPath = entityPath;
+        this.params = params;
+    }
+
+    @Override
+    public AsyncHttpClient keyspace(@NotNull final String name) {
+        return new PooledHttpClient(pools, workers, "/v0/" + name + "/entity?id=", params);
+    }
+
+    @Override
+    public CompletableFuture<Void> upsert(@NotNull final byte[] value,
+                                          final long timestamp,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        final String stamp = ConstUtils.TIMESTAMP_HEADER + ": " + timestamp;
+        return call(url, pool -> pool.put(entityPath + id, value, ConstUtils.PROXY_HEADER, stamp))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> merge(@NotNull final byte[] operand,
+                                         @NotNull final String id,
+                                         @NotNull final MergeOperator operator,
+                                         @NotNull final String url) {
+        final String path = entityPath + id + MERGE_PARAM + operator.alias();
+        return call(url, pool -> pool.post(path, operand, ConstUtils.PROXY_HEADER))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final long timestamp,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        final String stamp = ConstUtils.TIMESTAMP_HEADER + ": " + timestamp;
+        return call(url, pool -> pool.delete(entityPath + id, ConstUtils.PROXY_HEADER, stamp))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Value> get(@NotNull final String id,
+                                        @NotNull final String url) {
+        return call(url, pool -> pool.get(entityPath + id, ConstUtils.PROXY_HEADER))
+                .thenApply(Value::fromResponse);
+    }
+
+    @Override
+    public CompletableFuture<Digest> digest(@NotNull final String id,
+                                            @NotNull final String url) {
+        return call(url, pool -> pool.get(entityPath + id, ConstUtils.PROXY_HEADER, ConstUtils.DIGEST_REQUEST_HEADER))
+                .thenApply(Digest::fromResponse);
+    }
+
+    @Override
+    public CompletableFuture<Void> repair(@NotNull final Value value,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        final String timestamp = ConstUtils.TIMESTAMP_HEADER + ": " + value.getTimestamp();
+        if (value.getState() == Value.State.PRESENT) {
+            final byte[] body = BytesUtils.body(value.getData());
+            return call(url, pool -> pool.put(entityPath + id, body, ConstUtils.PROXY_HEADER, timestamp))
+                    .thenApply(response -> null);
+        }
+        return call(url, pool -> pool.delete(entityPath + id, ConstUtils.PROXY_HEADER, timestamp))
+                .thenApply(response -> null);
+    }
+
+    private CompletableFuture<Response> call(@NotNull final String url,
+                                             @NotNull final Call call) {
+        final HttpClient pool = pools.computeIfAbsent(url,
+                node -> new HttpClient(new ConnectionString(node + params)));
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.invoke(pool);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (PoolException | IOException | HttpException e) {
+                throw new CompletionException(e);
+            }
+        }, workers);
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        Response invoke(@NotNull HttpClient pool)
+                throws InterruptedException, PoolException, IOException, HttpException;
+    }
+}
@@ -0,0 +1,360 @@
+package ru.mail.polis.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import one.nio.http.HttpClient;
+import one.nio.http.Response;
+import one.nio.net.ConnectionString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.service.rpc.RpcProtocol;
+import ru.mail.polis.service.rpc.RpcProtocol.Operation;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Client of other nodes by binary {@link RpcProtocol} over one long-lived connection per node,
+ * requests are multiplexed by their ids. Port of node is discovered once by HTTP.
+ * Writes to the same node are batched for {@link ClientConfig#batchDelayMicros} or
+ * until {@link ClientConfig#batchSize} of them are accumulated, each write still gets its own ack.
+ */
+public final class RpcClient implements AsyncHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcClient.class);
+    private static final ThreadFactory READERS = new ThreadFactoryBuilder()
+            .setNameFormat("rpc-client-reader-%d").setDaemon(true).build();
+    private static final ScheduledExecutorService BATCH_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("rpc-client-batch-%d").setDaemon(true).build());
+
+    private final ConcurrentMap<String, CompletableFuture<Connection>> connections;
+    private final Executor connector;
+    private final ClientConfig config;
+    private final byte[] keyspace;
+
+    RpcClient(@NotNull final ClientConfig config) {
+        this(new ConcurrentHashMap<>(), Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("rpc-client-connector-%d").setDaemon(true).build()),
+                config, new byte[0]);
+    }
+
+    private RpcClient(@NotNull final ConcurrentMap<String, CompletableFuture<Connection>> connections,
+                      @NotNull final Executor connector,
+                      @NotNull final ClientConfig config,
+                      @NotNull final byte[] keyspace) {
+        this.connections = connections;
+        this.connector = connector;
+        this.config = config;
+        this.keyspace = keyspace;
+    }
+
+    @Override
+    public AsyncHttpClient keyspace(@NotNull final String name) {
+        return new RpcClient(connections, connector, config, name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public CompletableFuture<Void> upsert(@NotNull final byte[] value,
+                                          final long timestamp,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        return call(url, RpcProtocol.UPSERT, (byte) 0, id, RpcProtocol.stamped(timestamp, value))
+                .thenApply(RpcClient::ack);
+    }
+
+    @Override
+    public CompletableFuture<Void> merge(@NotNull final byte[] operand,
+                                         @NotNull final String id,
+                                         @NotNull final MergeOperator operator,
+                                         @NotNull final String url) {
+        return call(url, RpcProtocol.MERGE, operator.id(), id, operand).thenApply(RpcClient::ack);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final long timestamp,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        return call(url, RpcProtocol.DELETE, (byte) 0, id, RpcProtocol.stamped(timestamp, null))
+                .thenApply(RpcClient::ack);
+    }
+
+    @Override
+    public CompletableFuture<Value> get(@NotNull final String id,
+                                        @NotNull final String url) {
+        return call(url, RpcProtocol.GET, (byte) 0, id, null).thenApply(RpcClient::value);
+    }
+
+    @Override
+    public CompletableFuture<Digest> digest(@NotNull final String id,
+                                            @NotNull final String url) {
+        return call(url, RpcProtocol.DIGEST, (byte) 0, id, null).thenApply(RpcClient::digest);
+    }
+
+    @Override
+    public CompletableFuture<Void> repair(@NotNull final Value value,
+                                          @NotNull final String id,
+                                          @NotNull final String url) {
+        final byte state = value.getState() == Value.State.PRESENT ? RpcProtocol.PRESENT : RpcProtocol.REMOVED;
+        return call(url, RpcProtocol.REPAIR, state, id, RpcProtocol.repairValue(value)).thenApply(RpcClient::ack);
+    }
+
+    private CompletableFuture<ByteBuffer> call(@NotNull final String url,
+                                               final byte operation,
+                                               final byte operator,
+                                               @NotNull final String id,
+                                               @Nullable final byte[] value) {
+        final Operation request = new Operation(operation, operator, keyspace, BytesUtils.getBytesFromKey(id), value);
+        final boolean batched = operation != RpcProtocol.GET && operation != RpcProtocol.DIGEST
+                && config.batchSize > 1;
+        return connection(url)
+                .thenCompose(connection -> batched ? connection.enqueue(request) : connection.send(request))
+                .orTimeout(config.timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    @NotNull
+    private CompletableFuture<Connection> connection(@NotNull final String url) {
+        final CompletableFuture<Connection> connection = connections.computeIfAbsent(url,
+                node -> CompletableFuture.supplyAsync(() -> connect(node), connector));
+        // Failed connection is retried by the next request
+        connection.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                connections.remove(url, connection);
+            }
+        });
+        return connection;
+    }
+
+    @NotNull
+    private Connection connect(@NotNull final String url) {
+        try {
+            final URL node = new URL(url);
+            final int port = discover(url);
+            final SocketChannel channel = SocketChannel.open();
+            channel.socket().connect(new InetSocketAddress(node.getHost(), port), config.timeoutMs);
+            channel.socket().setTcpNoDelay(true);
+            final Connection connection = new Connection(url, channel);
+            READERS.newThread(connection::read).start();
+            return connection;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private int discover(@NotNull final String url) throws IOException {
+        final HttpClient http = new HttpClient(new ConnectionString(url + "?timeout=" + config.timeoutMs));
+        try {
+            final Response response = http.get("/v0/rpc");
+            if (response.getStatus() != 200) {
+                throw new IOException("Node " + url + " does not serve rpc");
+            }
+            return Integer.parseInt(new String(response.getBody(), StandardCharsets.UTF_8).trim());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Discovery of " + url + " is interrupted", e);
+        } catch (Exception e) {
+            throw new IOException("Can't discover rpc port of " + url, e);
+        } finally {
+            http.close();
+        }
+    }
+
+    @Nullable
+    private static Void ack(@NotNull final ByteBuffer response) {
+        final byte status = response.get();
+        if (status != RpcProtocol.ACK) {
+            throw new IllegalStateException("Request is failed by replica, status " + status);
+        }
+        return null;
+    }
+
+    @NotNull
+    private static Value value(@NotNull final ByteBuffer response) {
+        final byte status = response.get();
+        final long timestamp = response.getLong();
+        switch (status) {
+            case RpcProtocol.PRESENT:
+                return new Value(response.slice(), Value.State.PRESENT, timestamp);
+            case RpcProtocol.REMOVED:
+                return new Value(null, Value.State.REMOVED, timestamp);
+            case RpcProtocol.ABSENT:
+                return Value.absent();
+            default:
+                throw new IllegalStateException("Request is failed by replica, status " + status);
+        }
+    }
+
+    @NotNull
+    private static Digest digest(@NotNull final ByteBuffer response) {
+        final byte status = response.get();
+        final long timestamp = response.getLong();
+        switch (status) {
+            case RpcProtocol.PRESENT:
+                return Digest.of(Value.State.PRESENT, timestamp, response.getInt());
+            case RpcProtocol.REMOVED:
+                return Digest.of(Value.State.REMOVED, timestamp, 0);
+            case RpcProtocol.ABSENT:
+                return Digest.of(Value.State.ABSENT, timestamp, 0);
+            default:
+                throw new IllegalStateException("Request is failed by replica, status " + status);
+        }
+    }
+
+    /**
+     * Connection to node with requests waiting for responses.
+     */
+    private final class Connection {
+        private final String url;
+        private final SocketChannel channel;
+        private final AtomicLong ids = new AtomicLong();
+        private final Map<Long, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+        private final List<Operation> batch = new ArrayList<>();
+        private final List<CompletableFuture<ByteBuffer>> batchResponses = new ArrayList<>();
+
+        Connection(@NotNull final String url,
+                   @NotNull final SocketChannel channel) {
+            this.url = url;
+            this.channel = channel;
+        }
+
+        @NotNull
+        CompletableFuture<ByteBuffer> send(@NotNull final Operation operation) {
+            return send(id -> RpcProtocol.request(id, operation));
+        }
+
+        /**
+         * Add write to batch, the first write of batch starts its timer.
+         *
+         * @return response with status of this write only
+         */
+        @NotNull
+        CompletableFuture<ByteBuffer> enqueue(@NotNull final Operation operation) {
+            final CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+            final int size;
+            synchronized (batch) {
+                batch.add(operation);
+                batchResponses.add(response);
+                size = batch.size();
+            }
+            if (size >= config.batchSize) {
+                flush();
+            } else if (size == 1) {
+                BATCH_TIMER.schedule(this::flush, config.batchDelayMicros, TimeUnit.MICROSECONDS);
+            }
+            return response;
+        }
+
+        private void flush() {
+            final List<Operation> operations;
+            final List<CompletableFuture<ByteBuffer>> responses;
+            synchronized (batch) {
+                // Batch may be already sent when it is full before its timer
+                if (batch.isEmpty()) {
+                    return;
+                }
+                operations = new ArrayList<>(batch);
+                responses = new ArrayList<>(batchResponses);
+                batch.clear();
+                batchResponses.clear();
+            }
+            if (operations.size() == 1) {
+                final CompletableFuture<ByteBuffer> response = responses.get(0);
+                send(operations.get(0)).whenComplete((result, throwable) -> complete(response, result, throwable));
+                return;
+            }
+            send(id -> RpcProtocol.batch(id, operations)).whenComplete((result, throwable) -> {
+                final Throwable failure = throwable == null && result.get() != RpcProtocol.ACK
+                        ? new IllegalStateException("Batch is failed by replica") : throwable;
+                if (failure != null) {
+                    for (final CompletableFuture<ByteBuffer> response : responses) {
+                        response.completeExceptionally(failure);
+                    }
+                    return;
+                }
+                result.getLong();
+                for (final CompletableFuture<ByteBuffer> response : responses) {
+                    response.complete(ByteBuffer.wrap(new byte[]{result.get()}));
+                }
+            });
+        }
+
+        @NotNull
+        private CompletableFuture<ByteBuffer> send(@NotNull final LongFunction<ByteBuffer> request) {
+            final long id = ids.incrementAndGet();
+            final CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+            pending.put(id, response);
+            // Response itself times out, so id of request without answer is removed from pending
+            response.orTimeout(config.timeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((result, throwable) -> pending.remove(id));
+            try {
+                synchronized (this) {
+                    RpcProtocol.write(channel, request.apply(id));
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+            return response;
+        }
+
+        void read() {
+            try {
+                ByteBuffer frame;
+                while ((frame = RpcProtocol.read(channel)) != null) {
+                    final CompletableFuture<ByteBuffer> response = pending.remove(frame.getLong());
+                    if (response != null) {
+                        response.complete(frame);
+                    }
+                }
+                close(new IOException("Connection is closed by node"));
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        private void complete(@NotNull final CompletableFuture<ByteBuffer> response,
+                              @Nullable final ByteBuffer result,
+                              @Nullable final Throwable throwable) {
+            if (throwable == null) {
+                response.complete(result);
+            } else {
+                response.completeExceptionally(throwable);
+            }
+        }
+
+        private void close(@NotNull final IOException cause) {
+            // The next request reconnects
+            connections.computeIfPresent(url, (node, current) ->
+                    !current.isCompletedExceptionally() && current.getNow(null) == this ? null : current);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.info("Error while close rpc connection : {}", e.getMessage());
+            }
+            for (final CompletableFuture<ByteBuffer> response : pending.values()) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.mail.polis.dao;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator holding resources of storage until it is exhausted or closed.
+ * Closing is needed only if iteration is stopped before the end.
+ */
+public interface CloseableIterator<E> extends Iterator<E>, Closeable {
+
+    @Override
+    void close();
+}
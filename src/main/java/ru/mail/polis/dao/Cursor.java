@@ -0,0 +1,42 @@
+package ru.mail.polis.dao;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over records in ascending order of keys, so scan does not allocate record per row.
+ * Key and value are views owned by caller until the next step, it may move their position and limit.
+ * Cursor holds resources of storage until it is exhausted or closed, exhausted cursor can't seek.
+ */
+public interface Cursor extends Closeable {
+
+    /**
+     * Move cursor before the first record with key not less than "from",
+     * the next step moves it to that record.
+     */
+    void seek(@NotNull ByteBuffer from);
+
+    /**
+     * Move cursor to the next record.
+     *
+     * @return false if there are no more records
+     */
+    boolean next();
+
+    /**
+     * Key of current record.
+     */
+    @NotNull
+    ByteBuffer key();
+
+    /**
+     * Value of current record.
+     */
+    @NotNull
+    ByteBuffer value();
+
+    @Override
+    void close();
+}
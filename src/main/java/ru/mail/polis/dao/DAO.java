@@ -20,12 +20,17 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.Record;
 import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
 import ru.mail.polis.exception.NoSuchElementExceptionLite;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -41,6 +46,7 @@ public interface DAO extends Closeable {
      * in <b>ascending</b> order according to {@link Record#compareTo(Record)}.
      * N.B. The iterator should be obtained as fast as possible, e.g.
      * one should not "seek" to start point ("from" element) in linear time ;)
+     * If it is {@link CloseableIterator}, it should be closed when iteration is stopped before the end.
      */
     @NotNull
     Iterator<Record> iterator(@NotNull ByteBuffer from) throws IOException;
@@ -67,6 +73,18 @@ public interface DAO extends Closeable {
         return Iters.until(iterator(from), bound);
     }
 
+    /**
+     * Provides cursor over records starting at "from" key (inclusive)
+     * until given "to" key (exclusive), the first step moves it to the first record.
+     * Cursor should be closed when scan is stopped before the end.
+     */
+    @NotNull
+    default Cursor cursor(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to) throws IOException {
+        return new IteratorCursor(this, from, to);
+    }
+
     /**
      * Obtains {@link Record} corresponding to given key.
      *
@@ -99,6 +117,27 @@ public interface DAO extends Closeable {
      */
     void remove(@NotNull ByteBuffer key) throws IOException;
 
+    /**
+     * Merges operand into value by given key without reading it.
+     * Operand is combined with current value by operator lazily on read.
+     */
+    default void merge(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer operand,
+            @NotNull MergeOperator operator) throws IOException {
+        throw new UnsupportedOperationException("Merge is not supported");
+    }
+
+    /**
+     * Writes value or tombstone of another replica with its original timestamp.
+     * Nothing is written if storage already has newer cell of the key.
+     */
+    default void repair(
+            @NotNull ByteBuffer key,
+            @NotNull Value value) throws IOException {
+        throw new UnsupportedOperationException("Repair is not supported");
+    }
+
     /**
      * Performs compaction.
      */
@@ -106,5 +145,40 @@ public interface DAO extends Closeable {
         // Implement me when you get to stage 3
     }
 
-    Iterator<Cell> latestIterator(@NotNull final ByteBuffer key);
+    /**
+     * Returns storage of keyspace with given name or null if there is no such keyspace.
+     */
+    @Nullable
+    default DAO keyspace(@NotNull String name) {
+        return null;
+    }
+
+    /**
+     * Loads stream of records sorted by key bypassing write path.
+     */
+    default void ingest(@NotNull InputStream sorted) throws IOException {
+        throw new UnsupportedOperationException("Ingestion is not supported");
+    }
+
+    /**
+     * Creates consistent copy of storage with given name without stopping it.
+     */
+    default void checkpoint(@NotNull String name) throws IOException {
+        throw new UnsupportedOperationException("Checkpoint is not supported");
+    }
+
+    /**
+     * Returns current values of storage metrics by their names.
+     */
+    @NotNull
+    default Map<String, Long> metrics() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Provides iterator over latest cells including removed ones starting at "from" key (inclusive).
+     * Iterator holds storage files until it is exhausted or closed.
+     */
+    @NotNull
+    CloseableIterator<Cell> latestIterator(@NotNull final ByteBuffer key);
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 
 import org.jetbrains.annotations.NotNull;
 import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
 
 /**
  * Custom {@link DAO} factory.
@@ -29,7 +30,8 @@ import ru.mail.polis.dao.storage.LSMDao;
  */
 public final class DAOFactory {
     static final long MAX_HEAP = 256 * 1024 * 1024;
-    private static final long FLUSH_LIMIT = MAX_HEAP / 60;
+    private static final long MEMORY_BUDGET = MAX_HEAP / 4;
+    private static final long FLUSH_LIMIT = MEMORY_BUDGET / 4;
 
     private DAOFactory() {
         // Not instantiatable
@@ -43,10 +45,41 @@ public final class DAOFactory {
      */
     @NotNull
     public static DAO create(@NotNull final File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(FLUSH_LIMIT);
+        config.memoryBudget = MEMORY_BUDGET;
+        return create(data, config);
+    }
+
+    /**
+     * Construct a {@link DAO} instance with custom tuning.
+     *
+     * @param data   local disk folder to persist the data to
+     * @param config tuning of storage
+     * @return a storage instance
+     */
+    @NotNull
+    public static DAO create(@NotNull final File data,
+                             @NotNull final StorageConfig config) throws IOException {
         if (Runtime.getRuntime().maxMemory() > MAX_HEAP) {
             throw new IllegalStateException("The heap is too big. Consider setting Xmx.");
         }
 
+        checkDirectory(data);
+        checkExtraDirectories(config);
+
+        return new LSMDao(data, config);
+    }
+
+    private static void checkExtraDirectories(@NotNull final StorageConfig config) {
+        for (final File extra : config.extraDirectories) {
+            checkDirectory(extra);
+        }
+        for (final StorageConfig keyspace : config.keyspaces.values()) {
+            checkExtraDirectories(keyspace);
+        }
+    }
+
+    private static void checkDirectory(@NotNull final File data) {
         if (!data.exists()) {
             throw new IllegalArgumentException("Path doesn't exist: " + data);
         }
@@ -54,7 +87,5 @@ public final class DAOFactory {
         if (!data.isDirectory()) {
             throw new IllegalArgumentException("Path is not a directory: " + data);
         }
-
-        return new LSMDao(data, FLUSH_LIMIT);
     }
 }
@@ -0,0 +1,68 @@
+package ru.mail.polis.dao;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Cursor over range iterator of storage without cursors of its own, allocates record per row.
+ */
+final class IteratorCursor implements Cursor {
+    private final DAO dao;
+    private final ByteBuffer to;
+    private Iterator<Record> records;
+    private Record current;
+
+    IteratorCursor(@NotNull final DAO dao,
+                   @NotNull final ByteBuffer from,
+                   @Nullable final ByteBuffer to) {
+        this.dao = dao;
+        this.to = to;
+        seek(from);
+    }
+
+    @Override
+    public void seek(@NotNull final ByteBuffer from) {
+        close();
+        try {
+            records = dao.range(from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        current = null;
+    }
+
+    @Override
+    public boolean next() {
+        if (!records.hasNext()) {
+            current = null;
+            return false;
+        }
+        current = records.next();
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return current.getKey();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        return current.getValue();
+    }
+
+    @Override
+    public void close() {
+        if (records instanceof CloseableIterator) {
+            ((CloseableIterator<Record>) records).close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.mail.polis.dao.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Directories of storage on different disks, new tables are spread over them.
+ * The first one is primary, it keeps value log and checkpoints.
+ */
+public final class DataDirectories {
+
+    private final List<File> directories;
+    private final Placement placement;
+
+    /**
+     * Create directories of storage.
+     *
+     * @param primary   is the base directory of storage
+     * @param extra     is additional directories for tables
+     * @param placement is the policy of choice of directory for new table
+     */
+    DataDirectories(@NotNull final File primary,
+                    @NotNull final File[] extra,
+                    @NotNull final Placement placement) {
+        final List<File> all = new ArrayList<>(extra.length + 1);
+        all.add(primary);
+        all.addAll(Arrays.asList(extra));
+        this.directories = Collections.unmodifiableList(all);
+        this.placement = placement;
+    }
+
+    @NotNull
+    public File primary() {
+        return directories.get(0);
+    }
+
+    @NotNull
+    public List<File> all() {
+        return directories;
+    }
+
+    /**
+     * Choose directory for new table.
+     *
+     * @param generation is generation of table, round robin goes by it, so it continues after restart
+     */
+    @NotNull
+    public File next(final long generation) {
+        if (directories.size() == 1) {
+            return primary();
+        }
+        switch (placement) {
+            case FREE_SPACE:
+                return Collections.max(directories, Comparator.comparingLong(File::getUsableSpace));
+            case ROUND_ROBIN:
+                return directories.get((int) Math.floorMod(generation, (long) directories.size()));
+            default:
+                throw new IllegalStateException("Unknown placement: " + placement);
+        }
+    }
+
+    public enum Placement {
+        ROUND_ROBIN,
+        FREE_SPACE
+    }
+}
@@ -0,0 +1,222 @@
+package ru.mail.polis.dao.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Policy of fsync for new files of storage and their directory entries.
+ * Files are synced before they are renamed to their final names,
+ * directories are synced after renames. Batched policy delays renames until
+ * files are synced, so final names never point to torn data after crash.
+ */
+public final class Durability implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(Durability.class);
+
+    /**
+     * How writes of storage files reach disk.
+     */
+    public enum Policy {
+        /**
+         * Every new file and directory entry is synced before write is completed.
+         */
+        SYNC,
+        /**
+         * Syncs are batched by timer, tables written since the last batch may be lost.
+         * Tables are renamed to their final names by the batch after their data is synced.
+         * Compaction is still synced at once, because it deletes replaced tables.
+         */
+        ASYNC,
+        /**
+         * Nothing is synced, e.g. for ephemeral caches.
+         */
+        NONE
+    }
+
+    private final Policy policy;
+    private final ScheduledExecutorService timer;
+    private final Queue<FileChannel> pendingFiles = new ConcurrentLinkedQueue<>();
+    private final Queue<Install> pendingInstalls = new ConcurrentLinkedQueue<>();
+    private final Set<Path> pendingDirectories = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Create fsync policy of storage.
+     *
+     * @param policy     is policy of syncs
+     * @param intervalMs is period of batched syncs for {@link Policy#ASYNC}
+     */
+    public Durability(@NotNull final Policy policy,
+                      final long intervalMs) {
+        this.policy = policy;
+        if (policy == Policy.ASYNC) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("fsync-timer-%d").setDaemon(true).build());
+            timer.scheduleWithFixedDelay(this::syncPending, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Make data of file durable.
+     *
+     * @param file   is file written by storage
+     * @param urgent is true if it must be done at once even for {@link Policy#ASYNC}
+     */
+    public void file(@NotNull final Path file,
+                     final boolean urgent) throws IOException {
+        if (policy == Policy.NONE) {
+            return;
+        }
+        // Channel keeps file for batched sync even if it is renamed
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        if (policy == Policy.SYNC || urgent) {
+            try (FileChannel toSync = channel) {
+                force(toSync);
+            }
+        } else {
+            pendingFiles.add(channel);
+        }
+    }
+
+    /**
+     * Rename written file to its final name and make both durable.
+     * Batched policy renames file only after its data is synced by batch,
+     * file stays under written name until then.
+     *
+     * @param written is file written by storage
+     * @param target  is the final name of file
+     * @param urgent  is true if it must be done at once even for {@link Policy#ASYNC}
+     */
+    public void install(@NotNull final Path written,
+                        @NotNull final Path target,
+                        final boolean urgent) throws IOException {
+        if (policy == Policy.ASYNC && !urgent) {
+            pendingInstalls.add(new Install(FileChannel.open(written, StandardOpenOption.WRITE), written, target));
+            return;
+        }
+        file(written, urgent);
+        Files.move(written, target, StandardCopyOption.ATOMIC_MOVE);
+        directory(target.getParent(), urgent);
+    }
+
+    /**
+     * Make entries of directory durable after files are created or renamed in it.
+     *
+     * @param directory is directory of storage
+     * @param urgent    is true if it must be done at once even for {@link Policy#ASYNC}
+     */
+    public void directory(@NotNull final Path directory,
+                          final boolean urgent) throws IOException {
+        if (policy == Policy.NONE) {
+            return;
+        }
+        if (policy == Policy.SYNC || urgent) {
+            syncFiles();
+            syncDirectory(directory);
+        } else {
+            pendingDirectories.add(directory);
+        }
+    }
+
+    @NotNull
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public int pending() {
+        return pendingFiles.size() + pendingInstalls.size() + pendingDirectories.size();
+    }
+
+    /**
+     * Sync batched files, complete their renames and sync directories at once,
+     * e.g. before names of installed files are used.
+     */
+    public synchronized void sync() throws IOException {
+        syncFiles();
+        Install install;
+        while ((install = pendingInstalls.poll()) != null) {
+            // Files queued before the install, e.g. value log it points to, are synced before its rename
+            syncFiles();
+            try (FileChannel toSync = install.channel) {
+                force(toSync);
+            }
+            Files.move(install.written, install.target, StandardCopyOption.ATOMIC_MOVE);
+            pendingDirectories.add(install.target.getParent());
+        }
+        for (final Path directory : pendingDirectories) {
+            pendingDirectories.remove(directory);
+            syncDirectory(directory);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        syncPending();
+    }
+
+    private void syncPending() {
+        try {
+            sync();
+        } catch (IOException e) {
+            logger.error("Error while sync files : ", e);
+        }
+    }
+
+    private synchronized void syncFiles() throws IOException {
+        // Files go before directories, so renamed entries never point to unsynced data
+        FileChannel channel;
+        while ((channel = pendingFiles.poll()) != null) {
+            try (FileChannel toSync = channel) {
+                force(toSync);
+            }
+        }
+    }
+
+    private void syncDirectory(@NotNull final Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            force(channel);
+        }
+    }
+
+    private void force(@NotNull final FileChannel channel) throws IOException {
+        final long start = System.nanoTime();
+        channel.force(true);
+        latency.record(System.nanoTime() - start);
+    }
+
+    private static final class Install {
+        private final FileChannel channel;
+        private final Path written;
+        private final Path target;
+
+        Install(@NotNull final FileChannel channel,
+                @NotNull final Path written,
+                @NotNull final Path target) {
+            this.channel = channel;
+            this.written = written;
+            this.target = target;
+        }
+    }
+}
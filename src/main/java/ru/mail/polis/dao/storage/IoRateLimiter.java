@@ -0,0 +1,146 @@
+package ru.mail.polis.dao.storage;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Token bucket of bytes shared by background writers (flush and compaction).
+ * In auto tuning mode budget is raised while flush backlog grows and
+ * lowered while foreground reads are much slower than usual.
+ */
+public final class IoRateLimiter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoRateLimiter.class);
+    private static final IoRateLimiter UNLIMITED = new IoRateLimiter(0, false, () -> 0);
+
+    private static final long TUNE_PERIOD_MS = 1000;
+    private static final double FAST_ALPHA = 0.3;
+    private static final double SLOW_ALPHA = 0.02;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double RAISE = 1.5;
+    private static final double LOWER = 0.75;
+    private static final double TUNE_RANGE = 10.0;
+
+    private final RateLimiter limiter;
+    private final IntSupplier backlog;
+    private final ScheduledExecutorService tuner;
+    private final double minRate;
+    private final double maxRate;
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+
+    private double fastLatency;
+    private double slowLatency;
+    private int lastBacklog;
+
+    /**
+     * Create rate limiter of background I/O.
+     *
+     * @param bytesPerSecond is the budget of background writes, zero is unlimited
+     * @param autoTune       is true if budget is tuned by backlog and foreground latency
+     * @param backlog        is number of mem tables waiting for flush
+     */
+    public IoRateLimiter(final long bytesPerSecond,
+                         final boolean autoTune,
+                         @NotNull final IntSupplier backlog) {
+        this.backlog = backlog;
+        this.limiter = bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null;
+        this.minRate = bytesPerSecond / TUNE_RANGE;
+        this.maxRate = bytesPerSecond * TUNE_RANGE;
+        if (limiter != null && autoTune) {
+            tuner = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("io-rate-tuner-%d").setDaemon(true).build());
+            tuner.scheduleAtFixedRate(this::tune, TUNE_PERIOD_MS, TUNE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        } else {
+            tuner = null;
+        }
+    }
+
+    /**
+     * Limiter witch never waits.
+     */
+    @NotNull
+    public static IoRateLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Wait until bytes may be written.
+     *
+     * @param bytes is count of bytes witch will be written
+     */
+    public void acquire(final int bytes) {
+        if (limiter == null || bytes <= 0) {
+            return;
+        }
+        final double slept = limiter.acquire(bytes);
+        throttledNanos.add((long) (slept * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * Record latency of foreground read for auto tuning.
+     *
+     * @param nanos is latency of read
+     */
+    public void foreground(final long nanos) {
+        if (tuner != null) {
+            latencyNanos.add(nanos);
+            latencyCount.increment();
+        }
+    }
+
+    /**
+     * Get current budget in bytes per second, zero if unlimited.
+     */
+    public long getRate() {
+        return limiter == null ? 0 : (long) limiter.getRate();
+    }
+
+    /**
+     * Get total time writers have been waiting for budget.
+     */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum());
+    }
+
+    @Override
+    public void close() {
+        if (tuner != null) {
+            tuner.shutdownNow();
+        }
+    }
+
+    private void tune() {
+        final long count = latencyCount.sumThenReset();
+        final long nanos = latencyNanos.sumThenReset();
+        if (count > 0) {
+            final double latency = (double) nanos / count;
+            fastLatency = fastLatency == 0 ? latency : fastLatency + FAST_ALPHA * (latency - fastLatency);
+            slowLatency = slowLatency == 0 ? latency : slowLatency + SLOW_ALPHA * (latency - slowLatency);
+        }
+
+        final int pending = backlog.getAsInt();
+        double rate = limiter.getRate();
+        if (pending > 0 && pending >= lastBacklog) {
+            rate = Math.min(maxRate, rate * RAISE);
+        } else if (fastLatency > slowLatency * LATENCY_TOLERANCE) {
+            rate = Math.max(minRate, rate * LOWER);
+        }
+        lastBacklog = pending;
+        if (rate != limiter.getRate()) {
+            logger.debug("Background I/O rate is {} bytes/s", (long) rate);
+            limiter.setRate(rate);
+        }
+    }
+}
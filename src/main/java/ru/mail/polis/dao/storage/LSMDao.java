@@ -1,32 +1,63 @@
 package ru.mail.polis.dao.storage;
 
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.mail.polis.Record;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.Cursor;
 import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.Iters;
 import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
 import ru.mail.polis.dao.storage.table.FlushTable;
+import ru.mail.polis.dao.storage.table.IngestStream;
 import ru.mail.polis.dao.storage.table.MemoryTablePool;
 import ru.mail.polis.dao.storage.table.SSTable;
+import ru.mail.polis.dao.storage.table.TableCursor;
+import ru.mail.polis.dao.storage.table.TableSnapshot;
+import ru.mail.polis.dao.storage.vlog.ValueLog;
+import ru.mail.polis.exception.NoSuchElementExceptionLite;
 import ru.mail.polis.utils.GenerationUtils;
 import ru.mail.polis.utils.IteratorUtils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,16 +67,29 @@ public final class LSMDao implements DAO {
     public static final String SUFFIX_DAT = ".dat";
     public static final String FILE_NAME = "SSTable_";
     public static final String SUFFIX_TMP = ".tmp";
+    public static final String SUFFIX_OBSOLETE = ".obsolete";
+    public static final String CHECKPOINTS = "checkpoints";
+    public static final String KEYSPACES = "keyspaces";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final long FLUSH_RETRY_MIN_MS = 100;
+    private static final long FLUSH_RETRY_MAX_MS = 10_000;
+    private static final int FLUSH_RETRIES_AFTER_STOP = 3;
 
     private static final Pattern FILE_NAME_PATTERN = Pattern.compile(FILE_NAME);
     private static final Logger logger = LoggerFactory.getLogger(LSMDao.class);
 
-    private final File directory;
+    private final DataDirectories directories;
     private final MemoryTablePool memoryTablePool;
     private final Thread flushedThread;
     private final NavigableMap<Long, SSTable> ssTables;
-
-    private long generation;
+    private final ValueLog valueLog;
+    private final ExecutorService valueLogCollector;
+    private final IoRateLimiter ioRateLimiter;
+    private final Durability durability;
+    private final Map<String, LSMDao> keyspaces;
+    private final int compressionDictionary;
+    private final long tableSizeLimit;
 
     /**
      * Creates persistence Dao based on LSMTree.
@@ -56,47 +100,198 @@ public final class LSMDao implements DAO {
      */
     public LSMDao(@NotNull final File directory,
                   final long flushLimit) throws IOException {
-        this.directory = directory;
+        this(directory, StorageConfig.defaults(flushLimit));
+    }
+
+    /**
+     * Creates persistence Dao based on LSMTree.
+     *
+     * @param directory is the base directory, where contains our database
+     * @param config    is tuning of storage
+     * @throws IOException of an I/O error occurred
+     */
+    public LSMDao(@NotNull final File directory,
+                  @NotNull final StorageConfig config) throws IOException {
+        for (final String name : config.keyspaces.keySet()) {
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Wrong keyspace name: " + name);
+            }
+        }
+        this.ioRateLimiter = new IoRateLimiter(config.ioRateLimit, config.ioRateAutoTune, this::pendingFlushes);
+        this.durability = new Durability(config.durability, config.syncIntervalMs);
+        this.valueLog = new ValueLog(directory, config.valueLogThreshold, ioRateLimiter);
+        this.valueLogCollector = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("value-log-collector-%d").build());
+        this.directories = new DataDirectories(directory, config.extraDirectories, config.placement);
+        this.compressionDictionary = config.compressionDictionary;
+        this.tableSizeLimit = config.tableSizeLimit;
         ssTables = new ConcurrentSkipListMap<>();
         final AtomicLong maxGeneration = new AtomicLong();
-        Files.walkFileTree(directory.toPath(), EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
+        for (final File dataDirectory : directories.all()) {
+            discover(dataDirectory, maxGeneration);
+        }
+        maxGeneration.set(maxGeneration.get() + 1);
+        memoryTablePool = new MemoryTablePool(config, maxGeneration.get());
+        flushedThread = new Thread(new FlusherTask());
+        flushedThread.start();
+        keyspaces = openKeyspaces(directory, config);
+    }
+
+    /**
+     * Open storages of keyspaces, each in its own subdirectory of {@link #KEYSPACES}.
+     *
+     * @param directory is the base directory of storage
+     * @param config    is tuning of storage with tuning of its keyspaces
+     */
+    @NotNull
+    private static Map<String, LSMDao> openKeyspaces(@NotNull final File directory,
+                                                     @NotNull final StorageConfig config) throws IOException {
+        final Map<String, LSMDao> result = new HashMap<>();
+        for (final Map.Entry<String, StorageConfig> keyspace : config.keyspaces.entrySet()) {
+            final File keyspaceDirectory = new File(new File(directory, KEYSPACES), keyspace.getKey());
+            Files.createDirectories(keyspaceDirectory.toPath());
+            result.put(keyspace.getKey(), new LSMDao(keyspaceDirectory, keyspace.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Open SSTables of directory.
+     *
+     * @param dataDirectory is one of data directories
+     * @param maxGeneration is max generation of opened tables
+     */
+    private void discover(@NotNull final File dataDirectory,
+                          @NotNull final AtomicLong maxGeneration) throws IOException {
+        Files.walkFileTree(dataDirectory.toPath(), EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
             @Override
             public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs)
                     throws IOException {
                 final Matcher matcher = FILE_NAME_PATTERN.matcher(path.toString());
-                if (path.toString().endsWith(SUFFIX_DAT) && matcher.find()) {
+                if (path.toString().endsWith(SUFFIX_OBSOLETE) && matcher.find()) {
+                    // Compacted table was still read when storage stopped
+                    Files.delete(path);
+                } else if (path.toString().endsWith(SUFFIX_TMP) && attrs.isRegularFile() && matcher.find()) {
+                    // Table of crashed flush, ingest or compaction, or waiting for batched rename, is never installed
+                    Files.delete(path);
+                } else if (path.toString().endsWith(SUFFIX_DAT) && matcher.find()) {
                     final long currentGeneration = GenerationUtils.fromPath(path);
                     maxGeneration.set(Math.max(maxGeneration.get(), currentGeneration));
-                    ssTables.put(currentGeneration, new SSTable(path.toFile(), currentGeneration));
+                    ssTables.put(currentGeneration, new SSTable(path.toFile(), currentGeneration, valueLog));
                 }
                 return FileVisitResult.CONTINUE;
             }
         });
-        maxGeneration.set(maxGeneration.get() + 1);
-        memoryTablePool = new MemoryTablePool(flushLimit, maxGeneration.get());
-        this.generation = maxGeneration.get();
-        flushedThread = new Thread(new FlusherTask());
-        flushedThread.start();
     }
 
     @NotNull
     @Override
-    public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
-        return Iterators.transform(cellIterator(from), cluster -> {
+    public CloseableIterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
+        return snapshotIterator(from, null, LSMDao::records);
+    }
+
+    @NotNull
+    @Override
+    public CloseableIterator<Record> range(@NotNull final ByteBuffer from,
+                                           @Nullable final ByteBuffer to) throws IOException {
+        if (to == null) {
+            return iterator(from);
+        }
+        if (from.compareTo(to) > 0) {
+            return TableSnapshot.empty().iterator(Iters.empty());
+        }
+        final Record bound = Record.of(to, EMPTY_BUFFER);
+        return snapshotIterator(from, to, cells -> Iters.until(records(cells), bound));
+    }
+
+    /**
+     * Cursor over tables acquired at its creation, rows are read from mappings without allocation.
+     *
+     * @param from is key from we get data
+     * @param to   is key until we get data (exclusive), null if range is unbounded
+     */
+    @NotNull
+    @Override
+    public Cursor cursor(@NotNull final ByteBuffer from,
+                         @Nullable final ByteBuffer to) {
+        final TableSnapshot snapshot = memoryTablePool.snapshot(ssTables);
+        try {
+            final long start = System.nanoTime();
+            final List<TableCursor> cursors = new ArrayList<>(snapshot.tables().size() + 2);
+            memoryTablePool.cursors(cursors);
+            for (final SSTable ssTable : snapshot.tables().values()) {
+                if (ssTable.getMeta().overlaps(from, to)) {
+                    cursors.add(ssTable.cursor());
+                }
+            }
+            final Cursor result = snapshot.cursor(cursors, from, to);
+            ioRateLimiter.foreground(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementException {
+        try (CloseableIterator<Record> iter = iterator(key)) {
+            if (iter.hasNext()) {
+                final Record next = iter.next();
+                if (next.getKey().equals(key)) {
+                    return next.getValue();
+                }
+            }
+        }
+        throw new NoSuchElementExceptionLite("Not found with key: " + key);
+    }
+
+    @NotNull
+    private static Iterator<Record> records(@NotNull final Iterator<Cell> cells) {
+        return Iterators.transform(cells, cluster -> {
             assert cluster != null;
             return Record.of(cluster.getKey(), cluster.getValue().getData());
         });
     }
 
+    /**
+     * Iterator over tables acquired at its creation, compaction does not delete them until it is released.
+     *
+     * @param from is key from we get data
+     * @param to   is key until we get data (exclusive), null if range is unbounded
+     * @param view is transformation of alive cells to result
+     */
     @NotNull
-    private Iterator<Cell> cellIterator(@NotNull final ByteBuffer from) {
-        return IteratorUtils.data(memoryTablePool, ssTables, from);
+    private <T> CloseableIterator<T> snapshotIterator(@NotNull final ByteBuffer from,
+                                                      @Nullable final ByteBuffer to,
+                                                      @NotNull final Function<Iterator<Cell>, Iterator<T>> view) {
+        final TableSnapshot snapshot = memoryTablePool.snapshot(ssTables);
+        try {
+            // Tables are searched and first cells are read while creating iterator
+            final long start = System.nanoTime();
+            final Iterator<T> result = view.apply(IteratorUtils.data(memoryTablePool, snapshot.tables(), from, to));
+            ioRateLimiter.foreground(System.nanoTime() - start);
+            return snapshot.iterator(result);
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
     }
 
     @NotNull
     @Override
-    public Iterator<Cell> latestIterator(@NotNull final ByteBuffer from) {
-        return IteratorUtils.latestIter(memoryTablePool, ssTables, from);
+    public CloseableIterator<Cell> latestIterator(@NotNull final ByteBuffer from) {
+        final TableSnapshot snapshot = memoryTablePool.snapshot(ssTables);
+        try {
+            final long start = System.nanoTime();
+            final Iterator<Cell> cells = IteratorUtils.latestIter(memoryTablePool, snapshot.tables(), from);
+            ioRateLimiter.foreground(System.nanoTime() - start);
+            return snapshot.iterator(cells);
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
     }
 
     @Override
@@ -109,48 +304,284 @@ public final class LSMDao implements DAO {
         memoryTablePool.remove(key);
     }
 
+    @Override
+    public void repair(@NotNull final ByteBuffer key,
+                       @NotNull final Value value) throws IOException {
+        memoryTablePool.repair(key, value);
+    }
+
+    @Override
+    public void merge(@NotNull final ByteBuffer key,
+                      @NotNull final ByteBuffer operand,
+                      @NotNull final MergeOperator operator) throws IOException {
+        memoryTablePool.merge(key, operand, operator);
+    }
+
+    @Nullable
+    @Override
+    public DAO keyspace(@NotNull final String name) {
+        return keyspaces.get(name);
+    }
+
     @Override
     public void close() throws IOException {
+        for (final LSMDao keyspace : keyspaces.values()) {
+            keyspace.close();
+        }
         memoryTablePool.close();
+        valueLogCollector.shutdown();
         try {
             flushedThread.join();
+            valueLogCollector.awaitTermination(1, TimeUnit.MINUTES);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        ioRateLimiter.close();
+        // Tables of the last flush are synced even by batched policy
+        durability.close();
+        valueLog.close();
+    }
+
+    @NotNull
+    @Override
+    public Map<String, Long> metrics() {
+        final Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("io.rate.bytes", ioRateLimiter.getRate());
+        metrics.put("io.throttled.ms", ioRateLimiter.getThrottledMillis());
+        metrics.put("flush.pending", (long) pendingFlushes());
+        metrics.put("flush.limit.bytes", memoryTablePool.flushLimit());
+        metrics.put("memtable.bytes", memoryTablePool.size());
+        final LatencyHistogram fsync = durability.getLatency();
+        metrics.put("fsync.count", fsync.count());
+        metrics.put("fsync.pending", (long) durability.pending());
+        metrics.put("fsync.p50.us", fsync.percentileMicros(50));
+        metrics.put("fsync.p99.us", fsync.percentileMicros(99));
+        metrics.put("fsync.max.us", fsync.maxMicros());
+        for (final Map.Entry<String, LSMDao> keyspace : keyspaces.entrySet()) {
+            for (final Map.Entry<String, Long> metric : keyspace.getValue().metrics().entrySet()) {
+                metrics.put(KEYSPACES + '.' + keyspace.getKey() + '.' + metric.getKey(), metric.getValue());
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public synchronized void compact() throws IOException {
+        final long activeValueLog = valueLog.activeFile();
+        memoryTablePool.compact(ssTables, valueLog, ioRateLimiter, durability);
+        if (!valueLogCollector.isShutdown()) {
+            valueLogCollector.execute(() -> collectValueLog(activeValueLog));
+        }
+    }
+
+    /**
+     * Write stream directly to new SSTables, so mem tables, flushes and compaction are bypassed.
+     * Tables of limited size are installed only when the whole stream is written.
+     *
+     * @param sorted is stream in format of {@link IngestStream}
+     */
+    @Override
+    public void ingest(@NotNull final InputStream sorted) throws IOException {
+        final IngestStream cells = new IngestStream(new BufferedInputStream(sorted), tableSizeLimit);
+        final Map<Long, File> written = new LinkedHashMap<>();
+        boolean installed = false;
+        try {
+            while (cells.hasMore()) {
+                final long generation = memoryTablePool.reserveGeneration();
+                cells.nextTable(generation);
+                final File tmp = new File(directories.next(generation), FILE_NAME + generation + SUFFIX_TMP);
+                written.put(generation, tmp);
+                // Left by crashed ingest or flush of the same generation
+                Files.deleteIfExists(tmp.toPath());
+                // Bulk load is not throttled as background writes
+                SSTable.writeToFile(cells, tmp, valueLog, IoRateLimiter.unlimited(), compressionDictionary);
+            }
+            // Tables have disjoint keys and the same timestamp, so they are visible in any order
+            for (final Map.Entry<Long, File> table : written.entrySet()) {
+                final long generation = table.getKey();
+                final File tmp = table.getValue();
+                final File sstable = new File(tmp.getParentFile(), FILE_NAME + generation + SUFFIX_DAT);
+                ssTables.put(generation, install(tmp, sstable, generation));
+                logger.info("Table {} is ingested", generation);
+            }
+            installed = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (!installed) {
+                for (final File tmp : written.values()) {
+                    Files.deleteIfExists(tmp.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Open written table and rename it to its name, so partially written tables are never opened.
+     * Values it points to, its data and then its name are made durable by policy,
+     * batched policy renames table only after its data is synced.
+     *
+     * @param tmp        is written table
+     * @param target     is the name of table
+     * @param generation is generation of table
+     */
+    @NotNull
+    private SSTable install(@NotNull final File tmp,
+                            @NotNull final File target,
+                            final long generation) throws IOException {
+        // Mapping of written file stays valid after rename
+        final SSTable table = new SSTable(tmp, target, generation, valueLog);
+        valueLog.sync(durability, false);
+        durability.install(tmp.toPath(), target.toPath(), false);
+        return table;
     }
 
+    /**
+     * Create checkpoint in {@link #CHECKPOINTS} subdirectory of storage.
+     *
+     * @param name is the name of checkpoint directory
+     */
     @Override
-    public void compact() throws IOException {
-        memoryTablePool.compact(ssTables, directory, generation);
+    public void checkpoint(@NotNull final String name) throws IOException {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Wrong checkpoint name: " + name);
+        }
+        checkpoint(new File(new File(directories.primary(), CHECKPOINTS), name));
+    }
+
+    /**
+     * Flush mem table and hard link all live files to target directory.
+     * Links are created in temporary directory witch is renamed to target at the end,
+     * so target directory either contains whole checkpoint or does not exist.
+     * Tables in data directories on other file systems than target are copied.
+     *
+     * @param target is directory to create on the same file system as primary directory
+     */
+    public void checkpoint(@NotNull final File target) throws IOException {
+        if (target.exists()) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        try {
+            memoryTablePool.flushAndWait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Checkpoint is interrupted");
+        }
+        final Path tmp = new File(target.getParentFile(), target.getName() + SUFFIX_TMP).toPath();
+        Files.createDirectories(tmp);
+        // Compaction and value log collection do not delete files while linking
+        synchronized (this) {
+            // Values of tables are written before tables, so sealed value logs have them all
+            final Collection<SSTable> tables = new ArrayList<>(ssTables.values());
+            // Links share data with files, so active value log is sealed not to be appended after linking
+            final Collection<Path> valueLogs = valueLog.seal();
+            valueLog.sync(durability, true);
+            // Batched renames of tables are completed, so links are made to their final names
+            durability.sync();
+            for (final SSTable ssTable : tables) {
+                linkOrCopy(ssTable.getTable().toPath(), tmp);
+            }
+            for (final Path path : valueLogs) {
+                linkOrCopy(path, tmp);
+            }
+        }
+        durability.directory(tmp, true);
+        Files.move(tmp, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        durability.directory(target.getParentFile().toPath(), true);
+        logger.info("Checkpoint is created in {}", target);
+    }
+
+    private void linkOrCopy(@NotNull final Path file,
+                            @NotNull final Path target) throws IOException {
+        final Path link = target.resolve(file.getFileName());
+        if (Files.getFileStore(file).equals(Files.getFileStore(target))) {
+            Files.createLink(link, file);
+        } else {
+            Files.copy(file, link);
+            durability.file(link, true);
+        }
+    }
+
+    private void collectValueLog(final long activeValueLog) {
+        try {
+            final boolean relocate;
+            synchronized (this) {
+                relocate = valueLog.collect(ssTables.values(), activeValueLog);
+            }
+            if (relocate) {
+                // Compaction moves live values from sparse files, next collection removes them
+                compact();
+            }
+        } catch (IOException e) {
+            logger.error("Error while collect value log : ", e);
+        }
+    }
+
+    private int pendingFlushes() {
+        return memoryTablePool == null ? 0 : memoryTablePool.pendingFlushes();
     }
 
     private void flush(final long currentGeneration,
                        @NotNull final Iterator<Cell> data) throws IOException {
         if (data.hasNext()) {
-            final File sstable = new File(directory, FILE_NAME + currentGeneration + SUFFIX_DAT);
-            SSTable.writeToFile(data, sstable);
-            this.generation = memoryTablePool.generation();
+            final File dataDirectory = directories.next(currentGeneration);
+            final File tmp = new File(dataDirectory, FILE_NAME + currentGeneration + SUFFIX_TMP);
+            // Left by failed attempt
+            Files.deleteIfExists(tmp.toPath());
+            SSTable.writeToFile(data, tmp, valueLog, ioRateLimiter, compressionDictionary);
+            final File sstable = new File(dataDirectory, FILE_NAME + currentGeneration + SUFFIX_DAT);
+            ssTables.put(currentGeneration, install(tmp, sstable, currentGeneration));
         }
     }
 
     private final class FlusherTask implements Runnable {
+        private final Deque<FlushTable> tables = new ArrayDeque<>();
+        private long retryDelay = FLUSH_RETRY_MIN_MS;
+        private int failuresAfterStop;
+
         @Override
         public void run() {
             boolean poisonReceived = false;
-            while (!Thread.currentThread().isInterrupted() && !poisonReceived) {
-                FlushTable flushTable;
+            while (!Thread.currentThread().isInterrupted() && !(poisonReceived && tables.isEmpty())) {
                 try {
-                    flushTable = memoryTablePool.tableToFlush();
-                    final Iterator<Cell> data = flushTable.data();
-                    final long currentGeneration = flushTable.getGeneration();
-                    poisonReceived = flushTable.isPoisonPills();
-                    flush(currentGeneration, data);
-                    memoryTablePool.flushed(currentGeneration);
+                    // Queue is drained while failed tables wait for retry, so writers are not stuck on it
+                    final FlushTable next = tables.isEmpty()
+                            ? memoryTablePool.tableToFlush()
+                            : memoryTablePool.tableToFlush(retryDelay);
+                    if (next == null) {
+                        retryDelay = Math.min(retryDelay * 2, FLUSH_RETRY_MAX_MS);
+                    } else {
+                        poisonReceived = poisonReceived || next.isPoisonPills();
+                        tables.addLast(next);
+                    }
+                    flushTables();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Flush tables in order until one fails, failed mem table stays pending and readable until retry.
+         * After close only a few retries are done, so close is not stuck on broken disk.
+         */
+        private void flushTables() {
+            while (!tables.isEmpty()) {
+                final FlushTable table = tables.pollFirst();
+                try {
+                    flush(table.getGeneration(), table.data());
                 } catch (IOException e) {
-                    logger.info("IOError: {}", e.getMessage());
+                    logger.error("Flush of mem table {} is failed, retry in {} ms", table.getGeneration(),
+                            retryDelay, e);
+                    tables.addFirst(memoryTablePool.flushFailed(table, e));
+                    if (memoryTablePool.isStopped() && ++failuresAfterStop > FLUSH_RETRIES_AFTER_STOP) {
+                        logger.error("{} mem tables are lost", tables.size());
+                        tables.clear();
+                    }
+                    return;
                 }
+                memoryTablePool.flushed(table.getGeneration());
+                retryDelay = FLUSH_RETRY_MIN_MS;
             }
         }
     }
@@ -0,0 +1,83 @@
+package ru.mail.polis.dao.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free histogram of latencies in microseconds with power of two buckets,
+ * so percentiles are accurate up to factor of two.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record latency.
+     *
+     * @param nanos is latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(micros));
+        max.accumulate(micros);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long maxMicros() {
+        return max.get();
+    }
+
+    /**
+     * Get upper bound of bucket containing percentile.
+     *
+     * @param percentile is percentile from 0 to 100
+     * @return latency in microseconds, zero if nothing is recorded
+     */
+    public long percentileMicros(final double percentile) {
+        return percentileMicros(percentile, this);
+    }
+
+    /**
+     * Get upper bound of bucket containing percentile of latencies recorded by all histograms.
+     *
+     * @param percentile is percentile from 0 to 100
+     * @param histograms is histograms of the same latency, e.g. of consecutive time windows
+     * @return latency in microseconds, zero if nothing is recorded
+     */
+    public static long percentileMicros(final double percentile,
+                                        @NotNull final LatencyHistogram... histograms) {
+        long count = 0;
+        long max = 0;
+        for (final LatencyHistogram histogram : histograms) {
+            count += histogram.count();
+            max = Math.max(max, histogram.max.get());
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            for (final LatencyHistogram histogram : histograms) {
+                seen += histogram.counts.get(i);
+            }
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,98 @@
+package ru.mail.polis.dao.storage;
+
+import ru.mail.polis.dao.storage.table.index.MemTableIndex;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Tuning of {@link LSMDao}, filled by {@link ru.mail.polis.dao.DAOFactory}.
+ */
+public final class StorageConfig {
+
+    /**
+     * Size of mem table in heap bytes upon reaching which it is flushed to disk.
+     * Limit shrinks while heap is under pressure.
+     */
+    public long flushLimit;
+
+    /**
+     * Heap bytes of active and pending mem tables upon reaching which writes wait for flush.
+     * Budget shrinks while heap is under pressure. Zero is unlimited.
+     */
+    public long memoryBudget;
+
+    /**
+     * Values of this size or bigger are written to value log and SSTables
+     * keep only pointers to them. Zero disables value log.
+     */
+    public int valueLogThreshold;
+
+    /**
+     * Max size of dictionary trained from the first values of each new SSTable to compress
+     * small values one by one. Zero disables compression.
+     */
+    public int compressionDictionary;
+
+    /**
+     * Type of sorted index of mem tables, default is taken from "dao.memTableIndex" system property if it is set.
+     */
+    public MemTableIndex.Type memTableIndex =
+            MemTableIndex.Type.valueOf(System.getProperty("dao.memTableIndex", MemTableIndex.Type.SKIP_LIST.name()));
+
+    /**
+     * Estimated size of SSTable written by ingestion upon reaching which the next table is started.
+     * SSTables are mapped to memory with int offsets, so it must be well below 2 GB.
+     */
+    public long tableSizeLimit = 1L << 30;
+
+    /**
+     * Budget of flush and compaction writes in bytes per second. Zero is unlimited.
+     */
+    public long ioRateLimit;
+
+    /**
+     * Tune budget of background writes: raise it while flush backlog grows
+     * and lower it while foreground reads slow down.
+     */
+    public boolean ioRateAutoTune;
+
+    /**
+     * Policy of fsync for flushed, compacted and ingested tables and value log.
+     */
+    public Durability.Policy durability = Durability.Policy.SYNC;
+
+    /**
+     * Period of batched syncs for {@link Durability.Policy#ASYNC}.
+     */
+    public long syncIntervalMs = 1000;
+
+    /**
+     * Data directories besides the base one, new SSTables are spread over all of them.
+     */
+    public File[] extraDirectories = new File[0];
+
+    /**
+     * Choice of data directory for new SSTable.
+     */
+    public DataDirectories.Placement placement = DataDirectories.Placement.ROUND_ROBIN;
+
+    /**
+     * Named keyspaces with their own mem tables, SSTables and tuning,
+     * stored in {@link LSMDao#KEYSPACES} subdirectory of base directory.
+     * Extra directories of keyspaces must not be shared with other keyspaces.
+     */
+    public Map<String, StorageConfig> keyspaces = Collections.emptyMap();
+
+    /**
+     * Default config of storage.
+     *
+     * @param flushLimit is the limit upon reaching which we write data in disk
+     */
+    public static StorageConfig defaults(final long flushLimit) {
+        final StorageConfig config = new StorageConfig();
+        config.flushLimit = flushLimit;
+        return config;
+    }
+}
@@ -43,7 +43,7 @@ public final class Cell {
         return value;
     }
 
-    private long getGeneration() {
+    public long getGeneration() {
         return generation;
     }
 }
@@ -0,0 +1,175 @@
+package ru.mail.polis.dao.storage.cell;
+
+import one.nio.http.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+import static ru.mail.polis.utils.ConstUtils.DIGEST_HEADER;
+import static ru.mail.polis.utils.ConstUtils.TIMESTAMP_HEADER;
+
+/**
+ * Version of value answered by replica instead of its data: state, timestamp and hash of data.
+ * Digest of local or fully read value keeps the value itself.
+ */
+public final class Digest {
+
+    /**
+     * Order of digests from the oldest, values of the same timestamp are ordered by hash,
+     * so all coordinators choose the same of them.
+     */
+    public static final Comparator<Digest> NEWEST_LAST = Comparator.comparingLong(Digest::getTimestamp)
+            .thenComparingInt(Digest::getHash);
+
+    private static final Digest ABSENT = new Digest(Value.State.ABSENT, -1, 0, null);
+
+    private final Value.State state;
+    private final long timestamp;
+    private final int hash;
+    private final Value value;
+
+    private Digest(@NotNull final Value.State state,
+                   final long timestamp,
+                   final int hash,
+                   @Nullable final Value value) {
+        this.state = state;
+        this.timestamp = timestamp;
+        this.hash = hash;
+        this.value = value;
+    }
+
+    /**
+     * Digest of value read from storage, which keeps the value.
+     *
+     * @param value is read value
+     */
+    @NotNull
+    public static Digest of(@NotNull final Value value) {
+        switch (value.getState()) {
+            case PRESENT:
+                return new Digest(Value.State.PRESENT, value.getTimestamp(), hash(value.getData()), value);
+            case REMOVED:
+                return new Digest(Value.State.REMOVED, value.getTimestamp(), 0, value);
+            default:
+                return ABSENT;
+        }
+    }
+
+    /**
+     * Digest answered by replica without value.
+     *
+     * @param state     is state of value
+     * @param timestamp is time witch value is written
+     * @param hash      is hash of data of present value
+     */
+    @NotNull
+    public static Digest of(@NotNull final Value.State state,
+                            final long timestamp,
+                            final int hash) {
+        return state == Value.State.ABSENT ? ABSENT : new Digest(state, timestamp, hash, null);
+    }
+
+    /**
+     * Hash of data of present value.
+     */
+    public static int hash(@NotNull final ByteBuffer data) {
+        final CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Get digest from response of one-nio client.
+     *
+     * @param response is response to read with digest header
+     */
+    @NotNull
+    public static Digest fromResponse(@NotNull final Response response) {
+        final String timestamp = response.getHeader(TIMESTAMP_HEADER + ": ");
+        if (response.getStatus() == 200) {
+            final String hash = response.getHeader(DIGEST_HEADER + ": ");
+            if (timestamp == null || hash == null) {
+                throw new IllegalArgumentException("Timestamp and digest must be not empty if status code is 200!");
+            }
+            return of(Value.State.PRESENT, Long.parseLong(timestamp), Integer.parseInt(hash));
+        }
+        if (timestamp == null) {
+            return ABSENT;
+        }
+        return of(Value.State.REMOVED, Long.parseLong(timestamp), 0);
+    }
+
+    /**
+     * Get digest from response.
+     *
+     * @param response is response to read with digest header
+     */
+    @NotNull
+    public static Digest fromHttpResponse(@NotNull final HttpResponse<?> response) {
+        final HttpHeaders headers = response.headers();
+        final String timestamp = headers.firstValue(TIMESTAMP_HEADER.toLowerCase(Locale.ENGLISH)).orElse(null);
+        if (response.statusCode() == 200) {
+            final String hash = headers.firstValue(DIGEST_HEADER.toLowerCase(Locale.ENGLISH)).orElse(null);
+            if (timestamp == null || hash == null) {
+                throw new IllegalArgumentException("Timestamp and digest must be not empty if status code is 200!");
+            }
+            return of(Value.State.PRESENT, Long.parseLong(timestamp), Integer.parseInt(hash));
+        }
+        if (timestamp == null) {
+            return ABSENT;
+        }
+        return of(Value.State.REMOVED, Long.parseLong(timestamp), 0);
+    }
+
+    /**
+     * Check if digests are of equal data, which may be written at different time.
+     */
+    public boolean sameData(@NotNull final Digest other) {
+        return state == other.state && hash == other.hash;
+    }
+
+    /**
+     * Value of the given version made of data kept by this digest,
+     * so the data is not read again from replica answered with digest only.
+     *
+     * @param version is version of value to get
+     * @return value with timestamp of version or null if digest keeps no value or its data differs
+     */
+    @Nullable
+    public Value valueOf(@NotNull final Digest version) {
+        if (value == null || !sameData(version)) {
+            return null;
+        }
+        if (timestamp == version.timestamp) {
+            return value;
+        }
+        return new Value(value.getData(), value.getState(), version.timestamp);
+    }
+
+    @NotNull
+    public Value.State getState() {
+        return state;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getHash() {
+        return hash;
+    }
+
+    /**
+     * Value of digest or null if replica answered only with digest.
+     */
+    @Nullable
+    public Value getValue() {
+        return value;
+    }
+}
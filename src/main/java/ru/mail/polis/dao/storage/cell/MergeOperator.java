@@ -0,0 +1,107 @@
+package ru.mail.polis.dao.storage.cell;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+public enum MergeOperator {
+
+    /**
+     * Treats values as big-endian longs and adds the operand to the base.
+     * A missing base (or one that is not 8 bytes long) counts from zero.
+     */
+    COUNTER_ADD((byte) 1, "add") {
+        @NotNull
+        @Override
+        public ByteBuffer apply(@Nullable final ByteBuffer base,
+                                @NotNull final ByteBuffer operand) {
+            final long result = toLong(base) + toLong(operand);
+            final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            buffer.putLong(result);
+            buffer.rewind();
+            return buffer;
+        }
+    },
+
+    /**
+     * Appends operand bytes to the end of the base value.
+     */
+    BYTES_APPEND((byte) 2, "append") {
+        @NotNull
+        @Override
+        public ByteBuffer apply(@Nullable final ByteBuffer base,
+                                @NotNull final ByteBuffer operand) {
+            if (base == null) {
+                return operand.duplicate();
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(base.remaining() + operand.remaining());
+            buffer.put(base.duplicate());
+            buffer.put(operand.duplicate());
+            buffer.rewind();
+            return buffer;
+        }
+    };
+
+    private final byte id;
+    private final String alias;
+
+    MergeOperator(final byte id, @NotNull final String alias) {
+        this.id = id;
+        this.alias = alias;
+    }
+
+    /**
+     * Combine base value with operand.
+     *
+     * @param base    is current value, null if key is absent or removed
+     * @param operand is operand witch we should be applied to base
+     */
+    @NotNull
+    public abstract ByteBuffer apply(@Nullable ByteBuffer base, @NotNull ByteBuffer operand);
+
+    public byte id() {
+        return id;
+    }
+
+    public String alias() {
+        return alias;
+    }
+
+    /**
+     * Get operator by id stored on disk.
+     *
+     * @param id is id of operator
+     */
+    @NotNull
+    public static MergeOperator of(final byte id) {
+        for (final MergeOperator operator : values()) {
+            if (operator.id == id) {
+                return operator;
+            }
+        }
+        throw new IllegalArgumentException("Unknown merge operator: " + id);
+    }
+
+    /**
+     * Get operator by alias from request.
+     *
+     * @param alias is alias of operator
+     */
+    @NotNull
+    public static MergeOperator forAlias(@NotNull final String alias) {
+        for (final MergeOperator operator : values()) {
+            if (operator.alias.equals(alias)) {
+                return operator;
+            }
+        }
+        throw new IllegalArgumentException("Unknown merge operator: " + alias);
+    }
+
+    private static long toLong(@Nullable final ByteBuffer buffer) {
+        if (buffer == null || buffer.remaining() != Long.BYTES) {
+            return 0L;
+        }
+        return buffer.getLong(buffer.position());
+    }
+}
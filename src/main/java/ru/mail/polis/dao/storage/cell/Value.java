@@ -1,6 +1,10 @@
 package ru.mail.polis.dao.storage.cell;
 
+import one.nio.http.Response;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.vlog.ValuePointer;
+
 import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
 import java.nio.ByteBuffer;
@@ -18,6 +22,8 @@ public final class Value implements Comparable<Value> {
     private final ByteBuffer data;
     private final long timestamp;
     private final State state;
+    private final MergeOperator operator;
+    private final ValuePointer pointer;
 
     /**
      * Persistence cell value.
@@ -29,9 +35,34 @@ public final class Value implements Comparable<Value> {
     public Value(final ByteBuffer data,
                  @NotNull final State state,
                  final long timestamp) {
+        this(data, state, timestamp, null);
+    }
+
+    /**
+     * Persistence cell value with merge operator.
+     *
+     * @param data      is the data of Value
+     * @param state     is state of current Value.
+     * @param timestamp is time witch this value is written
+     * @param operator  is operator of merge operand, null for other states
+     */
+    public Value(final ByteBuffer data,
+                 @NotNull final State state,
+                 final long timestamp,
+                 @Nullable final MergeOperator operator) {
+        this(data, state, timestamp, operator, null);
+    }
+
+    private Value(final ByteBuffer data,
+                  @NotNull final State state,
+                  final long timestamp,
+                  @Nullable final MergeOperator operator,
+                  @Nullable final ValuePointer pointer) {
         this.data = data;
         this.state = state;
         this.timestamp = timestamp;
+        this.operator = operator;
+        this.pointer = pointer;
     }
 
     /**
@@ -45,6 +76,17 @@ public final class Value implements Comparable<Value> {
                 System.currentTimeMillis());
     }
 
+    /**
+     * Alive value (cell) witch data is stored in value log.
+     *
+     * @param pointer   is pointer to data in value log
+     * @param timestamp is time witch this value is written
+     */
+    public static Value separated(@NotNull final ValuePointer pointer,
+                                  final long timestamp) {
+        return new Value(null, State.PRESENT, timestamp, null, pointer);
+    }
+
     /**
      * Removed value (cell) in storage.
      */
@@ -55,6 +97,46 @@ public final class Value implements Comparable<Value> {
                 System.currentTimeMillis());
     }
 
+    /**
+     * Merge operand (cell) in storage.
+     *
+     * @param data     is operand witch will be applied to value on read
+     * @param operator is operator witch combine operand with value
+     */
+    public static Value operand(@NotNull final ByteBuffer data,
+                                @NotNull final MergeOperator operator) {
+        return new Value(data.duplicate(),
+                State.MERGE,
+                System.currentTimeMillis(),
+                operator);
+    }
+
+    /**
+     * Apply operand on top of older value.
+     * If older value is operand of the same operator, the result is still operand,
+     * otherwise older value is used as base and result is present value.
+     *
+     * @param older   is value written before operand
+     * @param operand is merge operand
+     */
+    @NotNull
+    public static Value combine(@NotNull final Value older,
+                                @NotNull final Value operand) {
+        assert operand.state == State.MERGE;
+        final MergeOperator op = operand.operator;
+        switch (older.state) {
+            case PRESENT:
+                return present(op.apply(older.getData(), operand.data), operand.timestamp);
+            case MERGE:
+                if (older.operator == op) {
+                    return new Value(op.apply(older.data, operand.data), State.MERGE, operand.timestamp, op);
+                }
+                return present(op.apply(older.operator.apply(null, older.data), operand.data), operand.timestamp);
+            default:
+                return present(op.apply(null, operand.data), operand.timestamp);
+        }
+    }
+
     /**
      * Present (alive) value witch we want to read by timestamp.
      *
@@ -88,27 +170,46 @@ public final class Value implements Comparable<Value> {
         return timestamp;
     }
 
+    /**
+     * Get data of value, data from value log is read on demand.
+     */
     public ByteBuffer getData() {
+        if (pointer != null) {
+            return pointer.read();
+        }
         return data;
     }
 
+    /**
+     * Get pointer to value log if data is separated, null otherwise.
+     */
+    @Nullable
+    public ValuePointer getPointer() {
+        return pointer;
+    }
+
     public State getState() {
         return state;
     }
 
+    public MergeOperator getOperator() {
+        return operator;
+    }
+
     @Override
     public int compareTo(@NotNull final Value o) {
         return -Long.compare(timestamp, o.timestamp);
     }
 
-    private static Value absent() {
+    public static Value absent() {
         return ABSENT;
     }
 
     public enum State {
         ABSENT,
         PRESENT,
-        REMOVED
+        REMOVED,
+        MERGE
     }
 
     /**
@@ -153,6 +254,10 @@ public final class Value implements Comparable<Value> {
             return Value.absent();
         }
 
+        if (cell.getValue().getState() == State.MERGE) {
+            return Value.combine(Value.absent(), cell.getValue());
+        }
+
         final long timestamp = cell.getValue().getTimestamp();
         final ByteBuffer value = cell.getValue().getData();
         if (value == null) {
@@ -162,6 +267,26 @@ public final class Value implements Comparable<Value> {
         }
     }
 
+    /**
+     * Get CellValue from response of one-nio client.
+     *
+     * @param response response from witch we should be get value.
+     */
+    @NotNull
+    public static Value fromResponse(@NotNull final Response response) {
+        final String timestamp = response.getHeader(TIMESTAMP_HEADER + ": ");
+        if (response.getStatus() == 200) {
+            if (timestamp == null) {
+                throw new IllegalArgumentException("Timestamp must be not empty if status code is 200!");
+            }
+            return Value.present(ByteBuffer.wrap(response.getBody()), Long.parseLong(timestamp));
+        }
+        if (timestamp == null) {
+            return Value.absent();
+        }
+        return Value.removed(Long.parseLong(timestamp));
+    }
+
     /**
      * Get CellValue from response.
      *
@@ -0,0 +1,158 @@
+package ru.mail.polis.dao.storage.table;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Stream of records sorted by key for bulk ingestion, record is
+ * [int keySize][key][int valueSize][value], negative value size is a tombstone.
+ * All cells get the same timestamp, so ingested data is as new as writes at ingestion time.
+ * Stream is split to tables of limited size, iterator ends at the end of current table.
+ */
+public final class IngestStream implements Iterator<Cell> {
+
+    private static final int TOMBSTONE = -1;
+    // Key size, timestamp, value size and offset of row in SSTable
+    private static final int ROW_OVERHEAD = Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final DataInputStream in;
+    private final long timestamp;
+    private final long tableSize;
+    private long generation;
+    private long tableBytes;
+    private ByteBuffer nextKey;
+    private Value nextValue;
+    private ByteBuffer previous;
+
+    /**
+     * Create iterator over cells of stream.
+     *
+     * @param in        is the stream of sorted records
+     * @param tableSize is estimated size of table upon reaching which iterator ends
+     */
+    public IngestStream(@NotNull final InputStream in,
+                        final long tableSize) {
+        this.in = new DataInputStream(in);
+        this.timestamp = System.currentTimeMillis();
+        this.tableSize = tableSize;
+    }
+
+    /**
+     * Check if stream has records for one more table.
+     */
+    public boolean hasMore() throws IOException {
+        if (nextKey == null) {
+            read();
+        }
+        return nextKey != null;
+    }
+
+    /**
+     * Start the next table, its cells are returned until the table size is reached.
+     *
+     * @param generation is generation of table witch is written from stream
+     */
+    public void nextTable(final long generation) {
+        this.generation = generation;
+        this.tableBytes = 0;
+    }
+
+    /**
+     * Write record to stream.
+     *
+     * @param out   is the stream of records
+     * @param key   is the key, greater than keys of previous records
+     * @param value is the value or null for tombstone
+     */
+    public static void write(@NotNull final DataOutput out,
+                             @NotNull final ByteBuffer key,
+                             @Nullable final ByteBuffer value) throws IOException {
+        final byte[] keyBytes = BytesUtils.toArray(key);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        if (value == null) {
+            out.writeInt(TOMBSTONE);
+        } else {
+            final byte[] valueBytes = BytesUtils.toArray(value);
+            out.writeInt(valueBytes.length);
+            out.write(valueBytes);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (tableBytes >= tableSize) {
+            return false;
+        }
+        try {
+            return hasMore();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Cell next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("End of ingest table");
+        }
+        final Cell cell = Cell.of(nextKey, nextValue, generation);
+        tableBytes += ROW_OVERHEAD + nextKey.remaining();
+        if (nextValue.getState() == Value.State.PRESENT) {
+            tableBytes += nextValue.getData().remaining();
+        }
+        nextKey = null;
+        nextValue = null;
+        return cell;
+    }
+
+    private void read() throws IOException {
+        final int keySize;
+        try {
+            keySize = in.readInt();
+        } catch (EOFException e) {
+            return;
+        }
+        try {
+            record(keySize);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Ingest stream is truncated", e);
+        }
+    }
+
+    private void record(final int keySize) throws IOException {
+        final ByteBuffer key = ByteBuffer.wrap(bytes(keySize));
+        if (previous != null && previous.compareTo(key) >= 0) {
+            throw new IllegalArgumentException("Keys of ingest stream are not sorted");
+        }
+        previous = key;
+        final int valueSize = in.readInt();
+        nextValue = valueSize < 0
+                ? new Value(null, Value.State.REMOVED, timestamp)
+                : new Value(ByteBuffer.wrap(bytes(valueSize)), Value.State.PRESENT, timestamp);
+        nextKey = key;
+    }
+
+    @NotNull
+    private byte[] bytes(final int size) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Wrong size of ingest record: " + size);
+        }
+        final byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -2,27 +2,40 @@ package ru.mail.polis.dao.storage.table;
 
 import com.google.common.collect.Iterators;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
 import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.dao.storage.table.index.MemTableIndex;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 @ThreadSafe
 public final class MemTable implements Table {
 
-    private final NavigableMap<ByteBuffer, Value> storage = new ConcurrentSkipListMap<>();
-    private final NavigableMap<ByteBuffer, Value> unmodifiable = Collections.unmodifiableNavigableMap(storage);
+    /**
+     * Value object without data.
+     */
+    private static final long VALUE_OVERHEAD = 40;
+
+    /**
+     * Heap byte buffer and its array header.
+     */
+    private static final long BUFFER_OVERHEAD = 48 + 16;
+
+    private final MemTableIndex storage;
     private final long generation;
     private final AtomicLong tableSizeInBytes = new AtomicLong();
 
-    MemTable(final long generation) {
+    MemTable(final long generation,
+             @NotNull final MemTableIndex storage) {
         this.generation = generation;
+        this.storage = storage;
     }
 
     /**
@@ -33,12 +46,19 @@ public final class MemTable implements Table {
     @NotNull
     @Override
     public Iterator<Cell> iterator(@NotNull final ByteBuffer from) {
-        return Iterators.transform(unmodifiable.tailMap(from)
-                        .entrySet()
-                        .iterator(),
+        return Iterators.transform(storage.iterator(from),
                 input -> Cell.of(input.getKey(), input.getValue(), generation));
     }
 
+    /**
+     * Cursor over cells of mem table, key and data are duplicated per step,
+     * because buffers of index are shared with concurrent readers.
+     */
+    @NotNull
+    TableCursor cursor() {
+        return new MemTableCursor();
+    }
+
     /**
      * Insert new Value to storage.
      *
@@ -47,15 +67,8 @@ public final class MemTable implements Table {
      */
     @Override
     public void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) {
-        final Value prev = storage.put(key, Value.of(value));
-
-        if (prev == null) {
-            tableSizeInBytes.addAndGet(key.remaining() + value.remaining());
-        } else if (prev.getState() == Value.State.REMOVED) {
-            tableSizeInBytes.addAndGet(value.remaining());
-        } else {
-            tableSizeInBytes.addAndGet(value.remaining() - prev.getData().remaining());
-        }
+        final Value current = Value.of(value);
+        account(key, storage.put(key, current), current);
     }
 
     /**
@@ -66,12 +79,88 @@ public final class MemTable implements Table {
      */
     @Override
     public void remove(@NotNull final ByteBuffer key) {
-        final Value prev = storage.put(key, Value.deadCluster());
+        final Value current = Value.deadCluster();
+        account(key, storage.put(key, current), current);
+    }
+
+    /**
+     * Insert Value of another replica keeping its timestamp.
+     * Value of this table is replaced only by newer one, older tables are
+     * shadowed on read by timestamp anyway.
+     *
+     * @param key   is the label which we can find data
+     * @param value is present value or tombstone
+     */
+    public void repair(@NotNull final ByteBuffer key, @NotNull final Value value) {
+        final Value current = new Value(value.getData() == null ? null : value.getData().duplicate(),
+                value.getState(), value.getTimestamp());
+        while (true) {
+            final Value prev = storage.get(key);
+            if (prev == null) {
+                if (storage.putIfAbsent(key, current) == null) {
+                    account(key, null, current);
+                    return;
+                }
+            } else if (prev.getTimestamp() >= current.getTimestamp()) {
+                return;
+            } else if (storage.replace(key, prev, current)) {
+                account(key, prev, current);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Apply merge operand to Value in storage.
+     * Operand is combined in place with value already stored in this table,
+     * otherwise it is stored as is and combined with older tables on read.
+     *
+     * @param key      is the label which we can find data
+     * @param operand  is the operand
+     * @param operator is the operator witch combine operand with value
+     */
+    @Override
+    public void merge(@NotNull final ByteBuffer key,
+                      @NotNull final ByteBuffer operand,
+                      @NotNull final MergeOperator operator) {
+        final Value value = Value.operand(operand, operator);
+        while (true) {
+            final Value prev = storage.get(key);
+            if (prev == null) {
+                if (storage.putIfAbsent(key, value) == null) {
+                    account(key, null, value);
+                    return;
+                }
+            } else {
+                final Value merged = Value.combine(prev, value);
+                if (storage.replace(key, prev, merged)) {
+                    account(key, prev, merged);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Account change of heap bytes taken by entry, index overhead and key are paid when entry is created.
+     */
+    private void account(@NotNull final ByteBuffer key,
+                         @Nullable final Value prev,
+                         @NotNull final Value current) {
+        long delta = heapSize(current);
         if (prev == null) {
-            tableSizeInBytes.addAndGet(key.remaining());
-        } else if (prev.getState() != Value.State.REMOVED) {
-            tableSizeInBytes.addAndGet(-prev.getData().remaining());
+            delta += storage.entryOverhead() + key.remaining();
+        } else {
+            delta -= heapSize(prev);
+        }
+        tableSizeInBytes.addAndGet(delta);
+    }
+
+    private static long heapSize(@NotNull final Value value) {
+        if (value.getState() == Value.State.REMOVED) {
+            return VALUE_OVERHEAD;
         }
+        return VALUE_OVERHEAD + BUFFER_OVERHEAD + value.getData().remaining();
     }
 
     @Override
@@ -83,4 +172,62 @@ public final class MemTable implements Table {
     public long size() {
         return tableSizeInBytes.get();
     }
+
+    private final class MemTableCursor implements TableCursor {
+        private Iterator<Map.Entry<ByteBuffer, Value>> entries = Collections.emptyIterator();
+        private ByteBuffer key;
+        private Value value;
+        private ByteBuffer data;
+
+        @Override
+        public void seek(@NotNull final ByteBuffer from) {
+            entries = storage.iterator(from);
+        }
+
+        @Override
+        public boolean next() {
+            if (!entries.hasNext()) {
+                return false;
+            }
+            final Map.Entry<ByteBuffer, Value> entry = entries.next();
+            key = entry.getKey().duplicate();
+            value = entry.getValue();
+            data = value.getData() == null ? null : value.getData().duplicate();
+            return true;
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer key() {
+            return key;
+        }
+
+        @Override
+        public long timestamp() {
+            return value.getTimestamp();
+        }
+
+        @NotNull
+        @Override
+        public Value.State state() {
+            return value.getState();
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer value() {
+            return data;
+        }
+
+        @Override
+        public long generation() {
+            return generation;
+        }
+
+        @NotNull
+        @Override
+        public Value toValue() {
+            return value;
+        }
+    }
 }
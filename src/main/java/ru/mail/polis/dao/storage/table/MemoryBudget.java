@@ -0,0 +1,93 @@
+package ru.mail.polis.dao.storage.table;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Memory of mem tables scaled by heap pressure.
+ * While old generation is filled below {@link #LOW_PRESSURE} configured limits are used as is,
+ * above it they shrink linearly down to {@link #MIN_FACTOR} of configured at {@link #HIGH_PRESSURE}.
+ */
+final class MemoryBudget {
+
+    private static final double LOW_PRESSURE = 0.5;
+    private static final double HIGH_PRESSURE = 0.9;
+    private static final double MIN_FACTOR = 0.25;
+    private static final long CHECK_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long flushLimit;
+    private final long budget;
+    private final List<MemoryPoolMXBean> oldPools;
+    private volatile double factor = 1.0;
+    private volatile long lastCheck;
+
+    /**
+     * Create budget of mem tables.
+     *
+     * @param flushLimit is size of mem table upon reaching which it is flushed
+     * @param budget     is size of active and pending mem tables upon reaching which writes wait,
+     *                   zero is unlimited
+     */
+    MemoryBudget(final long flushLimit,
+                 final long budget) {
+        // Single mem table has to fit budget with at least one flushing
+        this.flushLimit = budget > 0 ? Math.min(flushLimit, budget / 2) : flushLimit;
+        this.budget = budget;
+        this.oldPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .filter(pool -> pool.getName().contains("Old") || pool.getName().contains("Tenured"))
+                .collect(Collectors.toList());
+        this.lastCheck = System.nanoTime();
+    }
+
+    /**
+     * Current size of mem table upon reaching which it is flushed.
+     */
+    long flushLimit() {
+        return (long) (flushLimit * factor());
+    }
+
+    /**
+     * Check if writes should wait for flush of pending mem tables.
+     *
+     * @param used is size of active and pending mem tables
+     */
+    boolean exceeded(final long used) {
+        return budget > 0 && used > budget * factor();
+    }
+
+    private double factor() {
+        final long now = System.nanoTime();
+        if (now - lastCheck > CHECK_PERIOD_NANOS) {
+            lastCheck = now;
+            final double pressure = pressure();
+            if (pressure <= LOW_PRESSURE) {
+                factor = 1.0;
+            } else {
+                final double scale = Math.min(1.0, (pressure - LOW_PRESSURE) / (HIGH_PRESSURE - LOW_PRESSURE));
+                factor = 1.0 - scale * (1.0 - MIN_FACTOR);
+            }
+        }
+        return factor;
+    }
+
+    /**
+     * Part of max heap used by old generation or by whole heap if collector has no old generation.
+     */
+    private double pressure() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = 0;
+        if (oldPools.isEmpty()) {
+            used = runtime.totalMemory() - runtime.freeMemory();
+        } else {
+            for (final MemoryPoolMXBean pool : oldPools) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return (double) used / runtime.maxMemory();
+    }
+}
@@ -1,10 +1,16 @@
 package ru.mail.polis.dao.storage.table;
 
-import com.google.common.collect.Iterators;
 import org.jetbrains.annotations.NotNull;
-import ru.mail.polis.dao.Iters;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.Durability;
+import ru.mail.polis.dao.storage.IoRateLimiter;
 import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
 import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.dao.storage.table.index.MemTableIndex;
+import ru.mail.polis.dao.storage.vlog.ValueLog;
 import ru.mail.polis.utils.IteratorUtils;
 
 import java.io.Closeable;
@@ -12,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.NavigableMap;
 import java.util.TreeMap;
@@ -19,33 +26,46 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public final class MemoryTablePool implements Table, Closeable {
 
+    private static final long AWAIT_MEMORY_MS = 100;
+
     private volatile MemTable currentMemoryTable;
-    private final NavigableMap<Long, Table> pendingToFlushTables;
+    private final NavigableMap<Long, MemTable> pendingToFlushTables;
     private final BlockingQueue<FlushTable> flushingQueue;
     private long generation;
 
-    private final long flushLimit;
+    private final MemoryBudget memoryBudget;
+    private final MemTableIndex.Type indexType;
+    private final int compressionDictionary;
     private final AtomicBoolean stop = new AtomicBoolean();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object memoryFreed = new Object();
+    private volatile IOException flushFailure;
 
     /**
      * Pool of mem table to flush.
      *
-     * @param flushLimit      is the limit above which we flushing mem table
+     * @param config          is tuning of storage with flush limit, memory budget, index type
+     *                        and compression of compacted tables
      * @param startGeneration is the start of generation
      */
-    public MemoryTablePool(final long flushLimit, final long startGeneration) {
-        this.flushLimit = flushLimit;
+    public MemoryTablePool(@NotNull final StorageConfig config,
+                           final long startGeneration) {
+        this.memoryBudget = new MemoryBudget(config.flushLimit, config.memoryBudget);
         this.generation = startGeneration;
-        this.currentMemoryTable = new MemTable(generation);
+        this.indexType = config.memTableIndex;
+        this.compressionDictionary = config.compressionDictionary;
+        this.currentMemoryTable = new MemTable(generation, MemTableIndex.of(indexType));
         this.pendingToFlushTables = new TreeMap<>();
         this.flushingQueue = new ArrayBlockingQueue<>(2);
     }
@@ -55,7 +75,7 @@ public final class MemoryTablePool implements Table, Closeable {
         lock.readLock().lock();
         try {
             long size = currentMemoryTable.size();
-            for (final Map.Entry<Long, Table> table : pendingToFlushTables.entrySet()) {
+            for (final Map.Entry<Long, MemTable> table : pendingToFlushTables.entrySet()) {
                 size = size + table.getValue().size();
             }
             return size;
@@ -78,15 +98,32 @@ public final class MemoryTablePool implements Table, Closeable {
         } finally {
             lock.readLock().unlock();
         }
-        final Iterator<Cell> merged = Iterators.mergeSorted(iterators, Cell.COMPARATOR);
-        return Iters.collapseEquals(merged, Cell::getKey);
+        return IteratorUtils.collapsePartial(iterators);
+    }
+
+    /**
+     * Add cursors of current and flushing mem tables.
+     *
+     * @param to is cursors of storage
+     */
+    public void cursors(@NotNull final Collection<TableCursor> to) {
+        lock.readLock().lock();
+        try {
+            to.add(currentMemoryTable.cursor());
+            for (final MemTable table : pendingToFlushTables.values()) {
+                to.add(table.cursor());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
-    public void upsert(final @NotNull ByteBuffer key, final @NotNull ByteBuffer value) {
+    public void upsert(final @NotNull ByteBuffer key, final @NotNull ByteBuffer value) throws IOException {
         if (stop.get()) {
             throw new IllegalStateException("Already stopped!");
         }
+        awaitMemory();
         lock.readLock().lock();
         try {
             currentMemoryTable.upsert(key, value);
@@ -101,6 +138,7 @@ public final class MemoryTablePool implements Table, Closeable {
         if (stop.get()) {
             throw new IllegalStateException("Already stopped!");
         }
+        awaitMemory();
         lock.readLock().lock();
         try {
             currentMemoryTable.remove(key);
@@ -111,7 +149,45 @@ public final class MemoryTablePool implements Table, Closeable {
     }
 
     /**
-     * Return current generation of Pool.
+     * Write value of another replica with its timestamp.
+     *
+     * @param key   is key of value
+     * @param value is present value or tombstone
+     */
+    public void repair(final @NotNull ByteBuffer key,
+                       final @NotNull Value value) throws IOException {
+        if (stop.get()) {
+            throw new IllegalStateException("Already stopped!");
+        }
+        awaitMemory();
+        lock.readLock().lock();
+        try {
+            currentMemoryTable.repair(key, value);
+        } finally {
+            lock.readLock().unlock();
+        }
+        enqueueFlush();
+    }
+
+    @Override
+    public void merge(final @NotNull ByteBuffer key,
+                      final @NotNull ByteBuffer operand,
+                      final @NotNull MergeOperator operator) throws IOException {
+        if (stop.get()) {
+            throw new IllegalStateException("Already stopped!");
+        }
+        awaitMemory();
+        lock.readLock().lock();
+        try {
+            currentMemoryTable.merge(key, operand, operator);
+        } finally {
+            lock.readLock().unlock();
+        }
+        enqueueFlush();
+    }
+
+    /**
+     * Return last generation allocated by Pool.
      */
     @Override
     public long generation() {
@@ -123,6 +199,32 @@ public final class MemoryTablePool implements Table, Closeable {
         }
     }
 
+    /**
+     * Return count of mem tables waiting for flush.
+     */
+    public int pendingFlushes() {
+        lock.readLock().lock();
+        try {
+            return pendingToFlushTables.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reserve generation for table written bypassing mem tables.
+     * It is above current mem table, next mem tables are above it.
+     */
+    public long reserveGeneration() {
+        lock.writeLock().lock();
+        try {
+            generation = generation + 1;
+            return generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     /**
      * Take from queue table.
      */
@@ -130,6 +232,16 @@ public final class MemoryTablePool implements Table, Closeable {
         return flushingQueue.take();
     }
 
+    /**
+     * Take from queue table waiting for it no longer than timeout.
+     *
+     * @return null if queue is empty until timeout
+     */
+    @Nullable
+    public FlushTable tableToFlush(final long timeoutMs) throws InterruptedException {
+        return flushingQueue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Mark mem table as flushed and remove her from map storage of tables.
      *
@@ -142,60 +254,139 @@ public final class MemoryTablePool implements Table, Closeable {
         } finally {
             lock.writeLock().unlock();
         }
+        flushFailure = null;
+        synchronized (memoryFreed) {
+            memoryFreed.notifyAll();
+        }
     }
 
     /**
-     * Compact values from all tables with current table.
+     * Mark flush of mem table as failed, writers held by memory budget and flushes in progress
+     * fail with the cause until some flush succeeds.
      *
-     * @param sstables   is all tables from disk storage
-     * @param directory  is current directory for flush
-     * @param generation is generation for new SSTable
+     * @param table is mem table to flush
+     * @param cause is failure of flush
+     * @return the same mem table to flush once more
      */
-    public void compact(@NotNull final NavigableMap<Long, SSTable> sstables,
-                        @NotNull final File directory,
-                        final long generation) throws IOException {
-        final Iterator<Cell> data;
+    @NotNull
+    public FlushTable flushFailed(@NotNull final FlushTable table,
+                                  @NotNull final IOException cause) {
+        flushFailure = cause;
+        synchronized (memoryFreed) {
+            memoryFreed.notifyAll();
+        }
+        lock.readLock().lock();
+        try {
+            final MemTable memTable = table.isPoisonPills()
+                    ? currentMemoryTable
+                    : pendingToFlushTables.get(table.getGeneration());
+            return new FlushTable(table.getGeneration(), memTable.iterator(LSMDao.EMPTY_BUFFER),
+                    table.isPoisonPills());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isStopped() {
+        return stop.get();
+    }
+
+    /**
+     * Acquire current tables on disk for reader, compaction swaps tables under write lock,
+     * so snapshot never misses data of replaced tables.
+     *
+     * @param sstables is all tables from disk storage
+     */
+    @NotNull
+    public TableSnapshot snapshot(@NotNull final NavigableMap<Long, SSTable> sstables) {
+        final NavigableMap<Long, SSTable> acquired = new TreeMap<>();
         lock.readLock().lock();
         try {
-            data = IteratorUtils.data(currentMemoryTable, sstables, LSMDao.EMPTY_BUFFER);
+            for (final SSTable ssTable : sstables.values()) {
+                if (ssTable.acquire()) {
+                    acquired.put(ssTable.generation(), ssTable);
+                }
+            }
         } finally {
             lock.readLock().unlock();
         }
-        compaction(data, directory, sstables, generation);
+        return new TableSnapshot(acquired);
+    }
+
+    /**
+     * Return current size of mem table upon reaching which it is flushed.
+     */
+    public long flushLimit() {
+        return memoryBudget.flushLimit();
     }
 
-    private void compaction(@NotNull final Iterator<Cell> data,
-                            @NotNull final File directory,
-                            @NotNull final NavigableMap<Long, SSTable> ssTables,
-                            final long generation) throws IOException {
+    /**
+     * Compact values from all tables on disk to one table.
+     * Mem tables are not compacted and stay above the result, so merge operands
+     * from them are not applied twice.
+     *
+     * @param sstables   is all tables from disk storage
+     * @param valueLog   is the log for big values
+     * @param limiter    is the budget of background writes
+     * @param durability is fsync policy, result is synced at once because replaced tables are deleted
+     */
+    public void compact(@NotNull final NavigableMap<Long, SSTable> sstables,
+                        @NotNull final ValueLog valueLog,
+                        @NotNull final IoRateLimiter limiter,
+                        @NotNull final Durability durability) throws IOException {
+        // Tables flushed while compaction are not touched
+        final NavigableMap<Long, SSTable> compacted = new TreeMap<>(sstables);
+        if (compacted.isEmpty()) {
+            return;
+        }
+        // Batched renames of tables are completed, so compaction replaces and deletes their final names
+        durability.sync();
+        final long generation = compacted.lastKey();
+        // Result takes name of the newest table, so it must replace the file in its directory
+        final File directory = compacted.lastEntry().getValue().getTable().getParentFile();
         final File ssTableFileTmp = new File(directory, LSMDao.FILE_NAME + generation + LSMDao.SUFFIX_TMP);
+        // Throttled write is done without lock, so foreground writes are not blocked by it
+        SSTable.writeToFile(IteratorUtils.data(compacted, LSMDao.EMPTY_BUFFER), ssTableFileTmp, valueLog, limiter,
+                compressionDictionary);
+        valueLog.sync(durability, true);
+        durability.file(ssTableFileTmp.toPath(), true);
+        final File ssTableFile = new File(directory, LSMDao.FILE_NAME + generation + LSMDao.SUFFIX_DAT);
         lock.writeLock().lock();
         try {
-            SSTable.writeToFile(data, ssTableFileTmp);
-            for (final SSTable ssTable : ssTables.descendingMap().values()) {
-                Files.delete(ssTable.getTable().toPath());
+            for (final SSTable ssTable : compacted.values()) {
+                // File stays for readers of the table until they release it
+                ssTable.retire();
+                sstables.remove(ssTable.generation());
             }
-            ssTables.clear();
-            final File ssTableFile = new File(directory, LSMDao.FILE_NAME + generation + LSMDao.SUFFIX_DAT);
+            // Result replaces the newest table with the same name atomically
             Files.move(ssTableFileTmp.toPath(), ssTableFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
-            ssTables.put(generation, new SSTable(ssTableFile, generation));
+            sstables.put(generation, new SSTable(ssTableFile, generation, valueLog));
         } finally {
             lock.writeLock().unlock();
         }
+        durability.directory(directory.toPath(), true);
+        // Replaced tables are removed only when result is durable
+        final Set<Path> changed = new HashSet<>();
+        for (final SSTable ssTable : compacted.values()) {
+            if (!ssTable.getTable().equals(ssTableFile)) {
+                Files.delete(ssTable.getTable().toPath());
+                changed.add(ssTable.getTable().getParentFile().toPath());
+            }
+            ssTable.obsolete();
+        }
+        for (final Path changedDirectory : changed) {
+            durability.directory(changedDirectory, false);
+        }
     }
 
     private void enqueueFlush() {
+        final long flushLimit = memoryBudget.flushLimit();
         if (currentMemoryTable.size() > flushLimit) {
             FlushTable flushTable = null;
             lock.writeLock().lock();
             try {
                 if (currentMemoryTable.size() > flushLimit) {
-                    flushTable = new FlushTable(generation,
-                            currentMemoryTable.iterator(LSMDao.EMPTY_BUFFER),
-                            false);
-                    pendingToFlushTables.put(generation, currentMemoryTable);
-                    generation = generation + 1;
-                    currentMemoryTable = new MemTable(generation);
+                    flushTable = rotate();
                 }
             } finally {
                 lock.writeLock().unlock();
@@ -210,6 +401,90 @@ public final class MemoryTablePool implements Table, Closeable {
         }
     }
 
+    /**
+     * Flush current mem table and wait until it and all older mem tables are on disk.
+     *
+     * @throws IOException if flush fails
+     */
+    public void flushAndWait() throws InterruptedException, IOException {
+        if (stop.get()) {
+            throw new IllegalStateException("Already stopped!");
+        }
+        FlushTable flushTable = null;
+        final long active;
+        lock.writeLock().lock();
+        try {
+            if (currentMemoryTable.size() > 0) {
+                flushTable = rotate();
+            }
+            active = currentMemoryTable.generation();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (flushTable != null) {
+            flushingQueue.put(flushTable);
+        }
+        synchronized (memoryFreed) {
+            while (hasPendingBefore(active)) {
+                checkFlushed();
+                memoryFreed.wait(AWAIT_MEMORY_MS);
+            }
+        }
+    }
+
+    private boolean hasPendingBefore(final long generation) {
+        lock.readLock().lock();
+        try {
+            return !pendingToFlushTables.headMap(generation).isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Move current mem table to pending ones, must be called under write lock.
+     */
+    @NotNull
+    private FlushTable rotate() {
+        final FlushTable flushTable = new FlushTable(currentMemoryTable.generation(),
+                currentMemoryTable.iterator(LSMDao.EMPTY_BUFFER),
+                false);
+        pendingToFlushTables.put(currentMemoryTable.generation(), currentMemoryTable);
+        generation = generation + 1;
+        currentMemoryTable = new MemTable(generation, MemTableIndex.of(indexType));
+        return flushTable;
+    }
+
+    /**
+     * Hold writer while active and pending mem tables exceed memory budget.
+     *
+     * @throws IOException if mem tables can't be flushed to free memory
+     */
+    private void awaitMemory() throws IOException {
+        if (!memoryBudget.exceeded(size())) {
+            return;
+        }
+        synchronized (memoryFreed) {
+            while (!stop.get() && memoryBudget.exceeded(size())) {
+                checkFlushed();
+                try {
+                    // Budget shrinks and grows with heap pressure, so it is rechecked periodically
+                    memoryFreed.wait(AWAIT_MEMORY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void checkFlushed() throws IOException {
+        final IOException failure = flushFailure;
+        if (failure != null) {
+            throw new IOException("Mem tables can't be flushed", failure);
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if (!stop.compareAndSet(false, true)) {
@@ -218,7 +493,8 @@ public final class MemoryTablePool implements Table, Closeable {
         FlushTable flushTable;
         lock.writeLock().lock();
         try {
-            flushTable = new FlushTable(generation, currentMemoryTable.iterator(LSMDao.EMPTY_BUFFER), true);
+            flushTable = new FlushTable(currentMemoryTable.generation(),
+                    currentMemoryTable.iterator(LSMDao.EMPTY_BUFFER), true);
         } finally {
             lock.writeLock().unlock();
         }
@@ -0,0 +1,209 @@
+package ru.mail.polis.dao.storage.table;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.Cursor;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Cursor collapsing cursors of all tables of storage to the latest alive cells.
+ * Cursors are kept in binary heap ordered like {@link ru.mail.polis.dao.storage.cell.Cell#COMPARATOR},
+ * so a step moves only cursors at the current key and allocates nothing besides merge operands.
+ */
+public final class MergeCursor implements Cursor {
+    private final TableCursor[] cursors;
+    private final TableCursor[] heap;
+    private final ByteBuffer to;
+    private final TableSnapshot snapshot;
+    private final Deque<Value> operands = new ArrayDeque<>();
+    private int size;
+    private TableCursor current;
+    private Value merged;
+    private boolean closed;
+
+    /**
+     * Create cursor positioned before "from".
+     *
+     * @param cursors  is cursors of tables
+     * @param from     is key from we get data
+     * @param to       is key until we get data (exclusive), null if range is unbounded
+     * @param snapshot is tables of cursors released when cursor is exhausted or closed
+     */
+    MergeCursor(@NotNull final List<TableCursor> cursors,
+                @NotNull final ByteBuffer from,
+                @Nullable final ByteBuffer to,
+                @NotNull final TableSnapshot snapshot) {
+        this.cursors = cursors.toArray(new TableCursor[0]);
+        this.heap = new TableCursor[this.cursors.length];
+        this.to = to;
+        this.snapshot = snapshot;
+        seek(from);
+    }
+
+    @Override
+    public void seek(@NotNull final ByteBuffer from) {
+        if (closed) {
+            throw new IllegalStateException("Cursor is closed");
+        }
+        size = 0;
+        current = null;
+        merged = null;
+        for (final TableCursor cursor : cursors) {
+            cursor.seek(from);
+            advance(cursor);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (closed) {
+            return false;
+        }
+        if (current != null) {
+            advance(current);
+            current = null;
+        }
+        while (size > 0) {
+            current = poll();
+            if (to != null && current.key().compareTo(to) >= 0) {
+                break;
+            }
+            if (collapse()) {
+                return true;
+            }
+            advance(current);
+        }
+        current = null;
+        close();
+        return false;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        assert current != null;
+        return current.key();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        assert current != null;
+        if (merged != null) {
+            return merged.getData().duplicate();
+        }
+        final ByteBuffer value = current.value();
+        assert value != null;
+        return value;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        snapshot.close();
+    }
+
+    /**
+     * Skip older cells of current key and combine merge operands with their base.
+     *
+     * @return false if the latest cell is removed
+     */
+    private boolean collapse() {
+        merged = null;
+        final ByteBuffer key = current.key();
+        if (current.state() != Value.State.MERGE) {
+            skip(key);
+            return current.state() != Value.State.REMOVED;
+        }
+        // Operands from newest to oldest
+        operands.add(current.toValue());
+        Value base = null;
+        while (size > 0 && heap[0].key().equals(key)) {
+            final TableCursor cursor = poll();
+            final Value value = cursor.toValue();
+            advance(cursor);
+            if (value.getState() == Value.State.MERGE) {
+                operands.add(value);
+            } else {
+                base = value;
+                break;
+            }
+        }
+        skip(key);
+        Value value = base == null ? Value.absent() : base;
+        while (!operands.isEmpty()) {
+            value = Value.combine(value, operands.pollLast());
+        }
+        merged = value;
+        return true;
+    }
+
+    private void skip(@NotNull final ByteBuffer key) {
+        while (size > 0 && heap[0].key().equals(key)) {
+            advance(poll());
+        }
+    }
+
+    private void advance(@NotNull final TableCursor cursor) {
+        if (cursor.next()) {
+            push(cursor);
+        }
+    }
+
+    private void push(@NotNull final TableCursor cursor) {
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (compare(heap[parent], cursor) <= 0) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = cursor;
+    }
+
+    @NotNull
+    private TableCursor poll() {
+        final TableCursor result = heap[0];
+        final TableCursor last = heap[--size];
+        heap[size] = null;
+        if (size > 0) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+                    child++;
+                }
+                if (compare(last, heap[child]) <= 0) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+        }
+        return result;
+    }
+
+    private static int compare(@NotNull final TableCursor left,
+                               @NotNull final TableCursor right) {
+        final int keys = left.key().compareTo(right.key());
+        if (keys != 0) {
+            return keys;
+        }
+        final int timestamps = Long.compare(right.timestamp(), left.timestamp());
+        if (timestamps != 0) {
+            return timestamps;
+        }
+        return Long.compare(right.generation(), left.generation());
+    }
+}
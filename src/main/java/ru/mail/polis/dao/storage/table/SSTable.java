@@ -1,9 +1,18 @@
 package ru.mail.polis.dao.storage.table;
 
+import com.google.common.collect.Iterators;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.storage.IoRateLimiter;
+import ru.mail.polis.dao.storage.LSMDao;
 import ru.mail.polis.utils.BytesUtils;
 import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
 import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.dao.storage.vlog.ValueLog;
+import ru.mail.polis.dao.storage.vlog.ValuePointer;
 
 import java.io.File;
 import java.io.IOException;
@@ -11,18 +20,33 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.LongBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class SSTable implements Table {
 
+    private static final int VALUE_POINTER = Integer.MIN_VALUE;
+    private static final int VALUE_COMPRESSED = Integer.MIN_VALUE + 1;
+    private static final Logger logger = LoggerFactory.getLogger(SSTable.class);
+    // Table of the same generation may be retired again while readers keep the previous one
+    private static final AtomicLong RETIREMENTS = new AtomicLong(System.currentTimeMillis());
+
     private final int rows;
     private final LongBuffer offsets;
     private final ByteBuffer clusters;
     private final File table;
     private final long currentGeneration;
+    private final ValueLog valueLog;
+    private final SSTableMeta meta;
+    // Storage holds one reference until table is compacted, readers hold the rest
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean obsolete;
+    private volatile File retired;
 
     /**
      * Write data as iterator in disk.
@@ -30,17 +54,59 @@ public final class SSTable implements Table {
      * @param clusters is the data, which we want to write
      * @param to       is the file in the directory in which we want
      *                 write data
+     * @param valueLog is the log for big values
+     * @param limiter  is the budget of background writes
+     */
+    public static void writeToFile(@NotNull final Iterator<Cell> clusters,
+                                   @NotNull final File to,
+                                   @NotNull final ValueLog valueLog,
+                                   @NotNull final IoRateLimiter limiter)
+            throws IOException {
+        writeToFile(clusters, to, valueLog, limiter, 0);
+    }
+
+    /**
+     * Write data as iterator in disk, compressing small values with dictionary
+     * trained from the first values of table.
+     *
+     * @param clusters       is the data, which we want to write
+     * @param to             is the file in the directory in which we want
+     *                       write data
+     * @param valueLog       is the log for big values
+     * @param limiter        is the budget of background writes
+     * @param dictionarySize is the max size of dictionary, zero disables compression
      */
-    public static void writeToFile(@NotNull final Iterator<Cell> clusters, @NotNull final File to)
+    public static void writeToFile(@NotNull final Iterator<Cell> clusters,
+                                   @NotNull final File to,
+                                   @NotNull final ValueLog valueLog,
+                                   @NotNull final IoRateLimiter limiter,
+                                   final int dictionarySize)
             throws IOException {
+        final List<Cell> samples = new ArrayList<>();
+        ValueDictionary dictionary = null;
+        if (dictionarySize > 0) {
+            final List<ByteBuffer> values = new ArrayList<>();
+            while (clusters.hasNext() && samples.size() < ValueDictionary.SAMPLES) {
+                final Cell cell = clusters.next();
+                samples.add(cell);
+                final Value value = cell.getValue();
+                if (value.getState() == Value.State.PRESENT && value.getPointer() == null) {
+                    values.add(value.getData());
+                }
+            }
+            dictionary = ValueDictionary.train(values, dictionarySize);
+        }
+        final Iterator<Cell> cells = Iterators.concat(samples.iterator(), clusters);
         try (FileChannel fileChannel = FileChannel.open(
                 to.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
             final List<Long> offsets = new ArrayList<>();
+            final SSTableMeta.Collector meta = new SSTableMeta.Collector();
+            meta.dictionary(dictionary);
             long offset = 0;
-            while (clusters.hasNext()) {
+            while (cells.hasNext()) {
                 offsets.add(offset);
 
-                final Cell cell = clusters.next();
+                final Cell cell = cells.next();
 
                 // Write Key
                 final ByteBuffer key = cell.getKey();
@@ -63,47 +129,126 @@ public final class SSTable implements Table {
                 offset += Long.BYTES; // 8 byte
 
                 // Write Value Size and Value
-
-                if (value.getState() != Value.State.REMOVED) {
-                    final ByteBuffer valueData = value.getData();
-                    final int valueSize = value.getData().remaining();
-                    fileChannel.write(BytesUtils.fromInt(valueSize));
-                    offset += Integer.BYTES; // 4 byte
-                    fileChannel.write(valueData);
-                    offset += valueSize;
-                }
-                //else - not write Value
+                offset += writeValue(fileChannel, value, valueLog, dictionary);
+                final long rowBytes = offset - offsets.get(offsets.size() - 1);
+                meta.add(cell, rowBytes);
+                limiter.acquire((int) rowBytes);
             }
             // Write Offsets
+            limiter.acquire(offsets.size() * Long.BYTES);
             for (final Long anOffset : offsets) {
                 fileChannel.write(BytesUtils.fromLong(anOffset));
             }
             //Cells
             fileChannel.write(BytesUtils.fromLong(offsets.size()));
+            meta.build().writeTo(fileChannel);
         }
     }
 
+    private static long writeValue(@NotNull final FileChannel fileChannel,
+                                   @NotNull final Value value,
+                                   @NotNull final ValueLog valueLog,
+                                   @Nullable final ValueDictionary dictionary) throws IOException {
+        if (value.getState() == Value.State.REMOVED) {
+            // Not write Value
+            return 0;
+        }
+        if (value.getState() == Value.State.MERGE) {
+            // Operand - inverted size and operator id
+            final ByteBuffer valueData = value.getData();
+            final int valueSize = valueData.remaining();
+            fileChannel.write(BytesUtils.fromInt(~valueSize));
+            fileChannel.write(ByteBuffer.wrap(new byte[]{value.getOperator().id()}));
+            fileChannel.write(valueData);
+            return Integer.BYTES + Byte.BYTES + valueSize;
+        }
+        final ValuePointer pointer = separate(value, valueLog);
+        if (pointer != null) {
+            // Pointer - marker and pointer to value log
+            final ByteBuffer buffer = ByteBuffer.allocate(ValuePointer.BYTES);
+            pointer.writeTo(buffer);
+            buffer.rewind();
+            fileChannel.write(BytesUtils.fromInt(VALUE_POINTER));
+            fileChannel.write(buffer);
+            return Integer.BYTES + ValuePointer.BYTES;
+        }
+        final ByteBuffer valueData = value.getData();
+        final int valueSize = valueData.remaining();
+        final byte[] compressed = dictionary == null ? null : dictionary.compress(valueData);
+        if (compressed != null) {
+            // Compressed - marker, original size, compressed size and data
+            fileChannel.write(BytesUtils.fromInt(VALUE_COMPRESSED));
+            fileChannel.write(BytesUtils.fromInt(valueSize));
+            fileChannel.write(BytesUtils.fromInt(compressed.length));
+            fileChannel.write(ByteBuffer.wrap(compressed));
+            return Integer.BYTES * 3 + compressed.length;
+        }
+        fileChannel.write(BytesUtils.fromInt(valueSize));
+        fileChannel.write(valueData);
+        return Integer.BYTES + valueSize;
+    }
+
+    @Nullable
+    private static ValuePointer separate(@NotNull final Value value,
+                                         @NotNull final ValueLog valueLog) throws IOException {
+        final ValuePointer pointer = value.getPointer();
+        if (pointer != null) {
+            // Compaction copies pointer without reading value
+            return valueLog.relocate(pointer);
+        }
+        if (valueLog.separate(value.getData())) {
+            return valueLog.append(value.getData());
+        }
+        return null;
+    }
+
     /**
      * File mapping from disk.
      *
-     * @param file is the file from which we read data
+     * @param file     is the file from which we read data
+     * @param valueLog is the log witch resolves pointers to big values
+     **/
+    public SSTable(@NotNull final File file,
+                   final long currentGeneration,
+                   @NotNull final ValueLog valueLog) throws IOException {
+        this(file, file, currentGeneration, valueLog);
+    }
+
+    /**
+     * File mapping from disk of table witch is renamed to its final name later.
+     *
+     * @param written  is the file from which we read data
+     * @param file     is the final name of file
+     * @param valueLog is the log witch resolves pointers to big values
      **/
-    public SSTable(@NotNull final File file, final long currentGeneration) throws IOException {
-        final long fileSize = file.length();
+    public SSTable(@NotNull final File written,
+                   @NotNull final File file,
+                   final long currentGeneration,
+                   @NotNull final ValueLog valueLog) throws IOException {
+        final long fileSize = written.length();
         final ByteBuffer mapped;
-        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        try (FileChannel fc = FileChannel.open(written.toPath(), StandardOpenOption.READ)) {
             assert fileSize <= Integer.MAX_VALUE;
             mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0L, fileSize).order(ByteOrder.BIG_ENDIAN);
         }
+        // Footer
+        final SSTableMeta footer = SSTableMeta.read(mapped);
+        final int end;
+        if (footer == null) {
+            end = mapped.limit();
+        } else {
+            end = mapped.limit() - SSTableMeta.TAIL_BYTES - mapped.getInt(mapped.limit() - SSTableMeta.TAIL_BYTES);
+        }
+
         // Rows
-        final long rowsValue = mapped.getLong((int) (fileSize - Long.BYTES)); //fileSize - 8 byte
+        final long rowsValue = mapped.getLong(end - Long.BYTES); //end - 8 byte
         assert rowsValue <= Integer.MAX_VALUE;
         this.rows = (int) rowsValue;
 
         // Offset
         final ByteBuffer offsetBuffer = mapped.duplicate();
-        offsetBuffer.position(mapped.limit() - Long.BYTES * rows - Long.BYTES);
-        offsetBuffer.limit(mapped.limit() - Long.BYTES);
+        offsetBuffer.position(end - Long.BYTES * rows - Long.BYTES);
+        offsetBuffer.limit(end - Long.BYTES);
         this.offsets = offsetBuffer.slice().asLongBuffer();
 
         // Clusters
@@ -112,6 +257,21 @@ public final class SSTable implements Table {
         this.clusters = clusterBuffer.slice();
         this.table = file;
         this.currentGeneration = currentGeneration;
+        this.valueLog = valueLog;
+        this.meta = footer == null ? collectMeta() : footer;
+    }
+
+    /**
+     * Collect meta of table written without footer.
+     */
+    @NotNull
+    private SSTableMeta collectMeta() {
+        final SSTableMeta.Collector collector = new SSTableMeta.Collector();
+        for (int i = 0; i < rows; i++) {
+            final long end = i + 1 < rows ? offsets.get(i + 1) : clusters.limit();
+            collector.add(clusterAt(i), end - offsets.get(i));
+        }
+        return collector.build();
     }
 
     /**
@@ -140,6 +300,14 @@ public final class SSTable implements Table {
         };
     }
 
+    /**
+     * Cursor over cells of table, key and value are views of mapping reused across steps.
+     */
+    @NotNull
+    public TableCursor cursor() {
+        return new SSTableCursor();
+    }
+
     @Override
     public void upsert(final @NotNull ByteBuffer key, final @NotNull ByteBuffer value) {
         throw new UnsupportedOperationException("Not upsert!");
@@ -150,6 +318,13 @@ public final class SSTable implements Table {
         throw new UnsupportedOperationException("Not remove!");
     }
 
+    @Override
+    public void merge(final @NotNull ByteBuffer key,
+                      final @NotNull ByteBuffer operand,
+                      final @NotNull MergeOperator operator) {
+        throw new UnsupportedOperationException("Not merge!");
+    }
+
     @Override
     public long generation() {
         return currentGeneration;
@@ -160,10 +335,68 @@ public final class SSTable implements Table {
         return 0;
     }
 
+    /**
+     * Acquire table for reader, so its file is not deleted until {@link #release()}.
+     *
+     * @return false if table is already released by storage and all readers
+     */
+    boolean acquire() {
+        while (true) {
+            final int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release table, the last release of obsolete table deletes its file.
+     */
+    void release() {
+        final int left = references.decrementAndGet();
+        assert left >= 0;
+        if (left == 0 && obsolete && retired != null) {
+            try {
+                Files.deleteIfExists(retired.toPath());
+            } catch (IOException e) {
+                logger.error("Error while delete table {} : ", retired, e);
+            }
+        }
+    }
+
+    /**
+     * Link file of compacted table under obsolete name, so readers keep it
+     * when compaction result replaces the table name.
+     */
+    void retire() throws IOException {
+        final File link = new File(table.getParentFile(),
+                table.getName() + '.' + RETIREMENTS.incrementAndGet() + LSMDao.SUFFIX_OBSOLETE);
+        Files.createLink(link.toPath(), table.toPath());
+        retired = link;
+    }
+
+    /**
+     * Drop reference of storage to retired table, file is deleted after the last reader.
+     * Mapping is not unmapped explicitly, because cells returned to readers are slices of it,
+     * so it is reclaimed by GC when they are not reachable.
+     */
+    void obsolete() {
+        obsolete = true;
+        release();
+    }
+
     public File getTable() {
         return table;
     }
 
+    @NotNull
+    public SSTableMeta getMeta() {
+        return meta;
+    }
+
     private int position(final @NotNull ByteBuffer from) {
         int left = 0;
         int right = rows - 1;
@@ -214,16 +447,163 @@ public final class SSTable implements Table {
                     new Value(null, Value.State.REMOVED, -timeStamp),
                     currentGeneration);
         } else {
-            final int valueSize = clusters.getInt((int) offset);
+            int valueSize = clusters.getInt((int) offset);
             offset += Integer.BYTES;
+            if (valueSize == VALUE_COMPRESSED) {
+                final int originalSize = clusters.getInt((int) offset);
+                offset += Integer.BYTES;
+                final int compressedSize = clusters.getInt((int) offset);
+                offset += Integer.BYTES;
+                final ByteBuffer compressed = clusters.duplicate();
+                compressed.position((int) offset);
+                compressed.limit((int) (offset + compressedSize));
+                final ValueDictionary dictionary = meta.getDictionary();
+                assert dictionary != null;
+                return Cell.of(key.slice(),
+                        new Value(dictionary.decompress(compressed, originalSize),
+                                Value.State.PRESENT, timeStamp), currentGeneration);
+            }
+            if (valueSize == VALUE_POINTER) {
+                final ByteBuffer pointer = clusters.duplicate();
+                pointer.position((int) offset);
+                return Cell.of(key.slice(),
+                        Value.separated(valueLog.pointer(pointer), timeStamp), currentGeneration);
+            }
+            MergeOperator operator = null;
+            if (valueSize < 0) {
+                valueSize = ~valueSize;
+                operator = MergeOperator.of(clusters.get((int) offset));
+                offset += Byte.BYTES;
+            }
             final ByteBuffer value = clusters.duplicate();
             value.position((int) offset);
             value.limit(value.position() + valueSize)
                     .position((int) offset)
                     .limit((int) (offset + valueSize));
+            if (operator != null) {
+                return Cell.of(key.slice(),
+                        new Value(value.slice(),
+                                Value.State.MERGE, timeStamp, operator), currentGeneration);
+            }
             return Cell.of(key.slice(),
                     new Value(value.slice(),
                             Value.State.PRESENT, timeStamp), currentGeneration);
         }
     }
+
+    private final class SSTableCursor implements TableCursor {
+        private final ByteBuffer key = clusters.duplicate();
+        private final ByteBuffer data = clusters.duplicate();
+        private ByteBuffer decompressed = ByteBuffer.allocate(0);
+        private int next = rows;
+        private int current = -1;
+        private long timestamp;
+        private Value.State state;
+        private int valueOffset;
+        private int valueSize;
+        private int marker;
+        private ByteBuffer value;
+
+        @Override
+        public void seek(@NotNull final ByteBuffer from) {
+            next = position(from);
+        }
+
+        @Override
+        public boolean next() {
+            if (next >= rows) {
+                return false;
+            }
+            current = next++;
+            int offset = (int) offsets.get(current);
+            final int keySize = clusters.getInt(offset);
+            offset += Integer.BYTES;
+            key.limit(offset + keySize).position(offset);
+            offset += keySize;
+            final long stored = clusters.getLong(offset);
+            offset += Long.BYTES;
+            value = null;
+            if (stored < 0) {
+                timestamp = -stored;
+                state = Value.State.REMOVED;
+                return true;
+            }
+            timestamp = stored;
+            marker = clusters.getInt(offset);
+            offset += Integer.BYTES;
+            if (marker == VALUE_COMPRESSED) {
+                valueSize = clusters.getInt(offset);
+                valueOffset = offset + Integer.BYTES;
+                state = Value.State.PRESENT;
+            } else if (marker == VALUE_POINTER) {
+                valueOffset = offset;
+                state = Value.State.PRESENT;
+            } else if (marker < 0) {
+                valueSize = ~marker;
+                valueOffset = offset + Byte.BYTES;
+                state = Value.State.MERGE;
+            } else {
+                valueSize = marker;
+                valueOffset = offset;
+                state = Value.State.PRESENT;
+            }
+            return true;
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer key() {
+            return key;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @NotNull
+        @Override
+        public Value.State state() {
+            return state;
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer value() {
+            if (state == Value.State.REMOVED || value != null) {
+                return value;
+            }
+            if (marker == VALUE_POINTER) {
+                // Big values are read from value log anyway
+                value = toValue().getData();
+            } else if (marker == VALUE_COMPRESSED) {
+                final int compressedSize = clusters.getInt(valueOffset);
+                final int start = valueOffset + Integer.BYTES;
+                data.limit(start + compressedSize).position(start);
+                if (decompressed.capacity() < valueSize) {
+                    decompressed = ByteBuffer.allocate(valueSize);
+                }
+                decompressed.clear().limit(valueSize);
+                final ValueDictionary dictionary = meta.getDictionary();
+                assert dictionary != null;
+                dictionary.decompress(data, decompressed);
+                value = decompressed.flip();
+            } else {
+                data.limit(valueOffset + valueSize).position(valueOffset);
+                value = data;
+            }
+            return value;
+        }
+
+        @Override
+        public long generation() {
+            return currentGeneration;
+        }
+
+        @NotNull
+        @Override
+        public Value toValue() {
+            return clusterAt(current).getValue();
+        }
+    }
 }
@@ -0,0 +1,231 @@
+package ru.mail.polis.dao.storage.table;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Statistics of SSTable written to the footer after rows count.
+ * Footer is [meta][int metaSize][long MAGIC], tables without magic are
+ * written before footer was introduced. Meta ends with [int size][dictionary]
+ * of compressed values, older meta ends before it.
+ */
+public final class SSTableMeta {
+
+    /**
+     * Size of tail after meta: meta size and magic.
+     */
+    static final int TAIL_BYTES = Integer.BYTES + Long.BYTES;
+
+    private static final long MAGIC = 0x5353_5441_424C_4531L;
+
+    private final ByteBuffer minKey;
+    private final ByteBuffer maxKey;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final long liveCount;
+    private final long tombstoneCount;
+    private final long keyBytes;
+    private final long valueBytes;
+    private final ValueDictionary dictionary;
+
+    private SSTableMeta(@NotNull final Collector collector) {
+        this.minKey = collector.minKey == null ? ByteBuffer.allocate(0) : collector.minKey;
+        this.maxKey = collector.maxKey == null ? ByteBuffer.allocate(0) : collector.maxKey;
+        this.minTimestamp = collector.minTimestamp;
+        this.maxTimestamp = collector.maxTimestamp;
+        this.liveCount = collector.liveCount;
+        this.tombstoneCount = collector.tombstoneCount;
+        this.keyBytes = collector.keyBytes;
+        this.valueBytes = collector.valueBytes;
+        this.dictionary = collector.dictionary;
+    }
+
+    private SSTableMeta(@NotNull final ByteBuffer meta) {
+        this.minKey = key(meta);
+        this.maxKey = key(meta);
+        this.minTimestamp = meta.getLong();
+        this.maxTimestamp = meta.getLong();
+        this.liveCount = meta.getLong();
+        this.tombstoneCount = meta.getLong();
+        this.keyBytes = meta.getLong();
+        this.valueBytes = meta.getLong();
+        if (meta.remaining() >= Integer.BYTES && meta.getInt(meta.position()) > 0) {
+            this.dictionary = new ValueDictionary(BytesUtils.toArray(key(meta)));
+        } else {
+            this.dictionary = null;
+        }
+    }
+
+    /**
+     * Read meta from the end of file.
+     *
+     * @param file is the whole mapped SSTable
+     * @return meta or null if table is written without footer
+     */
+    @Nullable
+    static SSTableMeta read(@NotNull final ByteBuffer file) {
+        final int end = file.limit();
+        if (end < TAIL_BYTES || file.getLong(end - Long.BYTES) != MAGIC) {
+            return null;
+        }
+        final int size = file.getInt(end - TAIL_BYTES);
+        final ByteBuffer meta = file.duplicate();
+        meta.position(end - TAIL_BYTES - size);
+        meta.limit(end - TAIL_BYTES);
+        return new SSTableMeta(meta.slice());
+    }
+
+    /**
+     * Write footer to the end of file.
+     *
+     * @param channel is the channel of SSTable after rows count
+     */
+    void writeTo(@NotNull final FileChannel channel) throws IOException {
+        final ByteBuffer dictionaryBytes = dictionary == null ? ByteBuffer.allocate(0) : dictionary.bytes();
+        final int size = Integer.BYTES + minKey.remaining() + Integer.BYTES + maxKey.remaining() + Long.BYTES * 6
+                + Integer.BYTES + dictionaryBytes.remaining();
+        final ByteBuffer buffer = ByteBuffer.allocate(size + TAIL_BYTES);
+        buffer.putInt(minKey.remaining()).put(minKey.duplicate());
+        buffer.putInt(maxKey.remaining()).put(maxKey.duplicate());
+        buffer.putLong(minTimestamp).putLong(maxTimestamp);
+        buffer.putLong(liveCount).putLong(tombstoneCount);
+        buffer.putLong(keyBytes).putLong(valueBytes);
+        buffer.putInt(dictionaryBytes.remaining()).put(dictionaryBytes);
+        buffer.putInt(size).putLong(MAGIC);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Check if table may contain keys of range.
+     *
+     * @param from is the first key of range (inclusive)
+     * @param to   is the last key of range (exclusive), null if range is unbounded
+     */
+    public boolean overlaps(@NotNull final ByteBuffer from,
+                            @Nullable final ByteBuffer to) {
+        if (rows() == 0 || maxKey.compareTo(from) < 0) {
+            return false;
+        }
+        return to == null || minKey.compareTo(to) < 0;
+    }
+
+    public long rows() {
+        return liveCount + tombstoneCount;
+    }
+
+    public ByteBuffer getMinKey() {
+        return minKey.asReadOnlyBuffer();
+    }
+
+    public ByteBuffer getMaxKey() {
+        return maxKey.asReadOnlyBuffer();
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public long getLiveCount() {
+        return liveCount;
+    }
+
+    public long getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    public long getKeyBytes() {
+        return keyBytes;
+    }
+
+    public long getValueBytes() {
+        return valueBytes;
+    }
+
+    /**
+     * Dictionary of compressed values or null if values are not compressed.
+     */
+    @Nullable
+    ValueDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @NotNull
+    private static ByteBuffer key(@NotNull final ByteBuffer meta) {
+        final int size = meta.getInt();
+        final ByteBuffer key = meta.duplicate();
+        key.limit(key.position() + size);
+        meta.position(meta.position() + size);
+        return ByteBuffer.wrap(BytesUtils.toArray(key));
+    }
+
+    /**
+     * Collects meta of rows in sorted order.
+     */
+    static final class Collector {
+        private ByteBuffer minKey;
+        private ByteBuffer maxKey;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long liveCount;
+        private long tombstoneCount;
+        private long keyBytes;
+        private long valueBytes;
+        private ValueDictionary dictionary;
+
+        /**
+         * Set dictionary of compressed values.
+         *
+         * @param dictionary is dictionary or null if values are not compressed
+         */
+        void dictionary(@Nullable final ValueDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Account row of table.
+         *
+         * @param cell     is the row
+         * @param rowBytes is the size of row in file
+         */
+        void add(@NotNull final Cell cell,
+                 final long rowBytes) {
+            final ByteBuffer key = cell.getKey();
+            if (minKey == null) {
+                minKey = ByteBuffer.wrap(BytesUtils.toArray(key));
+            }
+            maxKey = key;
+            final Value value = cell.getValue();
+            minTimestamp = Math.min(minTimestamp, value.getTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, value.getTimestamp());
+            if (value.getState() == Value.State.REMOVED) {
+                tombstoneCount++;
+            } else {
+                liveCount++;
+            }
+            keyBytes += key.remaining();
+            valueBytes += rowBytes - Integer.BYTES - key.remaining() - Long.BYTES;
+        }
+
+        @NotNull
+        SSTableMeta build() {
+            if (maxKey != null) {
+                maxKey = ByteBuffer.wrap(BytesUtils.toArray(maxKey));
+            }
+            return new SSTableMeta(this);
+        }
+    }
+}
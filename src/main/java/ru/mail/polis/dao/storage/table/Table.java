@@ -2,6 +2,7 @@ package ru.mail.polis.dao.storage.table;
 
 import org.jetbrains.annotations.NotNull;
 import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -17,5 +18,7 @@ public interface Table {
 
     void remove(@NotNull ByteBuffer key) throws IOException;
 
+    void merge(@NotNull ByteBuffer key, @NotNull ByteBuffer operand, @NotNull MergeOperator operator) throws IOException;
+
     long generation();
 }
@@ -0,0 +1,47 @@
+package ru.mail.polis.dao.storage.table;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over cells of one table, key and value are views reused by the next step.
+ */
+public interface TableCursor {
+
+    /**
+     * Move cursor before the first cell with key not less than "from".
+     */
+    void seek(@NotNull ByteBuffer from);
+
+    /**
+     * Move cursor to the next cell.
+     *
+     * @return false if there are no more cells
+     */
+    boolean next();
+
+    @NotNull
+    ByteBuffer key();
+
+    long timestamp();
+
+    @NotNull
+    Value.State state();
+
+    /**
+     * Data of present value or merge operand, null for removed value.
+     */
+    @Nullable
+    ByteBuffer value();
+
+    long generation();
+
+    /**
+     * Current value not bound to cursor, e.g. to combine merge operands.
+     */
+    @NotNull
+    Value toValue();
+}
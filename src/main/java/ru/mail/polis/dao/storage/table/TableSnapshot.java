@@ -0,0 +1,121 @@
+package ru.mail.polis.dao.storage.table;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.Cursor;
+
+import java.io.Closeable;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SSTables acquired by reader, so compaction does not delete them until the reader releases them.
+ */
+public final class TableSnapshot implements Closeable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final NavigableMap<Long, SSTable> tables;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Snapshot of tables already acquired by {@link SSTable#acquire()}.
+     *
+     * @param tables is acquired tables by their generation
+     */
+    TableSnapshot(@NotNull final NavigableMap<Long, SSTable> tables) {
+        this.tables = Collections.unmodifiableNavigableMap(tables);
+    }
+
+    /**
+     * Snapshot without tables, e.g. for empty range.
+     */
+    @NotNull
+    public static TableSnapshot empty() {
+        return new TableSnapshot(Collections.emptyNavigableMap());
+    }
+
+    @NotNull
+    public NavigableMap<Long, SSTable> tables() {
+        return tables;
+    }
+
+    /**
+     * Iterator releasing snapshot when it is exhausted, closed or collected as garbage.
+     *
+     * @param iterator is data of tables of this snapshot
+     */
+    @NotNull
+    public <E> CloseableIterator<E> iterator(@NotNull final Iterator<E> iterator) {
+        final SnapshotIterator<E> result = new SnapshotIterator<>(iterator, this);
+        // Cleaner action must not reach iterator, so snapshot itself is released
+        CLEANER.register(result, this::close);
+        return result;
+    }
+
+    /**
+     * Cursor over cursors of tables of this snapshot releasing it when it is exhausted,
+     * closed or collected as garbage.
+     *
+     * @param cursors is cursors of mem tables and tables of this snapshot
+     * @param from    is key from we get data
+     * @param to      is key until we get data (exclusive), null if range is unbounded
+     */
+    @NotNull
+    public Cursor cursor(@NotNull final List<TableCursor> cursors,
+                         @NotNull final ByteBuffer from,
+                         @Nullable final ByteBuffer to) {
+        final MergeCursor result = new MergeCursor(cursors, from, to, this);
+        CLEANER.register(result, this::close);
+        return result;
+    }
+
+    /**
+     * Release all tables, second call does nothing.
+     */
+    @Override
+    public void close() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        for (final SSTable table : tables.values()) {
+            table.release();
+        }
+    }
+
+    private static final class SnapshotIterator<E> implements CloseableIterator<E> {
+        private final Iterator<E> iterator;
+        private final TableSnapshot snapshot;
+
+        SnapshotIterator(@NotNull final Iterator<E> iterator,
+                         @NotNull final TableSnapshot snapshot) {
+            this.iterator = iterator;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (iterator.hasNext()) {
+                return true;
+            }
+            snapshot.close();
+            return false;
+        }
+
+        @Override
+        public E next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            snapshot.close();
+        }
+    }
+}
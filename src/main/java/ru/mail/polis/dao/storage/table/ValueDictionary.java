@@ -0,0 +1,145 @@
+package ru.mail.polis.dao.storage.table;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate dictionary of SSTable for compression of small similar values one by one,
+ * so point lookups decompress only their own value.
+ */
+public final class ValueDictionary {
+
+    /**
+     * Values bigger than this are not compressed with dictionary.
+     */
+    public static final int MAX_VALUE_BYTES = 4096;
+
+    /**
+     * Count of first values of table used to train dictionary.
+     */
+    static final int SAMPLES = 256;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final byte[] dictionary;
+
+    ValueDictionary(@NotNull final byte[] dictionary) {
+        this.dictionary = dictionary.clone();
+    }
+
+    /**
+     * Train dictionary from sample values.
+     * Deflate finds matches closer to the end of dictionary cheaper, so distinct
+     * samples are appended in order until dictionary is full.
+     *
+     * @param samples is values of table
+     * @param size    is the max size of dictionary
+     * @return dictionary or null if there are no samples
+     */
+    @Nullable
+    static ValueDictionary train(@NotNull final Collection<ByteBuffer> samples,
+                                 final int size) {
+        final ByteBuffer dictionary = ByteBuffer.allocate(size);
+        final Set<ByteBuffer> distinct = new HashSet<>();
+        for (final ByteBuffer sample : samples) {
+            if (sample.remaining() > MAX_VALUE_BYTES || !distinct.add(sample)) {
+                continue;
+            }
+            final ByteBuffer data = sample.duplicate();
+            if (data.remaining() > dictionary.remaining()) {
+                data.limit(data.position() + dictionary.remaining());
+            }
+            dictionary.put(data);
+            if (!dictionary.hasRemaining()) {
+                break;
+            }
+        }
+        if (dictionary.position() == 0) {
+            return null;
+        }
+        dictionary.flip();
+        return new ValueDictionary(BytesUtils.toArray(dictionary));
+    }
+
+    /**
+     * Compress value with dictionary.
+     *
+     * @param value is data of value
+     * @return compressed data or null if value is too big or compressed is not smaller
+     */
+    @Nullable
+    byte[] compress(@NotNull final ByteBuffer value) {
+        final int size = value.remaining();
+        if (size > MAX_VALUE_BYTES) {
+            return null;
+        }
+        final Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(BytesUtils.toArray(value));
+        deflater.finish();
+        // Result must save at least header of compressed value
+        final byte[] buffer = new byte[size];
+        final int length = deflater.deflate(buffer);
+        if (!deflater.finished() || length + Integer.BYTES * 2 >= size) {
+            return null;
+        }
+        final byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Decompress value compressed with this dictionary.
+     *
+     * @param compressed is compressed data
+     * @param size       is size of original value
+     */
+    @NotNull
+    ByteBuffer decompress(@NotNull final ByteBuffer compressed,
+                          final int size) {
+        final ByteBuffer result = ByteBuffer.allocate(size);
+        decompress(compressed, result);
+        return result.flip();
+    }
+
+    /**
+     * Decompress value to buffer reused by caller.
+     *
+     * @param compressed is compressed data, it is consumed
+     * @param to         is buffer with remaining bytes exactly of original value
+     */
+    void decompress(@NotNull final ByteBuffer compressed,
+                    @NotNull final ByteBuffer to) {
+        final Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            inflater.inflate(to);
+            if (inflater.needsDictionary()) {
+                inflater.setDictionary(dictionary);
+                inflater.inflate(to);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted compressed value", e);
+        }
+        if (to.hasRemaining()) {
+            throw new IllegalStateException("Corrupted compressed value");
+        }
+    }
+
+    @NotNull
+    ByteBuffer bytes() {
+        return ByteBuffer.wrap(dictionary).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,66 @@
+package ru.mail.polis.dao.storage.table.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Sorted in-memory index of mem table.
+ */
+@ThreadSafe
+public interface MemTableIndex {
+
+    @Nullable
+    Value get(@NotNull ByteBuffer key);
+
+    @Nullable
+    Value put(@NotNull ByteBuffer key, @NotNull Value value);
+
+    @Nullable
+    Value putIfAbsent(@NotNull ByteBuffer key, @NotNull Value value);
+
+    boolean replace(@NotNull ByteBuffer key, @NotNull Value expected, @NotNull Value value);
+
+    /**
+     * Weakly consistent iterator over entries starting at "from" key (inclusive) in ascending order.
+     */
+    @NotNull
+    Iterator<Map.Entry<ByteBuffer, Value>> iterator(@NotNull ByteBuffer from);
+
+    /**
+     * Estimated heap bytes taken by index per entry besides key bytes and value.
+     */
+    long entryOverhead();
+
+    @NotNull
+    static MemTableIndex skipList() {
+        return new SkipListIndex();
+    }
+
+    @NotNull
+    static MemTableIndex packed() {
+        return new PackedIndex();
+    }
+
+    @NotNull
+    static MemTableIndex of(@NotNull final Type type) {
+        switch (type) {
+            case SKIP_LIST:
+                return skipList();
+            case PACKED:
+                return packed();
+            default:
+                throw new IllegalArgumentException("Unknown index type: " + type);
+        }
+    }
+
+    enum Type {
+        SKIP_LIST,
+        PACKED
+    }
+}
@@ -0,0 +1,326 @@
+package ru.mail.polis.dao.storage.table.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of sorted chunks, keys of chunk are packed to one byte array.
+ * Skip list holds only first keys of chunks, so lookup is a few skip list
+ * nodes and binary search over contiguous memory. Keys are compared in place, only inserted ones are copied.
+ * Chunks are never merged, full chunk is split in halves and the upper half
+ * goes to the right, so who found stale chunk moves right by next links.
+ */
+final class PackedIndex implements MemTableIndex {
+
+    private static final int CHUNK_SIZE = 128;
+    private static final int INITIAL_KEYS_SIZE = 1024;
+
+    /**
+     * Key offset and value reference in chunk, chunk and its skip list node shared by entries.
+     */
+    private static final long ENTRY_OVERHEAD = Integer.BYTES + Integer.BYTES + 4;
+
+    private final NavigableMap<ByteBuffer, Chunk> chunks = new ConcurrentSkipListMap<>();
+
+    PackedIndex() {
+        final Chunk head = new Chunk(ByteBuffer.allocate(0));
+        chunks.put(head.min, head);
+    }
+
+    @Nullable
+    @Override
+    public Value get(@NotNull final ByteBuffer key) {
+        final Chunk chunk = lock(key, false);
+        try {
+            final int index = chunk.search(key);
+            return index < 0 ? null : chunk.values[index];
+        } finally {
+            chunk.lock.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Value put(@NotNull final ByteBuffer key, @NotNull final Value value) {
+        final Chunk chunk = lock(key, true);
+        try {
+            final int index = chunk.search(key);
+            if (index >= 0) {
+                final Value prev = chunk.values[index];
+                chunk.values[index] = value;
+                return prev;
+            }
+            insert(chunk, -index - 1, key, value);
+            return null;
+        } finally {
+            chunk.lock.writeLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Value putIfAbsent(@NotNull final ByteBuffer key, @NotNull final Value value) {
+        final Chunk chunk = lock(key, true);
+        try {
+            final int index = chunk.search(key);
+            if (index >= 0) {
+                return chunk.values[index];
+            }
+            insert(chunk, -index - 1, key, value);
+            return null;
+        } finally {
+            chunk.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(@NotNull final ByteBuffer key,
+                           @NotNull final Value expected,
+                           @NotNull final Value value) {
+        final Chunk chunk = lock(key, true);
+        try {
+            final int index = chunk.search(key);
+            if (index < 0 || chunk.values[index] != expected) {
+                return false;
+            }
+            chunk.values[index] = value;
+            return true;
+        } finally {
+            chunk.lock.writeLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<ByteBuffer, Value>> iterator(@NotNull final ByteBuffer from) {
+        final Chunk chunk = lock(from, false);
+        chunk.lock.readLock().unlock();
+        return new ChunkIterator(chunk, from.duplicate());
+    }
+
+    @Override
+    public long entryOverhead() {
+        return ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Count of chunks published in skip list.
+     */
+    int chunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Find and lock chunk witch contains key.
+     *
+     * @param key   is key to find
+     * @param write is true for write lock
+     */
+    @NotNull
+    private Chunk lock(@NotNull final ByteBuffer key, final boolean write) {
+        Chunk chunk = chunks.floorEntry(key).getValue();
+        Lock lock = write ? chunk.lock.writeLock() : chunk.lock.readLock();
+        lock.lock();
+        while (chunk.next != null && key.compareTo(chunk.next.min) >= 0) {
+            final Chunk next = chunk.next;
+            lock.unlock();
+            chunk = next;
+            lock = write ? chunk.lock.writeLock() : chunk.lock.readLock();
+            lock.lock();
+        }
+        return chunk;
+    }
+
+    /**
+     * Insert new entry to chunk locked for write, full chunk is split before.
+     */
+    private void insert(@NotNull final Chunk chunk,
+                        final int index,
+                        @NotNull final ByteBuffer key,
+                        @NotNull final Value value) {
+        if (chunk.count < CHUNK_SIZE) {
+            chunk.insert(index, key, value);
+            return;
+        }
+        // Right half is reachable only through locked chunk until it is published
+        final Chunk right = chunk.split();
+        if (index > chunk.count) {
+            right.insert(index - chunk.count, key, value);
+        } else {
+            chunk.insert(index, key, value);
+        }
+        chunks.put(right.min, right);
+    }
+
+    private static final class Chunk {
+        private final ByteBuffer min;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final int[] offsets = new int[CHUNK_SIZE + 1];
+        private final Value[] values = new Value[CHUNK_SIZE];
+        private byte[] keys;
+        private int count;
+        private volatile Chunk next;
+
+        Chunk(@NotNull final ByteBuffer min) {
+            this.min = min.asReadOnlyBuffer();
+            this.keys = new byte[INITIAL_KEYS_SIZE];
+        }
+
+        /**
+         * Binary search of key.
+         *
+         * @return index of key or (-(insertion point) - 1)
+         */
+        int search(@NotNull final ByteBuffer key) {
+            int left = 0;
+            int right = count - 1;
+            while (left <= right) {
+                final int mid = (left + right) >>> 1;
+                final int cmp = compare(mid, key);
+                if (cmp < 0) {
+                    left = mid + 1;
+                } else if (cmp > 0) {
+                    right = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -left - 1;
+        }
+
+        /**
+         * Compare key at index with key in the same order as {@link ByteBuffer#compareTo}.
+         */
+        private int compare(final int index,
+                            @NotNull final ByteBuffer key) {
+            final int from = offsets[index];
+            final int length = offsets[index + 1] - from;
+            final int keyLength = key.remaining();
+            if (key.hasArray()) {
+                final int keyFrom = key.arrayOffset() + key.position();
+                return Arrays.compare(keys, from, from + length, key.array(), keyFrom, keyFrom + keyLength);
+            }
+            final int common = Math.min(length, keyLength);
+            for (int i = 0; i < common; i++) {
+                final int cmp = Byte.compare(keys[from + i], key.get(key.position() + i));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return length - keyLength;
+        }
+
+        void insert(final int index,
+                    @NotNull final ByteBuffer key,
+                    @NotNull final Value value) {
+            final int length = key.remaining();
+            final int used = offsets[count];
+            if (used + length > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, used + length));
+            }
+            final int at = offsets[index];
+            System.arraycopy(keys, at, keys, at + length, used - at);
+            key.duplicate().get(keys, at, length);
+            for (int i = count + 1; i > index; i--) {
+                offsets[i] = offsets[i - 1] + length;
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = value;
+            count++;
+        }
+
+        /**
+         * Move upper half of entries to the new chunk linked to the right.
+         */
+        @NotNull
+        Chunk split() {
+            final int half = count / 2;
+            final Chunk right = new Chunk(ByteBuffer.wrap(key(half)));
+            final int from = offsets[half];
+            final int size = offsets[count] - from;
+            right.keys = Arrays.copyOfRange(keys, from, from + Math.max(size, INITIAL_KEYS_SIZE));
+            for (int i = half; i <= count; i++) {
+                right.offsets[i - half] = offsets[i] - from;
+            }
+            System.arraycopy(values, half, right.values, 0, count - half);
+            Arrays.fill(values, half, count, null);
+            right.count = count - half;
+            count = half;
+            right.next = next;
+            next = right;
+            return right;
+        }
+
+        @NotNull
+        byte[] key(final int index) {
+            return Arrays.copyOfRange(keys, offsets[index], offsets[index + 1]);
+        }
+    }
+
+    private static final class ChunkIterator implements Iterator<Map.Entry<ByteBuffer, Value>> {
+        private final Deque<Map.Entry<ByteBuffer, Value>> ready = new ArrayDeque<>();
+        private Chunk chunk;
+        private ByteBuffer lower;
+        private boolean inclusive = true;
+
+        ChunkIterator(@NotNull final Chunk chunk,
+                      @NotNull final ByteBuffer from) {
+            this.chunk = chunk;
+            this.lower = from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty() && chunk != null) {
+                advance();
+            }
+            return !ready.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<ByteBuffer, Value> next() {
+            assert hasNext();
+            return ready.pollFirst();
+        }
+
+        /**
+         * Copy entries of current chunk after lower bound, keys moved right
+         * by concurrent split are filtered by bound in the next chunks.
+         */
+        private void advance() {
+            final Chunk current = chunk;
+            current.lock.readLock().lock();
+            try {
+                int index = current.search(lower);
+                if (index < 0) {
+                    index = -index - 1;
+                } else if (!inclusive) {
+                    index++;
+                }
+                for (int i = index; i < current.count; i++) {
+                    final ByteBuffer key = ByteBuffer.wrap(current.key(i));
+                    ready.addLast(new AbstractMap.SimpleImmutableEntry<>(key, current.values[i]));
+                    lower = key.asReadOnlyBuffer();
+                    inclusive = false;
+                }
+                chunk = current.next;
+            } finally {
+                current.lock.readLock().unlock();
+            }
+        }
+    }
+}
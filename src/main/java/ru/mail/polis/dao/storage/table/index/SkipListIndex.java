@@ -0,0 +1,62 @@
+package ru.mail.polis.dao.storage.table.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index backed by {@link ConcurrentSkipListMap}, one skip list node per entry.
+ */
+final class SkipListIndex implements MemTableIndex {
+
+    /**
+     * Skip list node, a third of index node on average, key buffer and its array header.
+     */
+    private static final long ENTRY_OVERHEAD = 24 + 8 + 48 + 16;
+
+    private final NavigableMap<ByteBuffer, Value> storage = new ConcurrentSkipListMap<>();
+    private final NavigableMap<ByteBuffer, Value> unmodifiable = Collections.unmodifiableNavigableMap(storage);
+
+    @Nullable
+    @Override
+    public Value get(@NotNull final ByteBuffer key) {
+        return storage.get(key);
+    }
+
+    @Nullable
+    @Override
+    public Value put(@NotNull final ByteBuffer key, @NotNull final Value value) {
+        return storage.put(key, value);
+    }
+
+    @Nullable
+    @Override
+    public Value putIfAbsent(@NotNull final ByteBuffer key, @NotNull final Value value) {
+        return storage.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(@NotNull final ByteBuffer key,
+                           @NotNull final Value expected,
+                           @NotNull final Value value) {
+        return storage.replace(key, expected, value);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<ByteBuffer, Value>> iterator(@NotNull final ByteBuffer from) {
+        return unmodifiable.tailMap(from).entrySet().iterator();
+    }
+
+    @Override
+    public long entryOverhead() {
+        return ENTRY_OVERHEAD;
+    }
+}
@@ -0,0 +1,280 @@
+package ru.mail.polis.dao.storage.vlog;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.storage.Durability;
+import ru.mail.polis.dao.storage.IoRateLimiter;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.table.Table;
+import ru.mail.polis.utils.GenerationUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Append-only log of big values, SSTables keep only {@link ValuePointer}s to them,
+ * so compaction moves pointers instead of values.
+ */
+public final class ValueLog implements Closeable {
+
+    public static final String FILE_NAME = "ValueLog_";
+
+    private static final Logger logger = LoggerFactory.getLogger(ValueLog.class);
+    private static final long FILE_SIZE_LIMIT = 64 * 1024 * 1024;
+    private static final double GC_LIVE_RATIO = 0.5;
+
+    private final File directory;
+    private final int threshold;
+    private final IoRateLimiter limiter;
+    private final NavigableMap<Long, FileChannel> files = new ConcurrentSkipListMap<>();
+    private final Set<Long> relocating = ConcurrentHashMap.newKeySet();
+    private final Map<Long, FileChannel> retired = new ConcurrentHashMap<>();
+    private final Set<Long> unsynced = ConcurrentHashMap.newKeySet();
+
+    private FileChannel active;
+    private volatile long activeFile;
+    private long activeSize;
+
+    /**
+     * Open value log files from directory, new values are appended to the new file.
+     *
+     * @param directory is the base directory, where contains our database
+     * @param threshold is min size of value witch is written to value log, zero disables writing
+     * @param limiter   is the budget of background writes
+     */
+    public ValueLog(@NotNull final File directory,
+                    final int threshold,
+                    @NotNull final IoRateLimiter limiter) throws IOException {
+        this.directory = directory;
+        this.threshold = threshold;
+        this.limiter = limiter;
+        long maxFile = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), FILE_NAME + "*")) {
+            for (final Path path : stream) {
+                final long file = GenerationUtils.fromPath(path);
+                files.put(file, FileChannel.open(path, StandardOpenOption.READ));
+                maxFile = Math.max(maxFile, file);
+            }
+        }
+        this.activeFile = maxFile + 1;
+    }
+
+    /**
+     * Check if value should be separated from key.
+     *
+     * @param value is value witch we want to write
+     */
+    public boolean separate(@NotNull final ByteBuffer value) {
+        return threshold > 0 && value.remaining() >= threshold;
+    }
+
+    /**
+     * Append value to active file.
+     *
+     * @param value is value witch we want to write
+     */
+    @NotNull
+    public ValuePointer append(@NotNull final ByteBuffer value) throws IOException {
+        limiter.acquire(value.remaining());
+        return write(value);
+    }
+
+    @NotNull
+    private synchronized ValuePointer write(@NotNull final ByteBuffer value) throws IOException {
+        if (active == null) {
+            active = FileChannel.open(path(activeFile),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            files.put(activeFile, active);
+        }
+        final ByteBuffer data = value.duplicate();
+        final int size = data.remaining();
+        final long offset = activeSize;
+        while (data.hasRemaining()) {
+            active.write(data, offset + size - data.remaining());
+        }
+        activeSize += size;
+        unsynced.add(activeFile);
+        final ValuePointer pointer = new ValuePointer(this, activeFile, offset, size);
+        if (activeSize >= FILE_SIZE_LIMIT) {
+            active = null;
+            activeSize = 0;
+            activeFile = activeFile + 1;
+        }
+        return pointer;
+    }
+
+    /**
+     * Make values appended since the last call durable, must be called before
+     * tables pointing to them are made durable.
+     *
+     * @param durability is fsync policy of storage
+     * @param urgent     is true if it must be done at once even for batched policy
+     */
+    public void sync(@NotNull final Durability durability,
+                     final boolean urgent) throws IOException {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        for (final long file : unsynced) {
+            unsynced.remove(file);
+            durability.file(path(file), urgent);
+        }
+        durability.directory(directory.toPath(), urgent);
+    }
+
+    /**
+     * Move value to active file if its file is going to be collected.
+     *
+     * @param pointer is pointer witch is copied by compaction
+     */
+    @NotNull
+    public ValuePointer relocate(@NotNull final ValuePointer pointer) throws IOException {
+        if (relocating.contains(pointer.getFile())) {
+            return append(pointer.read());
+        }
+        return pointer;
+    }
+
+    /**
+     * Create pointer read from SSTable.
+     *
+     * @param buffer is buffer positioned at pointer
+     */
+    @NotNull
+    public ValuePointer pointer(@NotNull final ByteBuffer buffer) {
+        final long file = buffer.getLong();
+        final long offset = buffer.getLong();
+        final int size = buffer.getInt();
+        return new ValuePointer(this, file, offset, size);
+    }
+
+    /**
+     * Paths of all value log files.
+     */
+    @NotNull
+    public Collection<Path> paths() {
+        final Collection<Path> paths = new ArrayList<>(files.size());
+        for (final long file : files.keySet()) {
+            paths.add(path(file));
+        }
+        return paths;
+    }
+
+    /**
+     * Start new active file, so all existing files are immutable.
+     *
+     * @return paths of all value log files but the new active one
+     */
+    @NotNull
+    public synchronized Collection<Path> seal() {
+        if (active != null) {
+            active = null;
+            activeSize = 0;
+            activeFile = activeFile + 1;
+        }
+        return paths();
+    }
+
+    public long activeFile() {
+        return activeFile;
+    }
+
+    /**
+     * Remove files without live values and mark sparse files to be relocated by next compaction.
+     * Only files sealed before compaction are collected, because newer ones may be
+     * referenced by SSTables flushed while compaction.
+     *
+     * @param tables     is all tables on disk after compaction
+     * @param activeFile is active file at the start of compaction
+     * @return true if some files should be relocated by compaction
+     */
+    public synchronized boolean collect(@NotNull final Collection<? extends Table> tables,
+                                        final long activeFile) throws IOException {
+        // Readers had time to finish with files collected last time
+        for (final FileChannel channel : retired.values()) {
+            channel.close();
+        }
+        retired.clear();
+
+        final Map<Long, Long> live = new HashMap<>();
+        for (final Table table : tables) {
+            final Iterator<Cell> cells = table.iterator(LSMDao.EMPTY_BUFFER);
+            while (cells.hasNext()) {
+                final ValuePointer pointer = cells.next().getValue().getPointer();
+                if (pointer != null) {
+                    live.merge(pointer.getFile(), (long) pointer.getSize(), Long::sum);
+                }
+            }
+        }
+
+        relocating.clear();
+        for (final Map.Entry<Long, FileChannel> entry : files.headMap(activeFile).entrySet()) {
+            final long file = entry.getKey();
+            final long liveBytes = live.getOrDefault(file, 0L);
+            if (liveBytes == 0) {
+                files.remove(file);
+                retired.put(file, entry.getValue());
+                Files.delete(path(file));
+                logger.info("Value log {} is collected", file);
+            } else if (liveBytes < entry.getValue().size() * GC_LIVE_RATIO) {
+                relocating.add(file);
+            }
+        }
+        return !relocating.isEmpty();
+    }
+
+    @NotNull
+    ByteBuffer read(@NotNull final ValuePointer pointer) {
+        FileChannel channel = files.get(pointer.getFile());
+        if (channel == null) {
+            channel = retired.get(pointer.getFile());
+        }
+        if (channel == null) {
+            throw new IllegalStateException("Value log is already collected: " + pointer.getFile());
+        }
+        final ByteBuffer result = ByteBuffer.allocate(pointer.getSize());
+        try {
+            while (result.hasRemaining()) {
+                if (channel.read(result, pointer.getOffset() + result.position()) < 0) {
+                    throw new IOException("Unexpected end of value log " + pointer.getFile());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result.flip();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (final FileChannel channel : files.values()) {
+            channel.close();
+        }
+        for (final FileChannel channel : retired.values()) {
+            channel.close();
+        }
+    }
+
+    private Path path(final long file) {
+        return new File(directory, FILE_NAME + file + LSMDao.SUFFIX_DAT).toPath();
+    }
+}
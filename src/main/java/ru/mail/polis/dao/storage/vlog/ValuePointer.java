@@ -0,0 +1,67 @@
+package ru.mail.polis.dao.storage.vlog;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+public final class ValuePointer {
+
+    /**
+     * Size of pointer in SSTable: file, offset and size of value.
+     */
+    public static final int BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final ValueLog valueLog;
+    private final long file;
+    private final long offset;
+    private final int size;
+
+    /**
+     * Pointer to value in value log.
+     *
+     * @param valueLog is value log witch contains value
+     * @param file     is number of value log file
+     * @param offset   is offset of value in file
+     * @param size     is size of value
+     */
+    ValuePointer(@NotNull final ValueLog valueLog,
+                 final long file,
+                 final long offset,
+                 final int size) {
+        this.valueLog = valueLog;
+        this.file = file;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Read value from value log.
+     */
+    @NotNull
+    public ByteBuffer read() {
+        return valueLog.read(this);
+    }
+
+    /**
+     * Write pointer to buffer.
+     *
+     * @param to is buffer with at least {@link #BYTES} remaining
+     */
+    public void writeTo(@NotNull final ByteBuffer to) {
+        to.putLong(file);
+        to.putLong(offset);
+        to.putInt(size);
+    }
+
+    public long getFile() {
+        return file;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
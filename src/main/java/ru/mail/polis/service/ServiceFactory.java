@@ -27,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.client.ClientConfig;
 import ru.mail.polis.dao.DAO;
 import ru.mail.polis.service.rest.RestController;
 import ru.mail.polis.service.topology.Topology;
@@ -58,6 +59,24 @@ public final class ServiceFactory {
             final int port,
             @NotNull final DAO dao,
             @NotNull final Set<String> topology) throws IOException {
+        return create(port, dao, topology, ClientConfig.defaults());
+    }
+
+    /**
+     * Construct a storage instance with chosen client of other nodes.
+     *
+     * @param port         port to bind HTTP server to
+     * @param dao          DAO to store the data
+     * @param topology     a list of all cluster endpoints {@code http://<host>:<port>} (including this one)
+     * @param clientConfig tuning of client of other nodes
+     * @return a storage instance
+     */
+    @NotNull
+    public static Service create(
+            final int port,
+            @NotNull final DAO dao,
+            @NotNull final Set<String> topology,
+            @NotNull final ClientConfig clientConfig) throws IOException {
         if (Runtime.getRuntime().maxMemory() > MAX_HEAP) {
             throw new IllegalStateException("The heap is too big. Consider setting Xmx.");
         }
@@ -76,7 +95,7 @@ public final class ServiceFactory {
                 Topology.consistentHashTopology(
                         serviceNodes,
                         new ServiceNode(new URL("http://localhost:"+port)), 10);
-        return RestController.create(port, dao, topologyNodes);
+        return RestController.create(port, dao, topologyNodes, clientConfig);
     }
 
     private static URL createURL(@NotNull final String s) {
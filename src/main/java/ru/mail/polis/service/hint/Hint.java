@@ -0,0 +1,89 @@
+package ru.mail.polis.service.hint;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write missed by replica, which is replayed with its original timestamp.
+ * Record is [int size][long timestamp][byte removed][short size][keyspace][int size][id][data].
+ */
+final class Hint {
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Byte.BYTES + Short.BYTES + Integer.BYTES;
+
+    private final String keyspace;
+    private final String id;
+    private final Value value;
+
+    Hint(@NotNull final String keyspace,
+         @NotNull final String id,
+         @NotNull final Value value) {
+        this.keyspace = keyspace;
+        this.id = id;
+        this.value = value;
+    }
+
+    @NotNull
+    String getKeyspace() {
+        return keyspace;
+    }
+
+    @NotNull
+    String getId() {
+        return id;
+    }
+
+    @NotNull
+    Value getValue() {
+        return value;
+    }
+
+    @NotNull
+    ByteBuffer encode() {
+        final byte[] keyspaceBytes = keyspace.getBytes(StandardCharsets.UTF_8);
+        final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        final boolean removed = value.getState() == Value.State.REMOVED;
+        final ByteBuffer data = removed ? ByteBuffer.allocate(0) : value.getData().duplicate();
+        final int size = HEADER_BYTES + keyspaceBytes.length + idBytes.length + data.remaining();
+        final ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(size - Integer.BYTES)
+                .putLong(value.getTimestamp())
+                .put((byte) (removed ? 1 : 0))
+                .putShort((short) keyspaceBytes.length).put(keyspaceBytes)
+                .putInt(idBytes.length).put(idBytes)
+                .put(data);
+        return record.flip();
+    }
+
+    /**
+     * Read the next record of log.
+     *
+     * @param log is log positioned at record, it is moved past the record
+     */
+    @NotNull
+    static Hint decode(@NotNull final ByteBuffer log) {
+        final int size = log.getInt();
+        final int end = log.position() + size;
+        final long timestamp = log.getLong();
+        final boolean removed = log.get() != 0;
+        final String keyspace = string(log, log.getShort());
+        final String id = string(log, log.getInt());
+        final ByteBuffer data = log.duplicate().limit(end).slice();
+        log.position(end);
+        final Value value = removed
+                ? new Value(null, Value.State.REMOVED, timestamp)
+                : new Value(data, Value.State.PRESENT, timestamp);
+        return new Hint(keyspace, id, value);
+    }
+
+    @NotNull
+    private static String string(@NotNull final ByteBuffer log,
+                                 final int size) {
+        final byte[] bytes = new byte[size];
+        log.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
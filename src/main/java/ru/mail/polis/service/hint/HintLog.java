@@ -0,0 +1,167 @@
+package ru.mail.polis.service.hint;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Log of hints of one node. Hints are appended to the log, replay moves the whole log
+ * aside, so new hints are not blocked by replay, and reads it hint by hint.
+ * Offset of the first hint not sent yet is saved, so the next replay starts from it.
+ */
+final class HintLog implements Closeable {
+
+    static final String SUFFIX = ".hints";
+    private static final String REPLAY_SUFFIX = ".replay";
+    private static final String OFFSET_SUFFIX = ".offset";
+    private static final int SAVE_EVERY_HINTS = 1000;
+
+    private final Path file;
+    private final Path replayFile;
+    private final Path offsetFile;
+    private FileChannel channel;
+
+    // Replay is done by one thread
+    private FileChannel replay;
+    private long replayed;
+    private Hint next;
+    private int nextSize;
+    private int unsaved;
+
+    HintLog(@NotNull final Path file) {
+        this.file = file;
+        this.replayFile = file.resolveSibling(file.getFileName() + REPLAY_SUFFIX);
+        this.offsetFile = file.resolveSibling(file.getFileName() + REPLAY_SUFFIX + OFFSET_SUFFIX);
+    }
+
+    synchronized void append(@NotNull final Hint hint) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        final ByteBuffer record = hint.encode();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Read hint to replay without moving past it, including hints left by replay interrupted by restart.
+     *
+     * @return null if all hints are replayed
+     */
+    @Nullable
+    Hint peek() throws IOException {
+        if (next != null) {
+            return next;
+        }
+        if (replay == null && !open()) {
+            return null;
+        }
+        final ByteBuffer size = ByteBuffer.allocate(Integer.BYTES);
+        if (read(size) && size.getInt(0) >= 0) {
+            final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + size.getInt(0));
+            if (read(record)) {
+                next = Hint.decode(record.flip());
+                nextSize = record.capacity();
+                return next;
+            }
+        }
+        // Record torn by crash is the last one
+        finishReplay();
+        return null;
+    }
+
+    /**
+     * Move past the hint returned by {@link #peek()}, it is sent or expired.
+     */
+    void advance() throws IOException {
+        if (next == null) {
+            throw new IllegalStateException("No hint to advance");
+        }
+        replayed += nextSize;
+        next = null;
+        if (++unsaved >= SAVE_EVERY_HINTS) {
+            save();
+        }
+    }
+
+    /**
+     * Save offset of the first hint not sent yet.
+     */
+    void save() throws IOException {
+        if (replay == null || unsaved == 0) {
+            return;
+        }
+        final ByteBuffer offset = ByteBuffer.allocate(Long.BYTES).putLong(replayed).flip();
+        Files.write(offsetFile, offset.array());
+        unsaved = 0;
+    }
+
+    private boolean open() throws IOException {
+        synchronized (this) {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(file)) {
+                    return false;
+                }
+                closeAppender();
+                Files.move(file, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(offsetFile);
+            }
+        }
+        replay = FileChannel.open(replayFile, StandardOpenOption.READ);
+        replayed = 0;
+        if (Files.exists(offsetFile)) {
+            final ByteBuffer offset = ByteBuffer.wrap(Files.readAllBytes(offsetFile));
+            // Torn offset only makes hints to be sent again
+            if (offset.remaining() == Long.BYTES) {
+                replayed = Math.max(0, Math.min(offset.getLong(), replay.size()));
+            }
+        }
+        return true;
+    }
+
+    private boolean read(@NotNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (replay.read(buffer, replayed + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void finishReplay() throws IOException {
+        replay.close();
+        replay = null;
+        replayed = 0;
+        unsaved = 0;
+        Files.delete(replayFile);
+        Files.deleteIfExists(offsetFile);
+    }
+
+    private synchronized void closeAppender() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeAppender();
+        if (replay != null) {
+            save();
+            replay.close();
+            replay = null;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ru.mail.polis.service.hint;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.client.AsyncHttpClient;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hints of writes failed by replicas, stored in a log per node and replayed
+ * by timer when node is reachable again. Hints are written with their original
+ * timestamps, so replay never overwrites newer values. Only upserts and deletes
+ * are hinted, merge operands are not idempotent.
+ */
+public final class HintedHandoff implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HintedHandoff.class);
+
+    private final Path directory;
+    private final AsyncHttpClient client;
+    private final ClientConfig config;
+    private final ConcurrentMap<String, HintLog> logs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AsyncHttpClient> keyspaces = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService replayer;
+
+    /**
+     * Open hints left by previous run and start their replay.
+     *
+     * @param directory is directory of hint logs
+     * @param client    is client of other nodes
+     * @param config    is ttl and replay rate of hints
+     */
+    public HintedHandoff(@NotNull final Path directory,
+                         @NotNull final AsyncHttpClient client,
+                         @NotNull final ClientConfig config) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.client = client;
+        this.config = config;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + HintLog.SUFFIX + "*")) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final String node = URLDecoder.decode(
+                        name.substring(0, name.indexOf(HintLog.SUFFIX)), StandardCharsets.UTF_8);
+                logs.computeIfAbsent(node, this::log);
+            }
+        }
+        this.replayer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("hints-replayer-%d").setDaemon(true).build());
+        replayer.scheduleWithFixedDelay(this::replay,
+                config.hintReplayIntervalMs, config.hintReplayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Store write failed by node.
+     *
+     * @param node     is url of node
+     * @param keyspace is name of keyspace, empty for default storage
+     * @param id       is id of entity
+     * @param value    is present value or tombstone with timestamp of write
+     */
+    public void store(@NotNull final String node,
+                      @NotNull final String keyspace,
+                      @NotNull final String id,
+                      @NotNull final Value value) {
+        try {
+            logs.computeIfAbsent(node, this::log).append(new Hint(keyspace, id, value));
+        } catch (IOException e) {
+            logger.error("Error while store hint for {} : ", node, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        replayer.shutdownNow();
+        try {
+            replayer.awaitTermination(config.timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (final HintLog log : logs.values()) {
+            log.close();
+        }
+    }
+
+    @NotNull
+    private HintLog log(@NotNull final String node) {
+        return new HintLog(directory.resolve(URLEncoder.encode(node, StandardCharsets.UTF_8) + HintLog.SUFFIX));
+    }
+
+    private void replay() {
+        for (final ConcurrentMap.Entry<String, HintLog> log : logs.entrySet()) {
+            try {
+                replay(log.getKey(), log.getValue());
+            } catch (IOException e) {
+                logger.error("Error while replay hints of {} : ", log.getKey(), e);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void replay(@NotNull final String node,
+                        @NotNull final HintLog log) throws IOException {
+        final long expired = System.currentTimeMillis() - config.hintTtlMs;
+        final long pauseNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.hintsPerSecond);
+        long next = System.nanoTime();
+        int done = 0;
+        try {
+            Hint hint;
+            while ((hint = log.peek()) != null) {
+                if (hint.getValue().getTimestamp() >= expired) {
+                    LockSupport.parkNanos(next - System.nanoTime());
+                    next = Math.max(next, System.nanoTime()) + pauseNanos;
+                    if (!send(node, hint)) {
+                        // Node is still unreachable, the rest waits for the next replay
+                        break;
+                    }
+                }
+                log.advance();
+                done++;
+            }
+        } finally {
+            log.save();
+        }
+        if (done > 0) {
+            logger.info("Replayed or expired {} hints of {}", done, node);
+        }
+    }
+
+    private boolean send(@NotNull final String node,
+                         @NotNull final Hint hint) {
+        final AsyncHttpClient target = hint.getKeyspace().isEmpty()
+                ? client
+                : keyspaces.computeIfAbsent(hint.getKeyspace(), client::keyspace);
+        try {
+            target.repair(hint.getValue(), hint.getId(), node).get(config.timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.mail.polis.service.range;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Body of response read as stream. The next part of body is requested only when the previous one
+ * is read, so the node is paused by flow control of socket, and read fails if the next part
+ * does not come in time, because timeout of request covers only its headers.
+ */
+final class BodyStream extends InputStream implements HttpResponse.BodySubscriber<InputStream> {
+    // At most one part is received ahead of the read one
+    private final BlockingQueue<List<ByteBuffer>> received = new LinkedBlockingQueue<>();
+    private final long timeoutMs;
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable failure;
+    private volatile boolean completed;
+    private Iterator<ByteBuffer> buffers = Collections.emptyIterator();
+    private ByteBuffer current;
+    private boolean done;
+    private volatile boolean closed;
+
+    BodyStream(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public CompletionStage<InputStream> getBody() {
+        // Response is completed by its headers, body is read later
+        return CompletableFuture.completedStage(this);
+    }
+
+    @Override
+    public void onSubscribe(@NotNull final Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (closed) {
+            subscription.cancel();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(@NotNull final List<ByteBuffer> item) {
+        received.add(item);
+    }
+
+    @Override
+    public void onError(@NotNull final Throwable throwable) {
+        failure = throwable;
+        onComplete();
+    }
+
+    @Override
+    public void onComplete() {
+        // Empty part wakes up reader, all parts are received before it
+        completed = true;
+        received.add(Collections.emptyList());
+    }
+
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer buffer = current();
+        return buffer == null ? -1 : buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(@NotNull final byte[] bytes,
+                    final int offset,
+                    final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        final ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        final int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.remaining();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    /**
+     * Buffer with unread bytes of body waiting for the next part of body.
+     *
+     * @return null if body is read to the end
+     */
+    @Nullable
+    private ByteBuffer current() throws IOException {
+        while (current == null || !current.hasRemaining()) {
+            if (buffers.hasNext()) {
+                current = buffers.next();
+                continue;
+            }
+            if (done) {
+                return null;
+            }
+            if (closed) {
+                throw new IOException("Body stream is closed");
+            }
+            final List<ByteBuffer> next;
+            try {
+                next = received.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Read of body is interrupted");
+            }
+            if (next == null) {
+                throw new SocketTimeoutException("No part of body in " + timeoutMs + " ms");
+            }
+            if (next.isEmpty() && completed && received.isEmpty()) {
+                done = true;
+                if (failure != null) {
+                    throw new IOException("Body is broken", failure);
+                }
+                return null;
+            }
+            buffers = next.iterator();
+            subscription.request(1);
+        }
+        return current;
+    }
+}
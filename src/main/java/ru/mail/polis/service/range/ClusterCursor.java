@@ -0,0 +1,91 @@
+package ru.mail.polis.service.range;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.Cursor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Cursor merging sorted streams of replicas, record of each key is taken from the replica
+ * with the latest timestamp and is skipped if it is tombstone.
+ * Streams at the returned key are moved only by the next step, so its key and value stay valid.
+ */
+final class ClusterCursor implements Cursor {
+    private final List<ReplicaStream> streams;
+    private final PriorityQueue<ReplicaStream> heap;
+    private final List<ReplicaStream> consumed;
+    private ReplicaStream current;
+    private boolean closed;
+
+    ClusterCursor(@NotNull final List<ReplicaStream> streams) {
+        this.streams = streams;
+        this.heap = new PriorityQueue<>(Math.max(1, streams.size()), Comparator.comparing(ReplicaStream::key));
+        this.consumed = new ArrayList<>(streams);
+    }
+
+    @Override
+    public void seek(@NotNull final ByteBuffer from) {
+        throw new UnsupportedOperationException("Cluster cursor can't seek");
+    }
+
+    @Override
+    public boolean next() {
+        if (closed) {
+            return false;
+        }
+        while (true) {
+            for (final ReplicaStream stream : consumed) {
+                if (stream.next()) {
+                    heap.add(stream);
+                }
+            }
+            consumed.clear();
+            if (heap.isEmpty()) {
+                close();
+                return false;
+            }
+            final ReplicaStream first = heap.poll();
+            consumed.add(first);
+            ReplicaStream newest = first;
+            final ByteBuffer key = first.key();
+            while (!heap.isEmpty() && heap.peek().key().equals(key)) {
+                final ReplicaStream stream = heap.poll();
+                consumed.add(stream);
+                if (stream.timestamp() > newest.timestamp()) {
+                    newest = stream;
+                }
+            }
+            if (!newest.removed()) {
+                current = newest;
+                return true;
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return current.key();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        return current.data();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (final ReplicaStream stream : streams) {
+            stream.close();
+        }
+    }
+}
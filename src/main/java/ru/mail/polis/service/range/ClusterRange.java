@@ -0,0 +1,184 @@
+package ru.mail.polis.service.range;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.Cursor;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.service.topology.Topology;
+import ru.mail.polis.service.topology.node.ServiceNode;
+import ru.mail.polis.utils.BytesUtils;
+import ru.mail.polis.utils.ConstUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Range scan of the whole cluster. Coordinator opens range streams of all nodes and merges them by key,
+ * the latest record of each key wins. Every node is replica of each key under default replication,
+ * so the range is complete if streams of quorum of nodes are opened. Streams are read only as fast
+ * as client reads merged records, so nothing is buffered beyond socket buffers.
+ * Reads of other nodes wait for network, so merged records are read by {@link #readers()}.
+ */
+public final class ClusterRange implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRange.class);
+    private static final String ENTITIES_PATH = "/v0/entities?start=";
+
+    private final DAO dao;
+    private final Topology<ServiceNode> topology;
+    private final int quorum;
+    private final ClientConfig config;
+    private final HttpClient client;
+    private final ExecutorService readers;
+
+    /**
+     * Create range scan of cluster.
+     *
+     * @param dao      is local storage
+     * @param topology is node topology
+     * @param quorum   is count of nodes, streams of which are needed for complete range
+     * @param config   is timeout of opening and reading streams and count of readers
+     */
+    public ClusterRange(@NotNull final DAO dao,
+                        @NotNull final Topology<ServiceNode> topology,
+                        final int quorum,
+                        @NotNull final ClientConfig config) {
+        this.dao = dao;
+        this.topology = topology;
+        this.quorum = quorum;
+        this.config = config;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(config.timeoutMs))
+                .build();
+        this.readers = Executors.newFixedThreadPool(config.workers,
+                new ThreadFactoryBuilder().setNameFormat("cluster-range-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Threads reading records of cursors of cluster, so selector threads are not blocked by other nodes.
+     */
+    @NotNull
+    public Executor readers() {
+        return readers;
+    }
+
+    /**
+     * Cursor over latest records of local storage including tombstones for coordinator.
+     *
+     * @param from is the first key (inclusive)
+     * @param to   is the last key (exclusive), null for the end of storage
+     */
+    @NotNull
+    public Cursor replica(@NotNull final ByteBuffer from,
+                          @Nullable final ByteBuffer to) {
+        return new ReplicaCursor(new LocalStream(dao.latestIterator(from), to));
+    }
+
+    /**
+     * Cursor over alive records of the whole cluster, fails if streams of quorum of nodes can't be opened.
+     *
+     * @param start is the first id (inclusive)
+     * @param end   is the last id (exclusive), null for the end of storage
+     */
+    @NotNull
+    public CompletableFuture<Cursor> cursor(@NotNull final String start,
+                                            @Nullable final String end) {
+        final ByteBuffer from = BytesUtils.keyByteBuffer(start);
+        final ByteBuffer to = end == null ? null : BytesUtils.keyByteBuffer(end);
+        if (topology.size() == 1) {
+            try {
+                return CompletableFuture.completedFuture(dao.cursor(from, to));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        final List<CompletableFuture<ReplicaStream>> opened = new ArrayList<>(topology.size());
+        for (final ServiceNode node : topology.all()) {
+            opened.add(topology.isMe(node)
+                    ? CompletableFuture.completedFuture(new LocalStream(dao.latestIterator(from), to))
+                    : open(node, start, end));
+        }
+        return CompletableFuture.allOf(opened.stream()
+                .map(future -> future.handle((stream, throwable) -> stream))
+                .toArray(CompletableFuture<?>[]::new))
+                .thenApply(ignored -> merge(opened));
+    }
+
+    @Override
+    public void close() {
+        readers.shutdownNow();
+    }
+
+    @NotNull
+    private Cursor merge(@NotNull final List<CompletableFuture<ReplicaStream>> opened) {
+        final List<ReplicaStream> streams = new ArrayList<>(opened.size());
+        for (final CompletableFuture<ReplicaStream> future : opened) {
+            if (!future.isCompletedExceptionally()) {
+                streams.add(future.join());
+            }
+        }
+        if (streams.size() < quorum) {
+            streams.forEach(ReplicaStream::close);
+            throw new IllegalStateException("Only " + streams.size() + " of " + quorum + " range streams are opened");
+        }
+        return new ClusterCursor(streams);
+    }
+
+    @NotNull
+    private CompletableFuture<ReplicaStream> open(@NotNull final ServiceNode node,
+                                                  @NotNull final String start,
+                                                  @Nullable final String end) {
+        final StringBuilder uri = new StringBuilder(node.key())
+                .append(ENTITIES_PATH).append(URLEncoder.encode(start, StandardCharsets.UTF_8));
+        if (end != null) {
+            uri.append("&end=").append(URLEncoder.encode(end, StandardCharsets.UTF_8));
+        }
+        final HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri.toString()))
+                .header(ConstUtils.PROXY_HEADER_NAME, ConstUtils.PROXY_HEADER_VALUE)
+                .timeout(Duration.ofMillis(config.timeoutMs))
+                .GET()
+                .build();
+        return client.sendAsync(request, info -> new BodyStream(config.rangeReadTimeoutMs))
+                .thenApply(response -> stream(node, response))
+                .whenComplete((stream, throwable) -> {
+                    if (throwable != null) {
+                        logger.info("Can't open range stream of {} : {}", node.key(), throwable.getMessage());
+                    }
+                });
+    }
+
+    @NotNull
+    private static ReplicaStream stream(@NotNull final ServiceNode node,
+                                        @NotNull final HttpResponse<InputStream> response) {
+        if (response.statusCode() != 200) {
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            throw new IllegalStateException("Range stream of " + node.key() + " is answered by " + response.statusCode());
+        }
+        return new RemoteStream(response.body(), node.key());
+    }
+}
@@ -0,0 +1,69 @@
+package ru.mail.polis.service.range;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Records of local storage in range ["from", "to").
+ */
+final class LocalStream implements ReplicaStream {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final CloseableIterator<Cell> cells;
+    private final ByteBuffer to;
+    private ByteBuffer key;
+    private Value value;
+
+    LocalStream(@NotNull final CloseableIterator<Cell> cells,
+                @Nullable final ByteBuffer to) {
+        this.cells = cells;
+        this.to = to;
+    }
+
+    @Override
+    public boolean next() {
+        if (!cells.hasNext()) {
+            return false;
+        }
+        final Cell cell = cells.next();
+        if (to != null && cell.getKey().compareTo(to) >= 0) {
+            cells.close();
+            return false;
+        }
+        key = cell.getKey();
+        value = cell.getValue();
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return key;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer data() {
+        return removed() ? EMPTY.duplicate() : value.getData().duplicate();
+    }
+
+    @Override
+    public long timestamp() {
+        return value.getTimestamp();
+    }
+
+    @Override
+    public boolean removed() {
+        return value.getState() == Value.State.REMOVED;
+    }
+
+    @Override
+    public void close() {
+        cells.close();
+    }
+}
@@ -0,0 +1,105 @@
+package ru.mail.polis.service.range;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Records of other node read from body of its range response in {@link ReplicaCursor} format.
+ * Body is read only when the next record is requested, so the node is paused by flow control of socket.
+ */
+final class RemoteStream implements ReplicaStream {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteStream.class);
+    private static final int RECORD_HEADER = Long.BYTES + Byte.BYTES;
+
+    private final DataInputStream body;
+    private final String node;
+    private byte[] key = new byte[64];
+    private byte[] data = new byte[256];
+    private ByteBuffer keyView;
+    private ByteBuffer dataView;
+    private long timestamp;
+    private boolean removed;
+
+    RemoteStream(@NotNull final InputStream body,
+                 @NotNull final String node) {
+        this.body = new DataInputStream(new BufferedInputStream(body));
+        this.node = node;
+    }
+
+    @Override
+    public boolean next() {
+        try {
+            final int keyLength;
+            try {
+                keyLength = body.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            key = read(key, keyLength);
+            keyView = ByteBuffer.wrap(key, 0, keyLength);
+            final int valueLength = body.readInt();
+            if (valueLength < RECORD_HEADER) {
+                throw new IOException("Malformed record of length " + valueLength);
+            }
+            timestamp = body.readLong();
+            removed = body.readByte() != 0;
+            final int dataLength = valueLength - RECORD_HEADER;
+            data = read(data, dataLength);
+            dataView = ByteBuffer.wrap(data, 0, dataLength);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Range stream of " + node + " is broken", e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return keyView;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer data() {
+        return dataView;
+    }
+
+    @Override
+    public long timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public boolean removed() {
+        return removed;
+    }
+
+    @Override
+    public void close() {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // Closing cancels the rest of response, there is nothing to do if it fails
+            logger.debug("Can't close range stream of {}", node, e);
+        }
+    }
+
+    private byte[] read(@NotNull final byte[] buffer,
+                        final int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Malformed record of length " + length);
+        }
+        final byte[] result = buffer.length < length ? new byte[Math.max(length, buffer.length * 2)] : buffer;
+        body.readFully(result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.mail.polis.service.range;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.Cursor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over latest records of local storage including tombstones answering range request of coordinator.
+ * Value of record is [long timestamp][byte removed][data], records are framed by
+ * {@link ru.mail.polis.service.rest.session.StorageSession#streamFramed}.
+ */
+final class ReplicaCursor implements Cursor {
+    private final ReplicaStream stream;
+    private ByteBuffer value = ByteBuffer.allocate(256);
+
+    ReplicaCursor(@NotNull final ReplicaStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void seek(@NotNull final ByteBuffer from) {
+        throw new UnsupportedOperationException("Replica cursor can't seek");
+    }
+
+    @Override
+    public boolean next() {
+        if (!stream.next()) {
+            return false;
+        }
+        final ByteBuffer data = stream.data();
+        final int length = Long.BYTES + Byte.BYTES + data.remaining();
+        if (value.capacity() < length) {
+            value = ByteBuffer.allocate(Math.max(length, value.capacity() * 2));
+        }
+        value.clear();
+        value.putLong(stream.timestamp()).put((byte) (stream.removed() ? 1 : 0)).put(data).flip();
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return stream.key();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        return value;
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+}
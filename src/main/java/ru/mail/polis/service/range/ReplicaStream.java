@@ -0,0 +1,37 @@
+package ru.mail.polis.service.range;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Latest records of one replica including tombstones in ascending order of keys.
+ * Key and data are views reused by the next step.
+ */
+interface ReplicaStream extends Closeable {
+
+    /**
+     * Move stream to the next record.
+     *
+     * @return false if there are no more records
+     * @throws java.io.UncheckedIOException if replica is failed in the middle of stream
+     */
+    boolean next();
+
+    @NotNull
+    ByteBuffer key();
+
+    /**
+     * Data of record, empty for tombstone.
+     */
+    @NotNull
+    ByteBuffer data();
+
+    long timestamp();
+
+    boolean removed();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,423 @@
+package ru.mail.polis.service.repair;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import one.nio.http.HttpClient;
+import one.nio.http.Response;
+import one.nio.net.ConnectionString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.service.topology.Topology;
+import ru.mail.polis.service.topology.node.ServiceNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Anti-entropy repair of default storage between replicas by {@link MerkleTree}.
+ * Node builds tree over keys it shares with peer, compares it with tree of peer built
+ * over the same keys and pulls only entries of differing leaves, which are written
+ * with their timestamps, so newer local values are kept and the peer pulls them by its own
+ * repair. Peers are repaired one by one by timer.
+ * Each repair covers the next range of keys with at most {@link ClientConfig#repairRangeRows}
+ * rows on both nodes, because tokens are not ordered by keys and any range of tokens is a full scan.
+ * Peers answer by their own scan thread, so http workers are not held by scans.
+ */
+public final class AntiEntropy implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AntiEntropy.class);
+    private static final String MERKLE_PATH = "/v0/merkle?peer=";
+    private static final ByteBuffer FIRST_KEY = ByteBuffer.allocate(0);
+    private static final int ROWS_PER_PAUSE = 1024;
+    private static final int NO_KEY = -1;
+
+    private final DAO dao;
+    private final Topology<ServiceNode> topology;
+    private final int replication;
+    private final ClientConfig config;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService scanner;
+    private final AtomicInteger nextPeer = new AtomicInteger();
+    private final ConcurrentMap<String, ByteBuffer> nextRanges = new ConcurrentHashMap<>();
+
+    /**
+     * Create repair of storage, which is started by timer if it is enabled by config.
+     *
+     * @param dao         is storage
+     * @param topology    is node topology
+     * @param replication is count of replicas of each key
+     * @param config      is period, depth of trees and rate of repair
+     */
+    public AntiEntropy(@NotNull final DAO dao,
+                       @NotNull final Topology<ServiceNode> topology,
+                       final int replication,
+                       @NotNull final ClientConfig config) {
+        this.dao = dao;
+        this.topology = topology;
+        this.replication = replication;
+        this.config = config;
+        this.scanner = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("anti-entropy-scan-%d").setDaemon(true).build());
+        if (config.antiEntropyIntervalMs > 0 && topology.size() > 1) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("anti-entropy-%d").setDaemon(true).build());
+            timer.scheduleWithFixedDelay(this::repairNext,
+                    config.antiEntropyIntervalMs, config.antiEntropyIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Build tree of keys shared with peer in range, scan stops after
+     * {@link ClientConfig#repairRangeRows} rows.
+     *
+     * @param peer  is url of peer
+     * @param depth is depth of tree
+     * @param from  is the first key of range in url-safe base64, null for the first key of storage
+     * @param to    is the key after range in url-safe base64, null if range is unbounded
+     * @return [int size][key] where scan is stopped, size is -1 if the whole range is scanned, then tree
+     */
+    @NotNull
+    public CompletableFuture<byte[]> tree(@NotNull final String peer,
+                                          final int depth,
+                                          @Nullable final String from,
+                                          @Nullable final String to) {
+        final MerkleTree tree = new MerkleTree(depth);
+        final ByteBuffer fromKey = key(from);
+        final ByteBuffer toKey = to == null ? null : key(to);
+        return CompletableFuture.supplyAsync(() -> {
+            final ByteBuffer stop = build(peer, fromKey, toKey, config.repairRangeRows, tree);
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            writeKey(result, stop);
+            final byte[] bytes = tree.seal().toBytes();
+            result.write(bytes, 0, bytes.length);
+            return result.toByteArray();
+        }, scanner);
+    }
+
+    /**
+     * Get entries of leaves of tree shared with peer in range, scan stops after
+     * {@link ClientConfig#repairRangeRows} rows, so entries are returned by pages.
+     *
+     * @param peer   is url of peer
+     * @param depth  is depth of tree
+     * @param from   is the first key of page in url-safe base64, null for the first key of storage
+     * @param to     is the key after range in url-safe base64, null if range is unbounded
+     * @param leaves is [int leaf] of differing leaves, at most {@link ClientConfig#repairLeavesPerRequest}
+     * @return [int size][key] of the next page, size is -1 for the last page,
+     *         then records of [int size][key][long timestamp][byte removed][int size][data]
+     */
+    @NotNull
+    public CompletableFuture<byte[]> entries(@NotNull final String peer,
+                                             final int depth,
+                                             @Nullable final String from,
+                                             @Nullable final String to,
+                                             @NotNull final byte[] leaves) {
+        final MerkleTree tree = new MerkleTree(depth);
+        if (leaves.length > Integer.BYTES * config.repairLeavesPerRequest) {
+            throw new IllegalArgumentException("Too many leaves: " + leaves.length / Integer.BYTES);
+        }
+        final BitSet requested = new BitSet(tree.leaves());
+        final ByteBuffer buffer = ByteBuffer.wrap(leaves);
+        while (buffer.remaining() >= Integer.BYTES) {
+            requested.set(buffer.getInt());
+        }
+        final ByteBuffer fromKey = key(from);
+        final ByteBuffer toKey = to == null ? null : key(to);
+        return CompletableFuture.supplyAsync(() -> {
+            final ByteArrayOutputStream records = new ByteArrayOutputStream();
+            final ByteBuffer stop = scan(peer, fromKey, toKey, config.repairRangeRows, (key, token, value) -> {
+                if (requested.get(tree.leaf(token))) {
+                    final byte[] record = encode(key, value);
+                    records.write(record, 0, record.length);
+                }
+            });
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            writeKey(result, stop);
+            final byte[] bytes = records.toByteArray();
+            result.write(bytes, 0, bytes.length);
+            return result.toByteArray();
+        }, scanner);
+    }
+
+    /**
+     * Pull entries of keys shared with peer in the next range of keys, which differ from local ones.
+     *
+     * @param peer is peer to compare with
+     * @return count of pulled entries
+     */
+    public int repair(@NotNull final ServiceNode peer) throws IOException {
+        final int depth = config.merkleDepth;
+        final ByteBuffer from = nextRanges.getOrDefault(peer.key(), FIRST_KEY);
+        final HttpClient http = new HttpClient(new ConnectionString(peer.key() + "?timeout=" + config.repairTimeoutMs));
+        try {
+            MerkleTree local = new MerkleTree(depth);
+            ByteBuffer to = build(peer.key(), from, null, config.repairRangeRows, local);
+            final ByteBuffer remoteTree = ByteBuffer.wrap(body(http.get(path(depth, from, to))));
+            final ByteBuffer remoteStop = readKey(remoteTree);
+            if (remoteStop != null) {
+                // Peer has more rows in range, so range is shrunk to rows it has scanned
+                to = remoteStop;
+                local = new MerkleTree(depth);
+                build(peer.key(), from, to, Long.MAX_VALUE, local);
+            }
+            final List<Integer> leaves = local.seal().diff(MerkleTree.fromBytes(remoteTree));
+            int count = 0;
+            for (int i = 0; i < leaves.size(); i += config.repairLeavesPerRequest) {
+                count += pull(http, depth, from, to,
+                        leaves.subList(i, Math.min(leaves.size(), i + config.repairLeavesPerRequest)));
+            }
+            nextRanges.put(peer.key(), to == null ? FIRST_KEY : to);
+            if (!leaves.isEmpty()) {
+                logger.info("Pulled {} entries of {} differing ranges from {}", count, leaves.size(), peer.key());
+            }
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Repair with " + peer.key() + " is interrupted", e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Can't repair with " + peer.key(), e);
+        } finally {
+            http.close();
+        }
+    }
+
+    @Nullable
+    private ByteBuffer build(@NotNull final String peer,
+                             @NotNull final ByteBuffer from,
+                             @Nullable final ByteBuffer to,
+                             final long limit,
+                             @NotNull final MerkleTree tree) {
+        return scan(peer, from, to, limit, (key, token, value) -> tree.add(token, hash(key, value)));
+    }
+
+    /**
+     * Pull entries of leaves in range page by page.
+     */
+    private int pull(@NotNull final HttpClient http,
+                     final int depth,
+                     @NotNull final ByteBuffer from,
+                     @Nullable final ByteBuffer to,
+                     @NotNull final List<Integer> leaves) throws Exception {
+        final ByteBuffer request = ByteBuffer.allocate(Integer.BYTES * leaves.size());
+        for (final int leaf : leaves) {
+            request.putInt(leaf);
+        }
+        int count = 0;
+        ByteBuffer page = from;
+        while (page != null) {
+            final ByteBuffer entries = ByteBuffer.wrap(body(http.post(path(depth, page, to), request.array())));
+            page = readKey(entries);
+            while (entries.hasRemaining()) {
+                final ByteBuffer key = slice(entries, entries.getInt());
+                final long timestamp = entries.getLong();
+                final boolean removed = entries.get() != 0;
+                final ByteBuffer data = slice(entries, entries.getInt());
+                dao.repair(key, removed
+                        ? new Value(null, Value.State.REMOVED, timestamp)
+                        : new Value(data, Value.State.PRESENT, timestamp));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        scanner.shutdownNow();
+    }
+
+    private void repairNext() {
+        final List<ServiceNode> peers = new ArrayList<>();
+        for (final ServiceNode node : topology.all()) {
+            if (!topology.isMe(node)) {
+                peers.add(node);
+            }
+        }
+        peers.sort(null);
+        final ServiceNode peer = peers.get(Math.floorMod(nextPeer.getAndIncrement(), peers.size()));
+        try {
+            repair(peer);
+        } catch (IOException e) {
+            logger.info("Repair with {} is failed : {}", peer.key(), e.getMessage());
+        }
+    }
+
+    @NotNull
+    private String path(final int depth,
+                        @NotNull final ByteBuffer from,
+                        @Nullable final ByteBuffer to) {
+        final StringBuilder path = new StringBuilder(MERKLE_PATH)
+                .append(URLEncoder.encode(topology.whoAmI().key(), StandardCharsets.UTF_8))
+                .append("&depth=").append(depth)
+                .append("&from=").append(param(from));
+        if (to != null) {
+            path.append("&to=").append(param(to));
+        }
+        return path.toString();
+    }
+
+    /**
+     * Visit latest cells including tombstones of keys replicated both to this node and peer.
+     * Scan is paced by {@link ClientConfig#repairRowsPerSecond}.
+     *
+     * @param from  is the first key to scan
+     * @param to    is the key to stop at, null if scan is unbounded
+     * @param limit is max count of scanned rows
+     * @return the first key not scanned because of limit, null if range is scanned to the end
+     */
+    @Nullable
+    private ByteBuffer scan(@NotNull final String peer,
+                            @NotNull final ByteBuffer from,
+                            @Nullable final ByteBuffer to,
+                            final long limit,
+                            @NotNull final Visitor visitor) {
+        final long pauseNanos = TimeUnit.SECONDS.toNanos(ROWS_PER_PAUSE) / Math.max(1, config.repairRowsPerSecond);
+        long next = System.nanoTime() + pauseNanos;
+        long rows = 0;
+        try (CloseableIterator<Cell> cells = dao.latestIterator(from)) {
+            while (cells.hasNext()) {
+                final Cell cell = cells.next();
+                final ByteBuffer key = cell.getKey();
+                if (to != null && key.compareTo(to) >= 0) {
+                    return null;
+                }
+                if (rows == limit) {
+                    return copy(key);
+                }
+                if (++rows % ROWS_PER_PAUSE == 0) {
+                    LockSupport.parkNanos(next - System.nanoTime());
+                    next = Math.max(next, System.nanoTime()) + pauseNanos;
+                }
+                if (!shared(key, peer)) {
+                    continue;
+                }
+                final Value value = Value.fromIterator(key, List.of(cell).iterator());
+                if (value.getState() != Value.State.ABSENT) {
+                    visitor.visit(key, topology.token(key), value);
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean shared(@NotNull final ByteBuffer key,
+                           @NotNull final String peer) {
+        boolean me = false;
+        boolean other = false;
+        for (final ServiceNode node : topology.replicas(replication, key)) {
+            me |= topology.isMe(node);
+            other |= node.key().equals(peer);
+        }
+        return me && other;
+    }
+
+    /**
+     * Hash of entry without timestamp, because each replica stamps the same write by its own clock.
+     */
+    private static long hash(@NotNull final ByteBuffer key,
+                             @NotNull final Value value) {
+        final long data = value.getState() == Value.State.REMOVED ? -1 : Digest.hash(value.getData());
+        return MerkleTree.mix(Digest.hash(key), data);
+    }
+
+    @NotNull
+    private static byte[] encode(@NotNull final ByteBuffer key,
+                                 @NotNull final Value value) {
+        final ByteBuffer data = value.getState() == Value.State.REMOVED
+                ? ByteBuffer.allocate(0) : value.getData().duplicate();
+        final ByteBuffer record = ByteBuffer.allocate(
+                Integer.BYTES * 2 + key.remaining() + Long.BYTES + Byte.BYTES + data.remaining());
+        record.putInt(key.remaining()).put(key.duplicate())
+                .putLong(value.getTimestamp())
+                .put((byte) (value.getState() == Value.State.REMOVED ? 1 : 0))
+                .putInt(data.remaining()).put(data);
+        return record.array();
+    }
+
+    private static void writeKey(@NotNull final ByteArrayOutputStream out,
+                                 @Nullable final ByteBuffer key) {
+        final int size = key == null ? NO_KEY : key.remaining();
+        final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + Math.max(0, size)).putInt(size);
+        if (key != null) {
+            record.put(key.duplicate());
+        }
+        out.write(record.array(), 0, record.capacity());
+    }
+
+    @Nullable
+    private static ByteBuffer readKey(@NotNull final ByteBuffer buffer) {
+        final int size = buffer.getInt();
+        return size == NO_KEY ? null : slice(buffer, size);
+    }
+
+    @NotNull
+    private static String param(@NotNull final ByteBuffer key) {
+        final byte[] bytes = new byte[key.remaining()];
+        key.duplicate().get(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @NotNull
+    private static ByteBuffer key(@Nullable final String param) {
+        return param == null ? FIRST_KEY : ByteBuffer.wrap(Base64.getUrlDecoder().decode(param));
+    }
+
+    @NotNull
+    private static ByteBuffer copy(@NotNull final ByteBuffer key) {
+        final ByteBuffer result = ByteBuffer.allocate(key.remaining());
+        result.put(key.duplicate());
+        return result.flip();
+    }
+
+    @NotNull
+    private static byte[] body(@NotNull final Response response) throws IOException {
+        if (response.getStatus() != 200) {
+            throw new IOException("Peer answered " + response.getStatus());
+        }
+        return response.getBody();
+    }
+
+    @NotNull
+    private static ByteBuffer slice(@NotNull final ByteBuffer buffer,
+                                    final int size) {
+        final ByteBuffer result = buffer.duplicate().limit(buffer.position() + size).slice();
+        buffer.position(buffer.position() + size);
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface Visitor {
+        void visit(@NotNull ByteBuffer key, long token, @NotNull Value value);
+    }
+}
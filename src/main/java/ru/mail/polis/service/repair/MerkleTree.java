@@ -0,0 +1,119 @@
+package ru.mail.polis.service.repair;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Merkle tree over token ranges of ring, each leaf covers 2^(32 - depth) tokens.
+ * Storage is scanned in key order, not in token order, so hashes of entries
+ * are combined into leaf by sum, which does not depend on order.
+ * Nodes are stored as binary heap: root is 1, leaves are [2^depth, 2^(depth + 1)).
+ */
+final class MerkleTree {
+
+    static final int MAX_DEPTH = 20;
+
+    private final int depth;
+    private final long[] hashes;
+
+    MerkleTree(final int depth) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Wrong depth of merkle tree: " + depth);
+        }
+        this.depth = depth;
+        this.hashes = new long[2 << depth];
+    }
+
+    int leaves() {
+        return 1 << depth;
+    }
+
+    /**
+     * Leaf of token.
+     *
+     * @param token is unsigned 32 bit position on ring
+     */
+    int leaf(final long token) {
+        return (int) ((token & 0xFFFF_FFFFL) >>> (Integer.SIZE - depth));
+    }
+
+    /**
+     * Account entry in leaf of its token.
+     */
+    void add(final long token,
+             final long entryHash) {
+        hashes[leaves() + leaf(token)] += entryHash;
+    }
+
+    /**
+     * Compute inner nodes after all entries are added.
+     */
+    @NotNull
+    MerkleTree seal() {
+        for (int i = leaves() - 1; i >= 1; i--) {
+            hashes[i] = mix(hashes[2 * i], hashes[2 * i + 1]);
+        }
+        return this;
+    }
+
+    /**
+     * Find leaves which differ from tree of another replica, equal subtrees are skipped as a whole.
+     */
+    @NotNull
+    List<Integer> diff(@NotNull final MerkleTree other) {
+        if (other.depth != depth) {
+            throw new IllegalArgumentException("Trees of different depth: " + depth + " and " + other.depth);
+        }
+        final List<Integer> result = new ArrayList<>();
+        final Deque<Integer> nodes = new ArrayDeque<>();
+        nodes.push(1);
+        while (!nodes.isEmpty()) {
+            final int node = nodes.pop();
+            if (hashes[node] == other.hashes[node]) {
+                continue;
+            }
+            if (node >= leaves()) {
+                result.add(node - leaves());
+            } else {
+                nodes.push(2 * node + 1);
+                nodes.push(2 * node);
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    byte[] toBytes() {
+        final ByteBuffer buffer = ByteBuffer.allocate(Byte.BYTES + Long.BYTES * hashes.length);
+        buffer.put((byte) depth);
+        for (final long hash : hashes) {
+            buffer.putLong(hash);
+        }
+        return buffer.array();
+    }
+
+    @NotNull
+    static MerkleTree fromBytes(@NotNull final ByteBuffer buffer) {
+        final MerkleTree tree = new MerkleTree(buffer.get());
+        if (buffer.remaining() != Long.BYTES * tree.hashes.length) {
+            throw new IllegalArgumentException("Wrong size of merkle tree: " + buffer.remaining());
+        }
+        for (int i = 0; i < tree.hashes.length; i++) {
+            tree.hashes[i] = buffer.getLong();
+        }
+        return tree;
+    }
+
+    static long mix(final long left,
+                    final long right) {
+        long hash = left * 0x9E37_79B9_7F4A_7C15L + right;
+        hash ^= hash >>> 31;
+        hash *= 0xBF58_476D_1CE4_E5B9L;
+        return hash ^ (hash >>> 29);
+    }
+}
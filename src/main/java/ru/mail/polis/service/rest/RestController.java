@@ -14,16 +14,27 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Iterator;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
-import ru.mail.polis.Record;
+import ru.mail.polis.client.ClientConfig;
 import ru.mail.polis.dao.DAO;
 import ru.mail.polis.dao.replica.RF;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
 import ru.mail.polis.service.rest.service.EntityService;
 import ru.mail.polis.utils.BytesUtils;
 import ru.mail.polis.service.Service;
 import ru.mail.polis.service.rest.session.StorageSession;
+import ru.mail.polis.service.range.ClusterRange;
+import ru.mail.polis.service.repair.AntiEntropy;
+import ru.mail.polis.service.rpc.RpcServer;
 import ru.mail.polis.service.topology.Topology;
 import ru.mail.polis.service.topology.node.ServiceNode;
 import ru.mail.polis.utils.ConstUtils;
@@ -34,26 +45,41 @@ import static ru.mail.polis.utils.ResponseUtils.sendResponse;
 public final class RestController extends HttpServer implements Service {
 
     private static final Logger logger = LoggerFactory.getLogger(RestController.class);
+    private static final String KEYSPACE_PREFIX = "/v0/";
+    private static final String KEYSPACE_ENTITY = "/entity";
 
     private final RF defaultRF;
     private final long nodesSize;
+    private final DAO dao;
     private final EntityService entityService;
+    private final RpcServer rpcServer;
+    private final AntiEntropy antiEntropy;
+    private final ClusterRange range;
+    private final Map<String, EntityService> keyspaceServices = new ConcurrentHashMap<>();
 
     /**
      * Create new instance of RestService for interaction with database.
      *
-     * @param config in config for server
-     * @param dao    is dao for interaction with database
-     * @param nodes  all nodes in cluster
+     * @param config       in config for server
+     * @param dao          is dao for interaction with database
+     * @param nodes        all nodes in cluster
+     * @param clientConfig is tuning of client of other nodes
      */
     private RestController(
             @NotNull final HttpServerConfig config,
             @NotNull final DAO dao,
-            @NotNull final Topology<ServiceNode> nodes) throws IOException {
+            @NotNull final Topology<ServiceNode> nodes,
+            @NotNull final ClientConfig clientConfig) throws IOException {
         super(config);
         this.nodesSize = nodes.size();
         this.defaultRF = new RF(nodes.size() / 2 + 1, nodes.size());
-        this.entityService = new EntityService(dao, nodes);
+        this.dao = dao;
+        this.entityService = new EntityService(dao, nodes, clientConfig);
+        this.antiEntropy = new AntiEntropy(dao, nodes, defaultRF.getFrom(), clientConfig);
+        this.range = new ClusterRange(dao, nodes, defaultRF.getAck(), clientConfig);
+        this.rpcServer = clientConfig.type == ClientConfig.Type.RPC
+                ? new RpcServer(dao, clientConfig.rpcPort, clientConfig.workers)
+                : null;
     }
 
     /**
@@ -67,6 +93,22 @@ public final class RestController extends HttpServer implements Service {
             final int port,
             @NotNull final DAO dao,
             @NotNull final Topology<ServiceNode> nodes) throws IOException {
+        return create(port, dao, nodes, ClientConfig.defaults());
+    }
+
+    /**
+     * Build new instance of RestService.
+     *
+     * @param port         is port on witch Service will be running
+     * @param dao          is dao for interaction with database
+     * @param nodes        is all nodes in the cluster
+     * @param clientConfig is tuning of client of other nodes
+     */
+    public static RestController create(
+            final int port,
+            @NotNull final DAO dao,
+            @NotNull final Topology<ServiceNode> nodes,
+            @NotNull final ClientConfig clientConfig) throws IOException {
         final AcceptorConfig acceptorConfig = new AcceptorConfig();
         acceptorConfig.port = port;
 
@@ -74,16 +116,75 @@ public final class RestController extends HttpServer implements Service {
         httpServerConfig.acceptors = new AcceptorConfig[]{acceptorConfig};
         httpServerConfig.minWorkers = Runtime.getRuntime().availableProcessors() + 1;
         httpServerConfig.maxWorkers = Runtime.getRuntime().availableProcessors() + 1;
-        return new RestController(httpServerConfig, dao, nodes);
+        return new RestController(httpServerConfig, dao, nodes, clientConfig);
     }
 
     @Override
     public void handleDefault(
             @NotNull final Request request,
             @NotNull final HttpSession session) {
+        final String path = request.getPath();
+        if (path.startsWith(KEYSPACE_PREFIX) && path.endsWith(KEYSPACE_ENTITY)) {
+            keyspaceEntity(path.substring(KEYSPACE_PREFIX.length(), path.length() - KEYSPACE_ENTITY.length()),
+                    request, session);
+            return;
+        }
         sendResponse(session, build(Response.BAD_REQUEST, Response.EMPTY));
     }
 
+    /**
+     * Rest-endpoint for entities of keyspace, /v0/{keyspace}/entity with parameters of {@link #entity}.
+     *
+     * @param name    is the name of keyspace
+     * @param request is request on this uri
+     * @param session is current session
+     */
+    private void keyspaceEntity(
+            @NotNull final String name,
+            @NotNull final Request request,
+            @NotNull final HttpSession session) {
+        final DAO keyspace = name.indexOf('/') < 0 ? dao.keyspace(name) : null;
+        if (keyspace == null) {
+            sendResponse(session, build(Response.NOT_FOUND, Response.EMPTY));
+            return;
+        }
+        final EntityService service = keyspaceServices.computeIfAbsent(name,
+                key -> entityService.keyspace(key, keyspace));
+        entity(request.getParameter("id="), request.getParameter("replicas="), request.getParameter("merge="),
+                request, session, service);
+    }
+
+    @Override
+    public synchronized void start() {
+        super.start();
+        if (rpcServer != null) {
+            try {
+                rpcServer.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't start rpc server", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (rpcServer != null) {
+            try {
+                rpcServer.close();
+            } catch (IOException e) {
+                logger.error("Error while stop rpc server ", e);
+            }
+        }
+        antiEntropy.close();
+        range.close();
+        try {
+            entityService.close();
+        } catch (IOException e) {
+            logger.error("Error while stop entity service ", e);
+        }
+        super.stop();
+    }
+
     @Override
     public HttpSession createSession(@NotNull final Socket socket) {
         return new StorageSession(socket, this);
@@ -97,6 +198,135 @@ public final class RestController extends HttpServer implements Service {
         return build(Response.OK, Response.EMPTY);
     }
 
+    /**
+     * Rest-endpoint with port of binary protocol of replica requests, 404 if node does not serve it.
+     */
+    @Path("/v0/rpc")
+    public Response rpc() {
+        if (rpcServer == null) {
+            return build(Response.NOT_FOUND, Response.EMPTY);
+        }
+        return build(Response.OK, Integer.toString(rpcServer.getPort()).getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Rest-endpoint of anti-entropy repair: GET returns merkle tree of keys shared with peer,
+     * POST with [int leaf] body returns entries of these leaves. Both scan at most
+     * {@link ClientConfig#repairRangeRows} rows of range by scan thread of repair
+     * and start with the key where scan is stopped.
+     *
+     * @param peer    is url of node requesting repair
+     * @param depth   is depth of merkle tree
+     * @param from    is the first key of range in url-safe base64
+     * @param to      is the key after range in url-safe base64, absent if range is unbounded
+     * @param request is request on this uri
+     * @param session is current session
+     */
+    @Path("/v0/merkle")
+    public void merkle(
+            @Param("peer") final String peer,
+            @Param("depth") final String depth,
+            @Param("from") final String from,
+            @Param("to") final String to,
+            @NotNull final Request request,
+            @NotNull final HttpSession session) {
+        if (peer == null || depth == null) {
+            sendResponse(session, build(Response.BAD_REQUEST, Response.EMPTY));
+            return;
+        }
+        final CompletableFuture<byte[]> result;
+        try {
+            switch (request.getMethod()) {
+                case Request.METHOD_GET:
+                    result = antiEntropy.tree(peer, Integer.parseInt(depth), from, to);
+                    break;
+                case Request.METHOD_POST:
+                    result = antiEntropy.entries(peer, Integer.parseInt(depth), from, to, request.getBody());
+                    break;
+                default:
+                    sendResponse(session, build(Response.METHOD_NOT_ALLOWED, Response.EMPTY));
+                    return;
+            }
+        } catch (IllegalArgumentException e) {
+            sendResponse(session, build(Response.BAD_REQUEST, Response.EMPTY));
+            return;
+        }
+        result.whenComplete((body, throwable) -> {
+            if (throwable != null) {
+                logger.error("Can't scan range of repair ", throwable);
+                sendResponse(session, build(Response.INTERNAL_ERROR, Response.EMPTY));
+                return;
+            }
+            sendResponse(session, build(Response.OK, body));
+        });
+    }
+
+    /**
+     * Rest-endpoint with storage metrics, one "name value" per line.
+     */
+    @Path("/v0/metrics")
+    public Response metrics() {
+        final StringBuilder body = new StringBuilder();
+        for (final Map.Entry<String, Long> metric : dao.metrics().entrySet()) {
+            body.append(metric.getKey()).append(' ').append(metric.getValue()).append('\n');
+        }
+        return build(Response.OK, body.toString().getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Rest-endpoint for creation of storage checkpoint with given name.
+     *
+     * @param name    is the name of checkpoint
+     * @param request is request on this uri
+     */
+    @Path("/v0/admin/checkpoint")
+    public Response checkpoint(
+            @Param("name") final String name,
+            @NotNull final Request request) {
+        if (request.getMethod() != Request.METHOD_POST) {
+            return build(Response.METHOD_NOT_ALLOWED, Response.EMPTY);
+        }
+        if (name == null || name.isEmpty()) {
+            return build(Response.BAD_REQUEST, Response.EMPTY);
+        }
+        try {
+            dao.checkpoint(name);
+            return build(Response.CREATED, Response.EMPTY);
+        } catch (IllegalArgumentException e) {
+            return build(Response.BAD_REQUEST, Response.EMPTY);
+        } catch (FileAlreadyExistsException e) {
+            return build(Response.CONFLICT, Response.EMPTY);
+        } catch (IOException e) {
+            logger.error("Error while create checkpoint ", e);
+            return build(Response.INTERNAL_ERROR, Response.EMPTY);
+        }
+    }
+
+    /**
+     * Rest-endpoint for bulk load of sorted records from request body.
+     *
+     * @param request is request on this uri
+     */
+    @Path("/v0/admin/ingest")
+    public Response ingest(@NotNull final Request request) {
+        if (request.getMethod() != Request.METHOD_PUT) {
+            return build(Response.METHOD_NOT_ALLOWED, Response.EMPTY);
+        }
+        final byte[] body = request.getBody();
+        if (body == null) {
+            return build(Response.BAD_REQUEST, Response.EMPTY);
+        }
+        try {
+            dao.ingest(new ByteArrayInputStream(body));
+            return build(Response.CREATED, Response.EMPTY);
+        } catch (IllegalArgumentException e) {
+            return build(Response.BAD_REQUEST, Response.EMPTY);
+        } catch (IOException e) {
+            logger.error("Error while ingest ", e);
+            return build(Response.INTERNAL_ERROR, Response.EMPTY);
+        }
+    }
+
     /**
      * Rest-endpoint with this uri.
      *
@@ -124,13 +354,31 @@ public final class RestController extends HttpServer implements Service {
             sendResponse(session, build(Response.METHOD_NOT_ALLOWED, Response.EMPTY));
             return;
         }
-        try {
-            final Iterator<Record> recordIterator = entityService.range(BytesUtils.keyByteBuffer(start),
-                    end == null ? null : BytesUtils.keyByteBuffer(end));
-            ((StorageSession) session).stream(recordIterator);
-        } catch (IOException e) {
-            logger.error("Something wrong while get range of value ", e.getCause());
+        final StorageSession storageSession = (StorageSession) session;
+        if (request.getHeader(ConstUtils.PROXY_HEADER) != null) {
+            try {
+                storageSession.streamFramed(range.replica(BytesUtils.keyByteBuffer(start),
+                        end == null ? null : BytesUtils.keyByteBuffer(end)));
+            } catch (IOException | UncheckedIOException e) {
+                logger.error("Something wrong while get range of value ", e);
+                session.close();
+            }
+            return;
         }
+        range.cursor(start, end).whenComplete((cursor, throwable) -> {
+            if (throwable != null) {
+                logger.info("Can't open range of cluster : {}", throwable.getMessage());
+                sendResponse(session, build(Response.GATEWAY_TIMEOUT, Response.EMPTY));
+                return;
+            }
+            try {
+                storageSession.stream(cursor, range.readers());
+            } catch (IOException | UncheckedIOException e) {
+                // Status is already sent, so client sees the broken stream
+                logger.error("Something wrong while get range of value ", e);
+                session.close();
+            }
+        });
     }
 
     /**
@@ -138,6 +386,7 @@ public final class RestController extends HttpServer implements Service {
      *
      * @param id       is parameters for uri
      * @param replicas is replication factor in this endpoint
+     * @param merge    is alias of merge operator for POST requests
      * @param request  is request on this uri
      * @param session  is current session
      */
@@ -145,8 +394,19 @@ public final class RestController extends HttpServer implements Service {
     public void entity(
             @Param("id") final String id,
             @Param("replicas") final String replicas,
+            @Param("merge") final String merge,
             final Request request,
             final HttpSession session) {
+        entity(id, replicas, merge, request, session, entityService);
+    }
+
+    private void entity(
+            final String id,
+            final String replicas,
+            final String merge,
+            @NotNull final Request request,
+            @NotNull final HttpSession session,
+            @NotNull final EntityService service) {
         if (id == null || id.isEmpty()) {
             sendResponse(session, build(Response.BAD_REQUEST, Response.EMPTY));
             return;
@@ -169,15 +429,63 @@ public final class RestController extends HttpServer implements Service {
         }
         final boolean finalProxied = proxied;
 
+        final String timestamp = request.getHeader(ConstUtils.TIMESTAMP_HEADER + ": ");
+        if (finalProxied && timestamp != null) {
+            repair(id, timestamp, request, session, service);
+            return;
+        }
+
+        if (finalProxied && request.getHeader(ConstUtils.DIGEST_REQUEST_HEADER) != null) {
+            service.digest(id, session);
+            return;
+        }
+
         switch (request.getMethod()) {
             case Request.METHOD_GET:
-                        entityService.get(id, rf, session, finalProxied);
+                        service.get(id, rf, session, finalProxied);
                 break;
             case Request.METHOD_DELETE:
-                        entityService.delete(id, rf, session, finalProxied);
+                        service.delete(id, rf, session, finalProxied);
+                break;
+            case Request.METHOD_PUT:
+                        service.upsert(id, rf, session, request.getBody(), finalProxied);
                 break;
+            case Request.METHOD_POST:
+                final MergeOperator operator;
+                try {
+                    operator = MergeOperator.forAlias(merge == null ? "" : merge);
+                } catch (IllegalArgumentException e) {
+                    sendResponse(session, build(Response.BAD_REQUEST, Response.EMPTY));
+                    return;
+                }
+                service.merge(id, rf, session,
+                        Value.operand(ByteBuffer.wrap(request.getBody()), operator), finalProxied);
+                break;
+            default:
+                sendResponse(session, new Response(Response.METHOD_NOT_ALLOWED, Response.EMPTY));
+                break;
+        }
+    }
+
+    private static void repair(
+            @NotNull final String id,
+            @NotNull final String timestamp,
+            @NotNull final Request request,
+            @NotNull final HttpSession session,
+            @NotNull final EntityService service) {
+        final long time;
+        try {
+            time = Long.parseLong(timestamp.trim());
+        } catch (NumberFormatException e) {
+            sendResponse(session, build(Response.BAD_REQUEST, Response.EMPTY));
+            return;
+        }
+        switch (request.getMethod()) {
             case Request.METHOD_PUT:
-                        entityService.upsert(id, rf, session, request.getBody(), finalProxied);
+                service.repair(id, session, new Value(ByteBuffer.wrap(request.getBody()), Value.State.PRESENT, time));
+                break;
+            case Request.METHOD_DELETE:
+                service.repair(id, session, new Value(null, Value.State.REMOVED, time));
                 break;
             default:
                 sendResponse(session, new Response(Response.METHOD_NOT_ALLOWED, Response.EMPTY));
@@ -7,11 +7,16 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.mail.polis.Record;
 import ru.mail.polis.client.AsyncHttpClient;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.CloseableIterator;
 import ru.mail.polis.dao.DAO;
 import ru.mail.polis.dao.replica.RF;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
 import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.service.hint.HintedHandoff;
 import ru.mail.polis.service.topology.Topology;
 import ru.mail.polis.service.topology.node.ServiceNode;
 import ru.mail.polis.utils.BytesUtils;
@@ -20,12 +25,17 @@ import ru.mail.polis.utils.ResponseUtils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static ru.mail.polis.utils.ResponseUtils.sendResponse;
 
@@ -37,6 +47,11 @@ public final class EntityService {
     private final Topology<ServiceNode> topology;
     private final AsyncHttpClient client;
     private final ExecutorService serviceWorkers;
+    private final ReplicaLatencies latencies;
+    private final ScheduledExecutorService hedgeTimer;
+    private final ClientConfig clientConfig;
+    private final HintedHandoff hints;
+    private final String keyspace;
 
     /**
      * Service for interaction to dao.
@@ -45,13 +60,70 @@ public final class EntityService {
      * @param topology is node topology
      */
     public EntityService(@NotNull final DAO dao,
-                         @NotNull final Topology<ServiceNode> topology) {
+                         @NotNull final Topology<ServiceNode> topology) throws IOException {
+        this(dao, topology, ClientConfig.defaults());
+    }
+
+    /**
+     * Service for interaction to dao.
+     *
+     * @param dao          is storage
+     * @param topology     is node topology
+     * @param clientConfig is tuning of client of other nodes
+     */
+    public EntityService(@NotNull final DAO dao,
+                         @NotNull final Topology<ServiceNode> topology,
+                         @NotNull final ClientConfig clientConfig) throws IOException {
         this.dao = dao;
         this.topology = topology;
-        this.client = AsyncHttpClient.create();
-        serviceWorkers = Executors.newFixedThreadPool(
+        this.client = AsyncHttpClient.create(clientConfig);
+        this.serviceWorkers = Executors.newFixedThreadPool(
                 Runtime.getRuntime().availableProcessors() + 2,
                 new ThreadFactoryBuilder().setNameFormat("entity-service-workers-%d").build());
+        this.latencies = new ReplicaLatencies(clientConfig.hedgePercentile, clientConfig.hedgeDelayMs);
+        this.hedgeTimer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("entity-service-hedge-%d").setDaemon(true).build());
+        this.clientConfig = clientConfig;
+        this.hints = clientConfig.hintsDirectory == null
+                ? null
+                : new HintedHandoff(clientConfig.hintsDirectory, client, clientConfig);
+        this.keyspace = "";
+    }
+
+    private EntityService(@NotNull final EntityService shared,
+                          @NotNull final String keyspace,
+                          @NotNull final DAO dao) {
+        this.dao = dao;
+        this.topology = shared.topology;
+        this.client = shared.client.keyspace(keyspace);
+        this.serviceWorkers = shared.serviceWorkers;
+        this.latencies = shared.latencies;
+        this.hedgeTimer = shared.hedgeTimer;
+        this.clientConfig = shared.clientConfig;
+        this.hints = shared.hints;
+        this.keyspace = keyspace;
+    }
+
+    /**
+     * Service for entities of keyspace, sharing workers and connections with this one.
+     * Replicas are chosen by the same topology and write to keyspace of the same name.
+     *
+     * @param name     is the name of keyspace
+     * @param keyspace is storage of keyspace
+     */
+    @NotNull
+    public EntityService keyspace(@NotNull final String name,
+                                  @NotNull final DAO keyspace) {
+        return new EntityService(this, name, keyspace);
+    }
+
+    /**
+     * Stop replay of hints, services of keyspaces share them with this one.
+     */
+    public void close() throws IOException {
+        if (hints != null) {
+            hints.close();
+        }
     }
 
     /**
@@ -79,14 +151,17 @@ public final class EntityService {
         }
         final int from = rf.getFrom();
         final int acks = rf.getAck();
+        // All replicas store write with timestamp of coordinator, so their versions are equal
+        final Value tombstone = new Value(null, Value.State.REMOVED, System.currentTimeMillis());
         final Collection<CompletableFuture<Void>> futures = new ConcurrentLinkedQueue<>();
         topology.replicas(from, key)
                 .forEach(serviceNode -> {
                     final CompletableFuture<Void> future;
                     if (topology.isMe(serviceNode)) {
-                        future = handleLocal(() -> deleteLocalValue(key));
+                        future = handleLocal(() -> repairLocalValue(key, tombstone));
                     } else {
-                        future = client.delete(id, serviceNode.key());
+                        future = hinted(client.delete(tombstone.getTimestamp(), id, serviceNode.key()),
+                                serviceNode, id, tombstone);
                     }
                     futures.add(future);
                 });
@@ -126,15 +201,17 @@ public final class EntityService {
         }
         final int from = rf.getFrom();
         final int acks = rf.getAck();
+        // All replicas store write with timestamp of coordinator, so their versions are equal
+        final Value written = new Value(value, Value.State.PRESENT, System.currentTimeMillis());
         final Collection<CompletableFuture<Void>> futures = new ConcurrentLinkedQueue<>();
         topology.replicas(from, key)
                 .forEach(serviceNode -> {
                     final CompletableFuture<Void> future;
                     if (topology.isMe(serviceNode)) {
-                        future = handleLocal(() -> upsertLocalValue(key, value));
+                        future = handleLocal(() -> repairLocalValue(key, written));
                     } else {
-                        future = client.upsert(body, id, serviceNode.key());
-
+                        future = hinted(client.upsert(body, written.getTimestamp(), id, serviceNode.key()),
+                                serviceNode, id, written);
                     }
                     futures.add(future);
                 });
@@ -147,6 +224,54 @@ public final class EntityService {
                 });
     }
 
+    /**
+     * Merge operand into value in dao by id without reading it.
+     *
+     * @param id      is id
+     * @param rf      is replica factor
+     * @param operand is operand to merge with its operator
+     * @param proxy   is proxy or not current node
+     */
+    public void merge(@NotNull final String id,
+                      @NotNull final RF rf,
+                      @NotNull final HttpSession session,
+                      @NotNull final Value operand,
+                      final boolean proxy) {
+        final ByteBuffer value = operand.getData();
+        final MergeOperator operator = operand.getOperator();
+        final ByteBuffer key = BytesUtils.keyByteBuffer(id);
+        if (proxy) {
+            handleLocal(() -> {
+                mergeLocalValue(key, value, operator);
+                sendResponse(session, new Response(Response.ACCEPTED, Response.EMPTY));
+            }).exceptionally(throwable -> {
+                exceptionallyHandle(session, throwable);
+                return null;
+            });
+            return;
+        }
+        final int from = rf.getFrom();
+        final int acks = rf.getAck();
+        final Collection<CompletableFuture<Void>> futures = new ConcurrentLinkedQueue<>();
+        topology.replicas(from, key)
+                .forEach(serviceNode -> {
+                    final CompletableFuture<Void> future;
+                    if (topology.isMe(serviceNode)) {
+                        future = handleLocal(() -> mergeLocalValue(key, value, operator));
+                    } else {
+                        future = client.merge(BytesUtils.body(value), id, operator, serviceNode.key());
+                    }
+                    futures.add(future);
+                });
+
+        responseFuture(futures, HttpMethods.MERGE, acks)
+                .whenCompleteAsync((response, throwable) -> sendResponse(session, response))
+                .exceptionally(throwable -> {
+                    exceptionallyHandle(session, throwable);
+                    return null;
+                });
+    }
+
     /**
      * Get value in dao by id.
      *
@@ -171,24 +296,23 @@ public final class EntityService {
             });
             return;
         }
-        final int from = rf.getFrom();
         final int acks = rf.getAck();
-        final Collection<CompletableFuture<Value>> futures = new ConcurrentLinkedQueue<>();
-        topology.replicas(from, key)
-                .forEach(serviceNode -> {
-                    final CompletableFuture<Value> future;
-                    if (topology.isMe(serviceNode)) {
-                        future = getLocal(key);
-                    } else {
-                        future = client.get(id, serviceNode.key());
-                    }
-                    futures.add(future);
-                });
-
-        FutureUtils.collapseFutures(futures, acks)
-                .handleAsync((values, throwable) -> {
-                    if (throwable == null && values != null) {
-                        return ResponseUtils.responseFromValues(values);
+        final List<ServiceNode> replicas = new ArrayList<>(topology.replicas(rf.getFrom(), key));
+        if (clientConfig.readFromAck) {
+            replicas.sort(latencies.fastestFirst());
+        }
+        // Local replica reads data for free, otherwise the first queried one sends it
+        final ServiceNode dataReplica = replicas.stream().filter(topology::isMe).findAny().orElse(replicas.get(0));
+        replicas.remove(dataReplica);
+        replicas.add(0, dataReplica);
+        final HedgedRead<Digest> read = new HedgedRead<>(replicas, acks,
+                serviceNode -> read(id, key, serviceNode, clientConfig.digestReads && serviceNode != dataReplica),
+                latencies, hedgeTimer);
+        read.start(clientConfig.readFromAck ? acks : replicas.size(), clientConfig.hedgePercentile > 0)
+                .thenCompose(digests -> resolve(id, key, digests))
+                .handleAsync((value, throwable) -> {
+                    if (throwable == null && value != null) {
+                        return ResponseUtils.from(value, false);
                     }
                     return new Response(Response.GATEWAY_TIMEOUT, Response.EMPTY);
                 }).whenCompleteAsync((response, throwable) -> sendResponse(session, response))
@@ -198,9 +322,141 @@ public final class EntityService {
                 });
     }
 
-    public Iterator<Record> range(@NotNull final ByteBuffer from,
-                                  @Nullable final ByteBuffer to) throws IOException {
-        return dao.range(from, to);
+    /**
+     * Get only digest of value in dao by id for coordinator of read.
+     *
+     * @param id is id
+     */
+    public void digest(@NotNull final String id,
+                       @NotNull final HttpSession session) {
+        final ByteBuffer key = BytesUtils.keyByteBuffer(id);
+        handleLocal(() -> sendResponse(session, ResponseUtils.digest(getLocalValue(key))))
+                .exceptionally(throwable -> {
+                    exceptionallyHandle(session, throwable);
+                    return null;
+                });
+    }
+
+    /**
+     * Write value of another replica with its timestamp to dao.
+     *
+     * @param id    is id
+     * @param value is present value or tombstone
+     */
+    public void repair(@NotNull final String id,
+                       @NotNull final HttpSession session,
+                       @NotNull final Value value) {
+        final ByteBuffer key = BytesUtils.keyByteBuffer(id);
+        handleLocal(() -> {
+            repairLocalValue(key, value);
+            sendResponse(session, new Response(Response.CREATED, Response.EMPTY));
+        }).exceptionally(throwable -> {
+            exceptionallyHandle(session, throwable);
+            return null;
+        });
+    }
+
+    /**
+     * Store hint of write if replica fails it, timestamp of hint is taken before write,
+     * so its replay does not overwrite later writes of other coordinators.
+     */
+    @NotNull
+    private CompletableFuture<Void> hinted(@NotNull final CompletableFuture<Void> write,
+                                           @NotNull final ServiceNode node,
+                                           @NotNull final String id,
+                                           @NotNull final Value value) {
+        if (hints == null) {
+            return write;
+        }
+        return write.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                hints.store(node.key(), keyspace, id, value);
+            }
+        });
+    }
+
+    @NotNull
+    private CompletableFuture<Digest> read(@NotNull final String id,
+                                           @NotNull final ByteBuffer key,
+                                           @NotNull final ServiceNode node,
+                                           final boolean digestOnly) {
+        if (topology.isMe(node)) {
+            return getLocal(key).thenApply(Digest::of);
+        }
+        if (digestOnly) {
+            return client.digest(id, node.key());
+        }
+        return client.get(id, node.key()).thenApply(Digest::of);
+    }
+
+    /**
+     * Get the newest of read values, its data is read again only if no replica has sent equal data.
+     */
+    @NotNull
+    private CompletableFuture<Value> resolve(@NotNull final String id,
+                                             @NotNull final ByteBuffer key,
+                                             @NotNull final Map<ServiceNode, Digest> digests) {
+        final Map.Entry<ServiceNode, Digest> newest = digests.entrySet().stream()
+                .filter(digest -> digest.getValue().getState() != Value.State.ABSENT)
+                .max(Map.Entry.comparingByValue(Digest.NEWEST_LAST))
+                .orElse(null);
+        if (newest == null) {
+            return CompletableFuture.completedFuture(Value.absent());
+        }
+        final Digest version = newest.getValue();
+        final Value value = digests.values().stream()
+                .map(digest -> digest.valueOf(version))
+                .filter(Objects::nonNull)
+                .findAny()
+                .orElse(null);
+        final CompletableFuture<Value> result;
+        if (value != null) {
+            result = CompletableFuture.completedFuture(value);
+        } else if (version.getState() == Value.State.REMOVED) {
+            result = CompletableFuture.completedFuture(
+                    new Value(null, Value.State.REMOVED, version.getTimestamp()));
+        } else if (topology.isMe(newest.getKey())) {
+            result = getLocal(key);
+        } else {
+            result = client.get(id, newest.getKey().key());
+        }
+        return result.thenCompose(resolved -> repairRead(id, key, digests, resolved));
+    }
+
+    /**
+     * Write the newest of read values to replicas which answered with older and different ones.
+     * Repairs failed by replicas are ignored, the next read repairs them again.
+     *
+     * @return newest value, after repairs for blocking read repair
+     */
+    @NotNull
+    private CompletableFuture<Value> repairRead(@NotNull final String id,
+                                                @NotNull final ByteBuffer key,
+                                                @NotNull final Map<ServiceNode, Digest> digests,
+                                                @NotNull final Value newest) {
+        if (clientConfig.readRepair == ClientConfig.ReadRepair.NONE
+                || newest.getState() == Value.State.ABSENT
+                || ThreadLocalRandom.current().nextDouble() >= clientConfig.readRepairChance) {
+            return CompletableFuture.completedFuture(newest);
+        }
+        final Digest winner = Digest.of(newest);
+        final List<CompletableFuture<Void>> repairs = new ArrayList<>();
+        for (final Map.Entry<ServiceNode, Digest> replica : digests.entrySet()) {
+            // Replica of equal data needs no repair, even if it was written at other time
+            if (replica.getValue().getTimestamp() >= newest.getTimestamp()
+                    || replica.getValue().sameData(winner)) {
+                continue;
+            }
+            final ServiceNode node = replica.getKey();
+            repairs.add(topology.isMe(node)
+                    ? handleLocal(() -> repairLocalValue(key, newest))
+                    : client.repair(newest, id, node.key()));
+        }
+        if (repairs.isEmpty() || clientConfig.readRepair == ClientConfig.ReadRepair.ASYNC) {
+            return CompletableFuture.completedFuture(newest);
+        }
+        return CompletableFuture.allOf(repairs.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, throwable) -> newest);
     }
 
     private static <T> CompletableFuture<Response> responseFuture(
@@ -219,6 +475,7 @@ public final class EntityService {
                 case PUT:
                     return new Response(Response.CREATED, Response.EMPTY);
                 case DELETE:
+                case MERGE:
                     return new Response(Response.ACCEPTED, Response.EMPTY);
                 default:
                     return new Response(Response.METHOD_NOT_ALLOWED, Response.EMPTY);
@@ -236,7 +493,9 @@ public final class EntityService {
     }
 
     private Value getLocalValue(@NotNull final ByteBuffer key) {
-        return Value.fromIterator(key, dao.latestIterator(key));
+        try (CloseableIterator<Cell> cells = dao.latestIterator(key)) {
+            return Value.fromIterator(key, cells);
+        }
     }
 
     private void upsertLocalValue(@NotNull final ByteBuffer key,
@@ -248,6 +507,25 @@ public final class EntityService {
         }
     }
 
+    private void repairLocalValue(@NotNull final ByteBuffer key,
+                                  @NotNull final Value value) {
+        try {
+            dao.repair(key, value);
+        } catch (IOException e) {
+            logger.error("Error while repair local data : ", e);
+        }
+    }
+
+    private void mergeLocalValue(@NotNull final ByteBuffer key,
+                                 @NotNull final ByteBuffer operand,
+                                 @NotNull final MergeOperator operator) {
+        try {
+            dao.merge(key, operand, operator);
+        } catch (IOException e) {
+            logger.error("Error while merge local data : ", e);
+        }
+    }
+
     private void deleteLocalValue(@NotNull final ByteBuffer key) {
         try {
             dao.remove(key);
@@ -267,6 +545,6 @@ public final class EntityService {
     }
 
     private enum HttpMethods {
-        PUT, DELETE
+        PUT, DELETE, MERGE
     }
 }
@@ -0,0 +1,120 @@
+package ru.mail.polis.service.rest.service;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.service.topology.node.ServiceNode;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Read of ack answers from replicas, which starts from a part of them.
+ * One more replica is queried when a queried one fails or is slower than its observed latency,
+ * so result waits for the fastest replicas.
+ */
+final class HedgedRead<T> {
+
+    private final List<ServiceNode> replicas;
+    private final int ack;
+    private final Function<ServiceNode, CompletableFuture<T>> read;
+    private final ReplicaLatencies latencies;
+    private final ScheduledExecutorService timer;
+    private final Map<ServiceNode, T> values = new LinkedHashMap<>();
+    private final CompletableFuture<Map<ServiceNode, T>> result = new CompletableFuture<>();
+    private int sent;
+    private int failed;
+
+    /**
+     * Create read.
+     *
+     * @param replicas  is replicas of key in order of queries
+     * @param ack       is count of answers to wait
+     * @param read      is read from replica
+     * @param latencies is observed latencies of replicas
+     * @param timer     is timer of hedged queries
+     */
+    HedgedRead(@NotNull final List<ServiceNode> replicas,
+               final int ack,
+               @NotNull final Function<ServiceNode, CompletableFuture<T>> read,
+               @NotNull final ReplicaLatencies latencies,
+               @NotNull final ScheduledExecutorService timer) {
+        if (ack > replicas.size()) {
+            throw new IllegalArgumentException("Number of requested futures is too big: " + ack);
+        }
+        this.replicas = replicas;
+        this.ack = ack;
+        this.read = read;
+        this.latencies = latencies;
+        this.timer = timer;
+    }
+
+    /**
+     * Query replicas.
+     *
+     * @param initial is count of replicas queried at once
+     * @param hedged  is true if slow replicas are hedged
+     * @return ack answers by replicas or failure if too many replicas fail
+     */
+    @NotNull
+    CompletableFuture<Map<ServiceNode, T>> start(final int initial,
+                                               final boolean hedged) {
+        synchronized (this) {
+            for (int i = 0; i < initial; i++) {
+                query(hedged);
+            }
+        }
+        return result;
+    }
+
+    private void query(final boolean hedged) {
+        if (result.isDone() || sent == replicas.size()) {
+            return;
+        }
+        final ServiceNode node = replicas.get(sent++);
+        final long start = System.nanoTime();
+        final CompletableFuture<T> future = read.apply(node);
+        future.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                latencies.record(node, System.nanoTime() - start);
+            }
+            complete(node, value, throwable, hedged);
+        });
+        if (hedged && sent < replicas.size()) {
+            timer.schedule(() -> {
+                if (!future.isDone()) {
+                    synchronized (this) {
+                        query(true);
+                    }
+                }
+            }, latencies.hedgeDelayMicros(node), TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private synchronized void complete(@NotNull final ServiceNode node,
+                                       @Nullable final T value,
+                                       @Nullable final Throwable throwable,
+                                       final boolean hedged) {
+        if (result.isDone()) {
+            return;
+        }
+        if (throwable != null) {
+            failed++;
+            if (failed > replicas.size() - ack) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            // Failed replica is replaced at once, not after its delay
+            query(hedged);
+            return;
+        }
+        values.put(node, value);
+        if (values.size() == ack) {
+            result.complete(new LinkedHashMap<>(values));
+        }
+    }
+}
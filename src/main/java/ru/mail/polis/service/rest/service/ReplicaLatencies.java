@@ -0,0 +1,110 @@
+package ru.mail.polis.service.rest.service;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.dao.storage.LatencyHistogram;
+import ru.mail.polis.service.topology.node.ServiceNode;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observed latencies of reads from each replica, they define when a read is hedged.
+ * Only the current and the previous time windows are kept, so old latencies of replica are forgotten.
+ */
+final class ReplicaLatencies {
+
+    /**
+     * Count of reads from replica before its own percentile is trusted.
+     */
+    private static final long MIN_SAMPLES = 100;
+    private static final long WINDOW_MS = 10_000;
+
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final double percentile;
+    private final long defaultDelayMicros;
+    private final long windowNanos;
+
+    /**
+     * Create latencies of replicas.
+     *
+     * @param percentile   is percentile of latency after which read is hedged
+     * @param defaultDelay is delay of hedge in milliseconds until replica has enough samples
+     */
+    ReplicaLatencies(final double percentile,
+                     final long defaultDelay) {
+        this(percentile, defaultDelay, WINDOW_MS);
+    }
+
+    /**
+     * Create latencies of replicas.
+     *
+     * @param percentile   is percentile of latency after which read is hedged
+     * @param defaultDelay is delay of hedge in milliseconds until replica has enough samples
+     * @param windowMs     is length of time window in milliseconds
+     */
+    ReplicaLatencies(final double percentile,
+                     final long defaultDelay,
+                     final long windowMs) {
+        this.percentile = percentile;
+        this.defaultDelayMicros = TimeUnit.MILLISECONDS.toMicros(defaultDelay);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    }
+
+    void record(@NotNull final ServiceNode node,
+                final long nanos) {
+        windows.computeIfAbsent(node.key(), key -> new Window()).current().record(nanos);
+    }
+
+    /**
+     * Get time after which read from replica is considered slow.
+     *
+     * @return delay in microseconds
+     */
+    long hedgeDelayMicros(@NotNull final ServiceNode node) {
+        final Window window = windows.get(node.key());
+        if (window == null) {
+            return defaultDelayMicros;
+        }
+        final LatencyHistogram current = window.current();
+        final LatencyHistogram previous = window.previous;
+        if (current.count() + previous.count() < MIN_SAMPLES) {
+            return defaultDelayMicros;
+        }
+        return Math.max(1, LatencyHistogram.percentileMicros(percentile, previous, current));
+    }
+
+    /**
+     * Order of replicas from the fastest one.
+     */
+    @NotNull
+    Comparator<ServiceNode> fastestFirst() {
+        return Comparator.comparingLong(this::hedgeDelayMicros);
+    }
+
+    /**
+     * Histograms of two consecutive time windows, the older one is dropped when the current one ends.
+     */
+    private final class Window {
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram previous = new LatencyHistogram();
+        private volatile long start = System.nanoTime();
+
+        @NotNull
+        LatencyHistogram current() {
+            final long now = System.nanoTime();
+            if (now - start >= windowNanos) {
+                synchronized (this) {
+                    if (now - start >= windowNanos) {
+                        // Window without reads is empty, so replica idle for two windows starts over
+                        previous = now - start >= 2 * windowNanos ? new LatencyHistogram() : current;
+                        current = new LatencyHistogram();
+                        start = now;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.mail.polis.service.rest.session;
+
+import one.nio.http.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Response with body in buffer of storage, e.g. slice of mapped SSTable.
+ * {@link StorageSession} writes body from buffer to socket without copying it to heap,
+ * other sessions get it copied by {@link #toBytes(boolean)}.
+ */
+public final class BufferResponse extends Response {
+
+    private final ByteBuffer body;
+
+    /**
+     * Create response with body.
+     *
+     * @param resultCode is code of response
+     * @param body       is body, its position and limit are not changed
+     */
+    public BufferResponse(@NotNull final String resultCode,
+                          @NotNull final ByteBuffer body) {
+        super(resultCode);
+        this.body = body.duplicate();
+        addHeader("Content-Length: " + this.body.remaining());
+    }
+
+    /**
+     * Status line and headers of response.
+     */
+    @NotNull
+    byte[] head() {
+        return super.toBytes(false);
+    }
+
+    /**
+     * Body of response consumed by writing it to socket.
+     */
+    @NotNull
+    ByteBuffer body() {
+        return body.duplicate();
+    }
+
+    @Override
+    public byte[] getBody() {
+        final byte[] result = new byte[body.remaining()];
+        body.duplicate().get(result);
+        return result;
+    }
+
+    @Override
+    public byte[] toBytes(final boolean includeBody) {
+        final byte[] head = head();
+        if (!includeBody) {
+            return head;
+        }
+        final byte[] result = Arrays.copyOf(head, head.length + body.remaining());
+        body.duplicate().get(result, head.length, body.remaining());
+        return result;
+    }
+}
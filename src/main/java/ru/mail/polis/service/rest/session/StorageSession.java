@@ -6,25 +6,36 @@ import one.nio.http.HttpSession;
 import one.nio.http.Response;
 import one.nio.net.Socket;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.mail.polis.Record;
-import ru.mail.polis.utils.BytesUtils;
+import ru.mail.polis.dao.Cursor;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
-import java.util.Iterator;
+import java.util.concurrent.Executor;
 
 public final class StorageSession extends HttpSession {
 
     private static final Logger logger = LoggerFactory.getLogger(StorageSession.class);
-    private static final Charset UTF_8 = Charsets.UTF_8;
     private static final byte[] CRLF = "\r\n".getBytes(Charsets.UTF_8);
     private static final byte[] DELIMITER = "\n".getBytes(Charsets.UTF_8);
     private static final byte[] EMPTY_CHUNK = "0\r\n\r\n".getBytes(Charsets.UTF_8);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(Charsets.UTF_8);
+    private static final int MAX_SIZE_DIGITS = Integer.BYTES * 2;
+    private static final int CHUNK_HEADER = MAX_SIZE_DIGITS + CRLF.length;
+    private static final int CHUNK_SIZE = 64 * 1024;
 
-    private Iterator<Record> data;
+    private Cursor data;
+    private boolean framed;
+    private boolean pending;
+    // Cursor waiting for other nodes is read by filler, null if it is read by selector
+    private Executor filler;
+    private boolean filling;
+    private boolean closed;
+    // Records are packed to chunk, which is refilled only when the previous one left the queue
+    private ByteBuffer chunk;
 
     /**
      * Custom session for write range of chunks ro socket.
@@ -39,12 +50,43 @@ public final class StorageSession extends HttpSession {
 
 
     /**
-     * Range streaming data as Iterator to socket.
+     * Range streaming data of cursor to socket.
      *
-     * @param records is iterator as data for stream.
+     * @param cursor is cursor as data for stream.
      */
-    public void stream(@NotNull final Iterator<Record> records) throws IOException {
-        this.data = records;
+    public void stream(@NotNull final Cursor cursor) throws IOException {
+        stream(cursor, false, null);
+    }
+
+    /**
+     * Range streaming data of cursor to socket, chunks are filled by filler, because reads
+     * of cursor wait for other nodes and must not block selector.
+     *
+     * @param cursor is cursor as data for stream.
+     * @param filler is executor reading cursor
+     */
+    public void stream(@NotNull final Cursor cursor,
+                       @NotNull final Executor filler) throws IOException {
+        stream(cursor, false, filler);
+    }
+
+    /**
+     * Range streaming data of cursor to socket as records of [int size][key][int size][value],
+     * so keys and values of any content can be read back by other node.
+     *
+     * @param cursor is cursor as data for stream.
+     */
+    public void streamFramed(@NotNull final Cursor cursor) throws IOException {
+        stream(cursor, true, null);
+    }
+
+    private synchronized void stream(@NotNull final Cursor cursor,
+                                     final boolean framed,
+                                     @Nullable final Executor filler) throws IOException {
+        this.data = cursor;
+        this.framed = framed;
+        this.pending = false;
+        this.filler = filler;
         final Response response = new Response(Response.OK);
         response.addHeader("Transfer-Encoding: chunked");
         writeResponse(response, false);
@@ -52,55 +94,231 @@ public final class StorageSession extends HttpSession {
     }
 
     @Override
-    protected void processWrite() throws Exception {
+    public synchronized void close() {
+        closed = true;
+        // Storage files are held by cursor until it is exhausted, cursor being filled is closed by filler
+        if (data != null && !filling) {
+            data.close();
+            data = null;
+        }
+        super.close();
+    }
+
+    @Override
+    protected void writeResponse(@NotNull final Response response,
+                                 final boolean includeBody) throws IOException {
+        if (!(response instanceof BufferResponse)) {
+            super.writeResponse(response, includeBody);
+            return;
+        }
+        final BufferResponse buffered = (BufferResponse) response;
+        final byte[] head = buffered.head();
+        write(head, 0, head.length);
+        if (includeBody) {
+            write(new BufferQueueItem(buffered.body()));
+        }
+    }
+
+    @Override
+    protected synchronized void processWrite() throws Exception {
         super.processWrite();
-        next();
+        if (data != null && !filling) {
+            next();
+        }
     }
 
     private void next() throws IOException {
         if (data == null) {
             throw new IllegalStateException("");
         }
-        while (data.hasNext() && queueHead == null) {
-            final Record record = data.next();
-            writeRecord(record);
+        while (queueHead == null) {
+            if (filler != null) {
+                filling = true;
+                filler.execute(this::fillAsync);
+                return;
+            }
+            if (writeChunk(fillChunk())) {
+                return;
+            }
         }
-        if (!data.hasNext()) {
+    }
+
+    /**
+     * Fill chunks by filler while socket takes them, the next chunk is filled by
+     * {@link #processWrite()} when the queue is written.
+     */
+    private void fillAsync() {
+        try {
+            while (true) {
+                // Session is not locked while cursor waits for other nodes
+                final boolean exhausted = fillChunk();
+                synchronized (this) {
+                    if (closed) {
+                        filling = false;
+                        data.close();
+                        data = null;
+                        return;
+                    }
+                    if (writeChunk(exhausted) || queueHead != null) {
+                        filling = false;
+                        return;
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Status is already sent, so client sees the broken stream
+            logger.error("Something wrong while get range of value ", e);
+            synchronized (this) {
+                filling = false;
+            }
+            close();
+        }
+    }
+
+    /**
+     * Put records of cursor to chunk after its header.
+     *
+     * @return true if cursor is exhausted
+     */
+    private boolean fillChunk() {
+        if (chunk == null) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        chunk.clear().position(CHUNK_HEADER);
+        return fill();
+    }
+
+    /**
+     * Write chunk filled by {@link #fillChunk()} or pending record larger than chunk.
+     *
+     * @return true if stream is finished
+     */
+    private boolean writeChunk(final boolean exhausted) throws IOException {
+        if (chunk.position() > CHUNK_HEADER) {
+            seal(chunk, exhausted);
+            write(new BufferQueueItem(chunk));
+        } else if (exhausted) {
             write(EMPTY_CHUNK, 0, EMPTY_CHUNK.length);
+        } else {
+            writeLarge();
+        }
+        if (exhausted) {
+            finish();
+        }
+        return exhausted;
+    }
 
-            server.incRequestsProcessed();
+    /**
+     * Put records of cursor to chunk until it is full, record not fit is kept pending for the next chunk.
+     *
+     * @return true if cursor is exhausted
+     */
+    private boolean fill() {
+        while (true) {
+            if (!pending) {
+                if (!data.next()) {
+                    return true;
+                }
+                pending = true;
+            }
+            final ByteBuffer key = data.key();
+            final ByteBuffer value = data.value();
+            if (chunk.remaining() < recordLength(key, value) + CRLF.length + EMPTY_CHUNK.length) {
+                return false;
+            }
+            putRecord(key, value, chunk);
+            pending = false;
+        }
+    }
 
-            if ((handling = pipeline.pollFirst()) != null) {
-                if (handling == FIN) {
-                    scheduleClose();
-                } else {
-                    try {
-                        server.handleRequest(handling, this);
-                    } catch (IOException e) {
-                        logger.info("Error {}", e.getMessage());
-                    }
+    /**
+     * Write pending record larger than chunk as chunk of its own.
+     */
+    private void writeLarge() throws IOException {
+        final ByteBuffer key = data.key();
+        final ByteBuffer value = data.value();
+        final ByteBuffer large = ByteBuffer.allocate(CHUNK_HEADER + recordLength(key, value) + CRLF.length);
+        large.position(CHUNK_HEADER);
+        putRecord(key, value, large);
+        pending = false;
+        seal(large, false);
+        write(new BufferQueueItem(large));
+    }
+
+    private void finish() {
+        data = null;
+
+        server.incRequestsProcessed();
+
+        if ((handling = pipeline.pollFirst()) != null) {
+            if (handling == FIN) {
+                scheduleClose();
+            } else {
+                try {
+                    server.handleRequest(handling, this);
+                } catch (IOException e) {
+                    logger.info("Error {}", e.getMessage());
                 }
             }
         }
     }
 
-    private void writeRecord(@NotNull final Record record) throws IOException {
-        final byte[] key = BytesUtils.toArray(record.getKey());
-        final byte[] value = BytesUtils.toArray(record.getValue());
-        // <key>'\n'<value>
-        final int payloadLength = key.length + DELIMITER.length + value.length;
-        final String size = Integer.toHexString(payloadLength);
-        // <size>\r\n<payload>\r\n
-        final int chunkLength = size.length() + CRLF.length + payloadLength + CRLF.length;
-        //chunk
-        final byte[] chunk = new byte[chunkLength];
-        final ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
-        chunkBuffer.put(size.getBytes(UTF_8));
-        chunkBuffer.put(CRLF);
-        chunkBuffer.put(key);
-        chunkBuffer.put(DELIMITER);
-        chunkBuffer.put(value);
-        chunkBuffer.put(CRLF);
-        write(chunk, 0, chunk.length);
+    private int recordLength(@NotNull final ByteBuffer key,
+                             @NotNull final ByteBuffer value) {
+        // <key>'\n'<value> or <int size><key><int size><value>
+        return key.remaining() + value.remaining() + (framed ? Integer.BYTES * 2 : DELIMITER.length);
+    }
+
+    private void putRecord(@NotNull final ByteBuffer key,
+                           @NotNull final ByteBuffer value,
+                           @NotNull final ByteBuffer to) {
+        if (framed) {
+            to.putInt(key.remaining()).put(key).putInt(value.remaining()).put(value);
+        } else {
+            to.put(key).put(DELIMITER).put(value);
+        }
+    }
+
+    /**
+     * Complete chunk of records put after {@link #CHUNK_HEADER} as <size>\r\n<records>\r\n,
+     * size is aligned to the end of header, so buffer is positioned at its first digit.
+     *
+     * @param last is true to add the last empty chunk after this one
+     */
+    private static void seal(@NotNull final ByteBuffer buffer,
+                             final boolean last) {
+        final int size = buffer.position() - CHUNK_HEADER;
+        buffer.put(CRLF);
+        if (last) {
+            buffer.put(EMPTY_CHUNK);
+        }
+        buffer.flip();
+        int position = MAX_SIZE_DIGITS;
+        for (int rest = size; position == MAX_SIZE_DIGITS || rest != 0; rest >>>= 4) {
+            buffer.put(--position, HEX[rest & 0xf]);
+        }
+        buffer.put(MAX_SIZE_DIGITS, CRLF[0]).put(MAX_SIZE_DIGITS + 1, CRLF[1]);
+        buffer.position(position);
+    }
+
+    /**
+     * Body written from buffer, direct buffer goes to socket without copying to heap.
+     */
+    private static final class BufferQueueItem extends QueueItem {
+        private final ByteBuffer buffer;
+
+        BufferQueueItem(@NotNull final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int remaining() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int write(@NotNull final Socket socket) throws IOException {
+            return socket.write(buffer);
+        }
     }
 }
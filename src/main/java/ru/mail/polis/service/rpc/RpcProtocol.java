@@ -0,0 +1,241 @@
+package ru.mail.polis.service.rpc;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+/**
+ * Binary framed protocol of replica requests between nodes.
+ * Every frame is [int size][long id][payload], responses carry id of their request,
+ * so many requests are in flight over one connection.
+ * Request payload is [byte operation][byte operator][short size][keyspace][int size][key][value],
+ * batch payload is [byte operation][int count] and operations with [int size] before value.
+ * Upsert carries [long timestamp][data] as value and delete carries [long timestamp],
+ * timestamp is taken by coordinator, so all replicas store the same version of write.
+ * Repair carries status of value as operator and [long timestamp][data] as value.
+ * Response of digest carries [int hash] of data as value.
+ * Response payload is [byte status][long timestamp][value].
+ */
+public final class RpcProtocol {
+
+    public static final byte GET = 1;
+    public static final byte UPSERT = 2;
+    public static final byte DELETE = 3;
+    public static final byte MERGE = 4;
+    public static final byte BATCH = 5;
+    public static final byte REPAIR = 6;
+    public static final byte DIGEST = 7;
+
+    public static final byte ACK = 0;
+    public static final byte PRESENT = 1;
+    public static final byte REMOVED = 2;
+    public static final byte ABSENT = 3;
+    public static final byte ERROR = 4;
+
+    /**
+     * Frames bigger than this are treated as corrupted stream.
+     */
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final int RESPONSE_HEADER_BYTES = Integer.BYTES + Long.BYTES + Byte.BYTES + Long.BYTES;
+
+    private RpcProtocol() {
+    }
+
+    /**
+     * Encode request.
+     *
+     * @param id        is id of request unique for connection
+     * @param operation is operation of request
+     */
+    @NotNull
+    public static ByteBuffer request(final long id,
+                                     @NotNull final Operation operation) {
+        final int size = Long.BYTES + operation.size(false);
+        final ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + size);
+        frame.putInt(size).putLong(id);
+        operation.writeTo(frame, false);
+        return frame.flip();
+    }
+
+    /**
+     * Encode value of repair with its timestamp.
+     *
+     * @param value is present value or tombstone
+     */
+    @NotNull
+    public static byte[] repairValue(@NotNull final Value value) {
+        final ByteBuffer data = value.getState() == Value.State.PRESENT
+                ? value.getData().duplicate() : ByteBuffer.allocate(0);
+        final ByteBuffer result = ByteBuffer.allocate(Long.BYTES + data.remaining());
+        result.putLong(value.getTimestamp()).put(data);
+        return result.array();
+    }
+
+    /**
+     * Encode value of upsert or delete with timestamp of coordinator.
+     *
+     * @param timestamp is timestamp of write
+     * @param data      is data of upsert, null for delete
+     */
+    @NotNull
+    public static byte[] stamped(final long timestamp,
+                                 @Nullable final byte[] data) {
+        final byte[] bytes = data == null ? EMPTY : data;
+        return ByteBuffer.allocate(Long.BYTES + bytes.length).putLong(timestamp).put(bytes).array();
+    }
+
+    /**
+     * Encode batch of write operations, they are executed in order and response value
+     * is status of each one.
+     *
+     * @param id         is id of request unique for connection
+     * @param operations is upserts, deletes and merges
+     */
+    @NotNull
+    public static ByteBuffer batch(final long id,
+                                   @NotNull final List<Operation> operations) {
+        int size = Long.BYTES + Byte.BYTES + Integer.BYTES;
+        for (final Operation operation : operations) {
+            size += operation.size(true);
+        }
+        final ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + size);
+        frame.putInt(size).putLong(id).put(BATCH).putInt(operations.size());
+        for (final Operation operation : operations) {
+            operation.writeTo(frame, true);
+        }
+        return frame.flip();
+    }
+
+    /**
+     * Encode header of response, value follows it in the same frame.
+     *
+     * @param id        is id of request
+     * @param status    is one of statuses
+     * @param timestamp is timestamp of value, zero if there is no value
+     * @param valueSize is size of value following header
+     */
+    @NotNull
+    public static ByteBuffer responseHeader(final long id,
+                                            final byte status,
+                                            final long timestamp,
+                                            final int valueSize) {
+        final ByteBuffer header = ByteBuffer.allocate(RESPONSE_HEADER_BYTES);
+        header.putInt(RESPONSE_HEADER_BYTES - Integer.BYTES + valueSize);
+        header.putLong(id).put(status).putLong(timestamp);
+        return header.flip();
+    }
+
+    /**
+     * Read the next frame.
+     *
+     * @param channel is blocking channel of connection
+     * @return frame after its size or null if connection is closed between frames
+     */
+    @Nullable
+    public static ByteBuffer read(@NotNull final ReadableByteChannel channel) throws IOException {
+        final ByteBuffer size = ByteBuffer.allocate(Integer.BYTES);
+        if (!readFully(channel, size, true)) {
+            return null;
+        }
+        final int frameSize = size.flip().getInt();
+        if (frameSize < Long.BYTES || frameSize > MAX_FRAME_BYTES) {
+            throw new IOException("Wrong size of frame: " + frameSize);
+        }
+        final ByteBuffer frame = ByteBuffer.allocate(frameSize);
+        readFully(channel, frame, false);
+        return frame.flip();
+    }
+
+    /**
+     * Write whole frame, writers of connection must be serialized by caller.
+     *
+     * @param channel is blocking channel of connection
+     * @param frame   is parts of frame
+     */
+    public static void write(@NotNull final GatheringByteChannel channel,
+                             @NotNull final ByteBuffer... frame) throws IOException {
+        long left = 0;
+        for (final ByteBuffer part : frame) {
+            left += part.remaining();
+        }
+        while (left > 0) {
+            left -= channel.write(frame);
+        }
+    }
+
+    private static boolean readFully(@NotNull final ReadableByteChannel channel,
+                                     @NotNull final ByteBuffer buffer,
+                                     final boolean atFrameStart) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (atFrameStart && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Connection is closed in the middle of frame");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Operation of request.
+     */
+    public static final class Operation {
+        private final byte operation;
+        private final byte operator;
+        private final byte[] keyspace;
+        private final byte[] key;
+        private final byte[] value;
+
+        /**
+         * Create operation.
+         *
+         * @param operation is one of operations
+         * @param operator  is id of merge operator, zero for other operations
+         * @param keyspace  is name of keyspace, empty for default storage
+         * @param key       is key of entity
+         * @param value     is value of upsert or operand of merge, null for other operations
+         */
+        public Operation(final byte operation,
+                         final byte operator,
+                         @NotNull final byte[] keyspace,
+                         @NotNull final byte[] key,
+                         @Nullable final byte[] value) {
+            this.operation = operation;
+            this.operator = operator;
+            this.keyspace = keyspace;
+            this.key = key;
+            this.value = value == null ? EMPTY : value;
+        }
+
+        public byte getOperation() {
+            return operation;
+        }
+
+        private int size(final boolean sized) {
+            return Byte.BYTES * 2 + Short.BYTES + keyspace.length + Integer.BYTES + key.length
+                    + (sized ? Integer.BYTES : 0) + value.length;
+        }
+
+        private void writeTo(@NotNull final ByteBuffer frame,
+                             final boolean sized) {
+            frame.put(operation).put(operator);
+            frame.putShort((short) keyspace.length).put(keyspace);
+            frame.putInt(key.length).put(key);
+            if (sized) {
+                frame.putInt(value.length);
+            }
+            frame.put(value);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package ru.mail.polis.service.rpc;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Digest;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Server of replica requests of other nodes by {@link RpcProtocol}.
+ * Each long-lived connection has a reader thread, requests are executed by workers
+ * and responses are written in order of completion.
+ */
+public final class RpcServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcServer.class);
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final DAO dao;
+    private final int port;
+    private final ExecutorService workers;
+    private final ThreadFactory readers = new ThreadFactoryBuilder()
+            .setNameFormat("rpc-server-reader-%d").setDaemon(true).build();
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private volatile ServerSocketChannel server;
+
+    /**
+     * Create server, it is bound to port by {@link #start()}.
+     *
+     * @param dao     is storage with keyspaces
+     * @param port    is port to listen, zero for any free port
+     * @param workers is count of threads executing requests
+     */
+    public RpcServer(@NotNull final DAO dao,
+                     final int port,
+                     final int workers) {
+        this.dao = dao;
+        this.port = port;
+        this.workers = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setNameFormat("rpc-server-worker-%d").build());
+    }
+
+    /**
+     * Bind to port and start accepting connections.
+     */
+    public void start() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        readers.newThread(this::accept).start();
+    }
+
+    /**
+     * Port server is bound to, other nodes discover it by HTTP.
+     */
+    public int getPort() {
+        final ServerSocketChannel current = server;
+        return current == null ? 0 : current.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        for (final SocketChannel connection : connections) {
+            connection.close();
+        }
+        workers.shutdown();
+    }
+
+    private void accept() {
+        while (server.isOpen()) {
+            try {
+                final SocketChannel connection = server.accept();
+                connection.socket().setTcpNoDelay(true);
+                connections.add(connection);
+                readers.newThread(() -> serve(connection)).start();
+            } catch (IOException e) {
+                if (server.isOpen()) {
+                    logger.error("Error while accept rpc connection : ", e);
+                }
+            }
+        }
+    }
+
+    private void serve(@NotNull final SocketChannel connection) {
+        try (connection) {
+            ByteBuffer frame;
+            while ((frame = RpcProtocol.read(connection)) != null) {
+                final ByteBuffer request = frame;
+                workers.execute(() -> handle(connection, request));
+            }
+        } catch (IOException e) {
+            logger.info("Rpc connection is closed : {}", e.getMessage());
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private void handle(@NotNull final SocketChannel connection,
+                        @NotNull final ByteBuffer request) {
+        final long id = request.getLong();
+        ByteBuffer[] response;
+        try {
+            response = execute(id, request);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error while execute rpc request : ", e);
+            response = new ByteBuffer[]{RpcProtocol.responseHeader(id, RpcProtocol.ERROR, 0, 0), EMPTY};
+        }
+        try {
+            synchronized (connection) {
+                RpcProtocol.write(connection, response);
+            }
+        } catch (IOException e) {
+            logger.info("Error while write rpc response : {}", e.getMessage());
+        }
+    }
+
+    @NotNull
+    private ByteBuffer[] execute(final long id,
+                                 @NotNull final ByteBuffer request) throws IOException {
+        final byte operation = request.get();
+        if (operation == RpcProtocol.BATCH) {
+            return batch(id, request);
+        }
+        if (operation == RpcProtocol.GET || operation == RpcProtocol.DIGEST) {
+            request.get();
+            final DAO target = keyspace(slice(request, request.getShort()));
+            final Value value = read(target, slice(request, request.getInt()));
+            return operation == RpcProtocol.GET ? get(id, value) : digest(id, value);
+        }
+        write(operation, request, false);
+        return new ByteBuffer[]{RpcProtocol.responseHeader(id, RpcProtocol.ACK, 0, 0), EMPTY};
+    }
+
+    /**
+     * Execute writes of batch in order, failure of one does not stop the rest.
+     */
+    @NotNull
+    private ByteBuffer[] batch(final long id,
+                               @NotNull final ByteBuffer request) {
+        final byte[] statuses = new byte[request.getInt()];
+        for (int i = 0; i < statuses.length; i++) {
+            try {
+                write(request.get(), request, true);
+                statuses[i] = RpcProtocol.ACK;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error while execute rpc request of batch : ", e);
+                statuses[i] = RpcProtocol.ERROR;
+            }
+        }
+        return new ByteBuffer[]{
+                RpcProtocol.responseHeader(id, RpcProtocol.ACK, 0, statuses.length), ByteBuffer.wrap(statuses)};
+    }
+
+    private void write(final byte operation,
+                       @NotNull final ByteBuffer request,
+                       final boolean sized) throws IOException {
+        final byte operator = request.get();
+        final ByteBuffer keyspace = slice(request, request.getShort());
+        final ByteBuffer key = slice(request, request.getInt());
+        final ByteBuffer value = sized ? slice(request, request.getInt()) : request.slice();
+        // Operation is parsed as a whole before it fails, so the next one of batch is in place
+        final DAO target = keyspace(keyspace);
+        switch (operation) {
+            case RpcProtocol.UPSERT:
+                // Stamped by coordinator, so it is written as is
+                target.repair(key, repaired(RpcProtocol.PRESENT, value));
+                break;
+            case RpcProtocol.DELETE:
+                target.repair(key, repaired(RpcProtocol.REMOVED, value));
+                break;
+            case RpcProtocol.MERGE:
+                target.merge(key, value, MergeOperator.of(operator));
+                break;
+            case RpcProtocol.REPAIR:
+                target.repair(key, repaired(operator, value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown rpc operation: " + operation);
+        }
+    }
+
+    @NotNull
+    private static Value repaired(final byte status,
+                                  @NotNull final ByteBuffer value) {
+        final long timestamp = value.getLong();
+        if (status == RpcProtocol.PRESENT) {
+            return new Value(value.slice(), Value.State.PRESENT, timestamp);
+        }
+        return new Value(null, Value.State.REMOVED, timestamp);
+    }
+
+    @NotNull
+    private static Value read(@NotNull final DAO target,
+                              @NotNull final ByteBuffer key) {
+        try (CloseableIterator<Cell> cells = target.latestIterator(key)) {
+            return Value.fromIterator(key, cells);
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer[] digest(final long id,
+                                       @NotNull final Value value) {
+        final Digest digest = Digest.of(value);
+        final byte status;
+        switch (digest.getState()) {
+            case PRESENT:
+                status = RpcProtocol.PRESENT;
+                break;
+            case REMOVED:
+                status = RpcProtocol.REMOVED;
+                break;
+            default:
+                status = RpcProtocol.ABSENT;
+                break;
+        }
+        final ByteBuffer hash = ByteBuffer.allocate(Integer.BYTES).putInt(0, digest.getHash());
+        return new ByteBuffer[]{RpcProtocol.responseHeader(id, status, digest.getTimestamp(), Integer.BYTES), hash};
+    }
+
+    @NotNull
+    private static ByteBuffer[] get(final long id,
+                                    @NotNull final Value value) {
+        switch (value.getState()) {
+            case PRESENT:
+                // Data is written from storage buffer as is
+                final ByteBuffer data = value.getData().duplicate();
+                return new ByteBuffer[]{
+                        RpcProtocol.responseHeader(id, RpcProtocol.PRESENT, value.getTimestamp(), data.remaining()),
+                        data};
+            case REMOVED:
+                return new ByteBuffer[]{
+                        RpcProtocol.responseHeader(id, RpcProtocol.REMOVED, value.getTimestamp(), 0), EMPTY};
+            default:
+                return new ByteBuffer[]{RpcProtocol.responseHeader(id, RpcProtocol.ABSENT, 0, 0), EMPTY};
+        }
+    }
+
+    @NotNull
+    private DAO keyspace(@NotNull final ByteBuffer name) {
+        if (!name.hasRemaining()) {
+            return dao;
+        }
+        final String keyspace = StandardCharsets.UTF_8.decode(name).toString();
+        final DAO result = dao.keyspace(keyspace);
+        if (result == null) {
+            throw new IllegalArgumentException("Unknown keyspace: " + keyspace);
+        }
+        return result;
+    }
+
+    @NotNull
+    private static ByteBuffer slice(@NotNull final ByteBuffer frame,
+                                    final int size) {
+        final ByteBuffer result = frame.duplicate();
+        result.limit(result.position() + size);
+        frame.position(frame.position() + size);
+        return result.slice();
+    }
+}
@@ -68,6 +68,11 @@ public final class BasicTopology implements Topology<ServiceNode> {
         return res;
     }
 
+    @Override
+    public long token(@NotNull final ByteBuffer key) {
+        return key.hashCode() & 0xFFFF_FFFFL;
+    }
+
     @NotNull
     @Override
     public ServiceNode whoAmI() {
@@ -106,6 +106,11 @@ public final class ConsistentHashTopology implements Topology<ServiceNode> {
         return nodesTailMap;
     }
 
+    @Override
+    public long token(@NotNull final ByteBuffer key) {
+        return hashFunction.hash(key.asReadOnlyBuffer());
+    }
+
     @NotNull
     @Override
     public ServiceNode whoAmI() {
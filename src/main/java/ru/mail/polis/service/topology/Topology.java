@@ -24,6 +24,11 @@ public interface Topology<T extends Node> {
     @NotNull
     List<T> replicas(final int count, @NotNull final ByteBuffer key);
 
+    /**
+     * Position of key on ring of topology, unsigned 32 bit.
+     */
+    long token(@NotNull final ByteBuffer key);
+
     @NotNull
     static Topology<ServiceNode> basic(@NotNull Set<ServiceNode> serviceNodes,
                                        @NotNull ServiceNode me) {
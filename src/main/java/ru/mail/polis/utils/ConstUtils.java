@@ -5,6 +5,8 @@ public final class ConstUtils {
     public static final String PROXY_HEADER_NAME = "X-OK-Proxy";
     public static final String PROXY_HEADER_VALUE = "True";
     public static final String PROXY_HEADER = PROXY_HEADER_NAME + ": " + PROXY_HEADER_VALUE;
+    public static final String DIGEST_HEADER = "X-OK-Digest";
+    public static final String DIGEST_REQUEST_HEADER = DIGEST_HEADER + ": " + PROXY_HEADER_VALUE;
 
     private ConstUtils() {
     }
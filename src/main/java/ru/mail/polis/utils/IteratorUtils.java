@@ -1,15 +1,18 @@
 package ru.mail.polis.utils;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import org.jetbrains.annotations.NotNull;
-import ru.mail.polis.dao.Iters;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.dao.storage.cell.Cell;
 import ru.mail.polis.dao.storage.cell.Value;
 import ru.mail.polis.dao.storage.table.SSTable;
 import ru.mail.polis.dao.storage.table.Table;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableMap;
@@ -29,11 +32,51 @@ public final class IteratorUtils {
     public static Iterator<Cell> data(@NotNull final Table table,
                                       @NotNull final NavigableMap<Long, SSTable> tables,
                                       @NotNull final ByteBuffer from) {
-        final List<Iterator<Cell>> list = compose(table, tables, from);
+        return data(table, tables, from, null);
+    }
+
+    /**
+     * Simple helper to collapse data from tables in range, tables out of range are skipped.
+     *
+     * @param table  is table witch collapse their iters with another tables
+     * @param tables is collection witch collapse theirs iters with table
+     * @param from   is key from we get data
+     * @param to     is key until we get data (exclusive), null if range is unbounded
+     */
+    public static Iterator<Cell> data(@NotNull final Table table,
+                                      @NotNull final NavigableMap<Long, SSTable> tables,
+                                      @NotNull final ByteBuffer from,
+                                      @Nullable final ByteBuffer to) {
+        final List<Iterator<Cell>> list = compose(table, tables, from, to);
         final Iterator<Cell> cellIterator = collapseEquals(list);
         return filterAlive(cellIterator);
     }
 
+    /**
+     * Collapse data only from ssTables, used for compaction.
+     *
+     * @param ssTables is collection witch collapse theirs iters
+     * @param from     is key from we get data
+     */
+    public static Iterator<Cell> data(@NotNull final NavigableMap<Long, SSTable> ssTables,
+                                      @NotNull final ByteBuffer from) {
+        final List<Iterator<Cell>> list = new ArrayList<>();
+        for (final Table fromOther : ssTables.values()) {
+            list.add(fromOther.iterator(from));
+        }
+        return filterAlive(collapseEquals(list));
+    }
+
+    /**
+     * Collapse iterators of tables witch are not the whole storage (e.g. mem tables).
+     * Merge operands without base value are kept as is, because base may be in older tables.
+     *
+     * @param data is iterators witch we must be collapse
+     */
+    public static Iterator<Cell> collapsePartial(@NotNull final Iterable<Iterator<Cell>> data) {
+        return new MergeIterator(Iterators.mergeSorted(data, Cell.COMPARATOR), false);
+    }
+
     /**
      * Return latestIterators with removed cells.
      *
@@ -44,25 +87,29 @@ public final class IteratorUtils {
     public static Iterator<Cell> latestIter(@NotNull final Table table,
                                             @NotNull final NavigableMap<Long, SSTable> ssTables,
                                             @NotNull final ByteBuffer from) {
-        final List<Iterator<Cell>> iteratorList = compose(table, ssTables, from);
+        final List<Iterator<Cell>> iteratorList = compose(table, ssTables, from, null);
         return collapseEquals(iteratorList);
     }
 
     /**
-     * Compose data from ssTables.
+     * Compose data from ssTables, tables without keys in range are skipped by their meta.
      *
      * @param table    is table from witch we should be get Iterators by key
      * @param ssTables is other ssTables from witch we should be get Iterators by key
      * @param from     is key from witch we should be get data
+     * @param to       is key until witch we should be get data, null if range is unbounded
      */
     private static List<Iterator<Cell>> compose(
             @NotNull final Table table,
             @NotNull final NavigableMap<Long, SSTable> ssTables,
-            @NotNull final ByteBuffer from) {
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
         final List<Iterator<Cell>> list = new ArrayList<>();
         list.add(table.iterator(from));
-        for (final Table fromOther : ssTables.values()) {
-            list.add(fromOther.iterator(from));
+        for (final SSTable fromOther : ssTables.values()) {
+            if (fromOther.getMeta().overlaps(from, to)) {
+                list.add(fromOther.iterator(from));
+            }
         }
         return list;
     }
@@ -73,7 +120,7 @@ public final class IteratorUtils {
      * @param data is iterators witch we must be collapse
      */
     private static Iterator<Cell> collapseEquals(@NotNull final List<Iterator<Cell>> data) {
-        return Iters.collapseEquals(Iterators.mergeSorted(data, Cell.COMPARATOR), Cell::getKey);
+        return new MergeIterator(Iterators.mergeSorted(data, Cell.COMPARATOR), true);
     }
 
     /**
@@ -89,4 +136,79 @@ public final class IteratorUtils {
                 }
         );
     }
+
+    /**
+     * Collapse cells with equal keys to the latest one.
+     * Merge operands are combined with the latest base value below them.
+     */
+    private static final class MergeIterator implements Iterator<Cell> {
+        private final PeekingIterator<Cell> iter;
+        private final boolean full;
+        private final Deque<Cell> ready = new ArrayDeque<>();
+
+        /**
+         * Create collapsing iterator.
+         *
+         * @param iter is sorted by {@link Cell#COMPARATOR} cells
+         * @param full is true if iter contains whole storage, so missing base is absent value
+         */
+        MergeIterator(@NotNull final Iterator<Cell> iter,
+                      final boolean full) {
+            this.iter = Iterators.peekingIterator(iter);
+            this.full = full;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !ready.isEmpty() || iter.hasNext();
+        }
+
+        @Override
+        public Cell next() {
+            assert hasNext();
+
+            if (!ready.isEmpty()) {
+                return ready.pollFirst();
+            }
+
+            final Cell latest = iter.next();
+            final ByteBuffer key = latest.getKey();
+            if (latest.getValue().getState() != Value.State.MERGE) {
+                skip(key);
+                return latest;
+            }
+
+            // Operands from newest to oldest
+            final Deque<Cell> operands = new ArrayDeque<>();
+            operands.add(latest);
+            Value base = null;
+            while (iter.hasNext() && iter.peek().getKey().equals(key)) {
+                final Cell cell = iter.next();
+                if (cell.getValue().getState() == Value.State.MERGE) {
+                    operands.add(cell);
+                } else {
+                    base = cell.getValue();
+                    break;
+                }
+            }
+            skip(key);
+
+            if (base == null && !full) {
+                ready.addAll(operands);
+                return ready.pollFirst();
+            }
+
+            Value value = base == null ? Value.absent() : base;
+            while (!operands.isEmpty()) {
+                value = Value.combine(value, operands.pollLast().getValue());
+            }
+            return Cell.of(key, value, latest.getGeneration());
+        }
+
+        private void skip(@NotNull final ByteBuffer key) {
+            while (iter.hasNext() && iter.peek().getKey().equals(key)) {
+                iter.next();
+            }
+        }
+    }
 }
@@ -5,18 +5,25 @@ import one.nio.http.Response;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.storage.cell.Digest;
 import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.service.rest.session.BufferResponse;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Collection;
 
+import static ru.mail.polis.utils.ConstUtils.DIGEST_HEADER;
 import static ru.mail.polis.utils.ConstUtils.TIMESTAMP_HEADER;
 
 public final class ResponseUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(ResponseUtils.class);
 
+    /**
+     * Smaller bodies are copied to response, so headers and body are sent by one write.
+     */
+    private static final int BUFFER_BODY_BYTES = 4096;
+
     private ResponseUtils() {
     }
 
@@ -56,8 +63,11 @@ public final class ResponseUtils {
             }
             case PRESENT: {
                 final ByteBuffer value = cellValue.getData();
-                final byte[] body = BytesUtils.body(value);
-                result = new Response(Response.OK, body);
+                if (value.remaining() < BUFFER_BODY_BYTES) {
+                    result = new Response(Response.OK, BytesUtils.body(value));
+                } else {
+                    result = new BufferResponse(Response.OK, value);
+                }
                 if (proxy) {
                     result.addHeader(TIMESTAMP_HEADER + ": " + cellValue.getTimestamp());
                 }
@@ -71,10 +81,29 @@ public final class ResponseUtils {
         }
     }
 
+    /**
+     * Get response of digest read to coordinator.
+     *
+     * @param value is value witch digest is sent without data
+     */
     @NotNull
-    public static Response responseFromValues(@NotNull final Collection<Value> values) {
-        final Value value = Value.merge(values);
-        return from(value, false);
+    public static Response digest(@NotNull final Value value) {
+        final Digest digest = Digest.of(value);
+        switch (digest.getState()) {
+            case PRESENT: {
+                final Response result = new Response(Response.OK, Response.EMPTY);
+                result.addHeader(TIMESTAMP_HEADER + ": " + digest.getTimestamp());
+                result.addHeader(DIGEST_HEADER + ": " + digest.getHash());
+                return result;
+            }
+            case REMOVED: {
+                final Response result = new Response(Response.NOT_FOUND, Response.EMPTY);
+                result.addHeader(TIMESTAMP_HEADER + ": " + digest.getTimestamp());
+                return result;
+            }
+            default:
+                return new Response(Response.NOT_FOUND, Response.EMPTY);
+        }
     }
 
     public static Response build(@NotNull final String code, @NotNull final byte[] body) {
@@ -0,0 +1,86 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+import ru.mail.polis.dao.storage.vlog.ValueLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Online checkpoints for {@link DAO} implementations.
+ */
+class CheckpointTest extends TestBase {
+
+    @Test
+    void checkpointIsolatedFromLaterWrites(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.valueLogThreshold = 1024;
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer bigKey = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        final ByteBuffer bigValue = randomBuffer(4096);
+        final ByteBuffer later = randomKeyBuffer();
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            dao.upsert(key, value);
+            dao.upsert(bigKey, bigValue);
+            dao.checkpoint("first");
+            assertThrows(FileAlreadyExistsException.class, () -> dao.checkpoint("first"));
+            assertThrows(IllegalArgumentException.class, () -> dao.checkpoint("../escape"));
+
+            dao.remove(key);
+            dao.upsert(later, value);
+            dao.compact();
+        }
+
+        final File checkpoint = new File(new File(data, LSMDao.CHECKPOINTS), "first");
+        try (DAO dao = DAOFactory.create(checkpoint, config)) {
+            assertEquals(value, dao.get(key));
+            assertEquals(bigValue, dao.get(bigKey));
+            assertThrows(NoSuchElementException.class, () -> dao.get(later));
+        }
+    }
+
+    @Test
+    void activeValueLogIsSealed(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.valueLogThreshold = 1024;
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomBuffer(4096);
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            dao.upsert(key, value);
+            dao.checkpoint("first");
+            final File checkpoint = new File(new File(data, LSMDao.CHECKPOINTS), "first");
+            final Map<String, Long> sizes = valueLogSizes(checkpoint);
+            assertEquals(1, sizes.size());
+
+            // Appended to the active value log, witch is not linked to checkpoint any more
+            for (int i = 0; i < 100; i++) {
+                dao.upsert(randomKeyBuffer(), randomBuffer(4096));
+            }
+            dao.checkpoint("second");
+            assertEquals(sizes, valueLogSizes(checkpoint));
+        }
+    }
+
+    private static Map<String, Long> valueLogSizes(final File directory) {
+        final Map<String, Long> sizes = new HashMap<>();
+        for (final File file : directory.listFiles((dir, name) -> name.startsWith(ValueLog.FILE_NAME))) {
+            sizes.put(file.getName(), file.length());
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dictionary compression of small values for {@link DAO} implementations.
+ */
+class CompressionTest extends TestBase {
+    private static final int KEYS = 1000;
+
+    @Test
+    void similarValuesAreCompressed(@TempDir File data) throws IOException {
+        final File plain = new File(data, "plain");
+        final File compressed = new File(data, "compressed");
+        assertTrue(plain.mkdir());
+        assertTrue(compressed.mkdir());
+        final StorageConfig plainConfig = StorageConfig.defaults(1024 * 1024);
+        final StorageConfig compressedConfig = StorageConfig.defaults(1024 * 1024);
+        compressedConfig.compressionDictionary = 4096;
+
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            final String json = "{\"id\":" + i + ",\"name\":\"user" + i + "\",\"active\":true,\"roles\":[\"reader\"]}";
+            expected.put(randomKeyBuffer(), ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+        }
+        write(plain, plainConfig, expected);
+        write(compressed, compressedConfig, expected);
+        assertTrue(tablesSize(compressed) < tablesSize(plain));
+
+        try (DAO dao = DAOFactory.create(compressed, compressedConfig)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            dao.compact();
+        }
+        try (DAO dao = DAOFactory.create(compressed, compressedConfig)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static void write(final File data,
+                              final StorageConfig config,
+                              final Map<ByteBuffer, ByteBuffer> records) throws IOException {
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : records.entrySet()) {
+                dao.upsert(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static long tablesSize(final File directory) {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(LSMDao.FILE_NAME));
+        long size = 0;
+        if (files != null) {
+            for (final File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,123 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.StorageConfig;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cursors of {@link DAO} implementations.
+ */
+class CursorTest extends TestBase {
+    private static final int KEYS = 300;
+
+    @Test
+    void sameAsIterator(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.compressionDictionary = 1024;
+        config.valueLogThreshold = 512;
+        for (int round = 0; round < 3; round++) {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                write(dao);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            // The latest round stays in mem table
+            write(dao);
+            assertSame(dao, key(0), null);
+            assertSame(dao, key(10), key(200));
+            assertSame(dao, key(150), key(151));
+            assertSame(dao, key(100), key(100));
+        }
+    }
+
+    @Test
+    void seek(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int i = 0; i < 10; i++) {
+                dao.upsert(key(i), key(i));
+            }
+            try (Cursor cursor = dao.cursor(key(5), null)) {
+                assertTrue(cursor.next());
+                assertEquals(key(5), cursor.key());
+                cursor.seek(key(2));
+                assertTrue(cursor.next());
+                assertEquals(key(2), cursor.key());
+                assertEquals(key(2), cursor.value());
+                assertTrue(cursor.next());
+                assertEquals(key(3), cursor.key());
+            }
+        }
+    }
+
+    @Test
+    void exhaustedIsClosed(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key(1), key(1));
+            final Cursor cursor = dao.cursor(key(0), key(2));
+            assertTrue(cursor.next());
+            assertFalse(cursor.next());
+            assertFalse(cursor.next());
+            assertThrows(IllegalStateException.class, () -> cursor.seek(key(0)));
+        }
+    }
+
+    private static void write(final DAO dao) throws IOException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < KEYS; i++) {
+            final ByteBuffer key = key(random.nextInt(KEYS));
+            switch (random.nextInt(4)) {
+                case 0:
+                    dao.remove(key);
+                    break;
+                case 1:
+                    dao.merge(key, BytesUtils.fromLong(random.nextInt(10)), MergeOperator.COUNTER_ADD);
+                    break;
+                case 2:
+                    dao.upsert(key, randomBuffer(1024));
+                    break;
+                default:
+                    dao.upsert(key, ByteBuffer.wrap(("{\"value\":" + i + "}").getBytes(StandardCharsets.UTF_8)));
+                    break;
+            }
+        }
+    }
+
+    private static void assertSame(final DAO dao,
+                                   final ByteBuffer from,
+                                   final ByteBuffer to) throws IOException {
+        final List<Record> expected = new ArrayList<>();
+        final Iterator<Record> records = dao.range(from, to);
+        records.forEachRemaining(expected::add);
+        final List<Record> actual = new ArrayList<>();
+        try (Cursor cursor = dao.cursor(from, to)) {
+            while (cursor.next()) {
+                // Views are reused by the next step
+                actual.add(Record.of(ByteBuffer.wrap(BytesUtils.toArray(cursor.key())),
+                        ByteBuffer.wrap(BytesUtils.toArray(cursor.value()))));
+            }
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.wrap(String.format("key%05d", i).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,82 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Placement of tables over several data directories for {@link DAO} implementations.
+ */
+class DataDirectoriesTest extends TestBase {
+    private static final int ROUNDS = 4;
+    private static final int KEYS = 10;
+
+    @Test
+    void roundRobin(@TempDir File data) throws IOException {
+        final File second = new File(data, "second");
+        assertTrue(second.mkdir());
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.extraDirectories = new File[]{second};
+
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                for (int i = 0; i < KEYS; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomValueBuffer();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+        assertTrue(tables(data) > 0);
+        assertTrue(tables(second) > 0);
+        final boolean newestInData = newest(data, second);
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            dao.compact();
+        }
+        assertEquals(1, tables(data) + tables(second));
+        // Result replaces the newest table in its directory
+        assertEquals(1, tables(newestInData ? data : second));
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static boolean newest(final File data, final File second) {
+        return generation(data) > generation(second);
+    }
+
+    private static long generation(final File directory) {
+        long max = -1;
+        for (final String name : directory.list((dir, file) -> file.startsWith(LSMDao.FILE_NAME))) {
+            final String generation = name.substring(LSMDao.FILE_NAME.length(),
+                    name.length() - LSMDao.SUFFIX_DAT.length());
+            max = Math.max(max, Long.parseLong(generation));
+        }
+        return max;
+    }
+
+    private static int tables(final File directory) {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(LSMDao.FILE_NAME));
+        return files == null ? 0 : files.length;
+    }
+}
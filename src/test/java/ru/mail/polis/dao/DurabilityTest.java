@@ -0,0 +1,124 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.Durability;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fsync policies of {@link DAO} implementations.
+ */
+class DurabilityTest extends TestBase {
+    private static final int KEYS = 100;
+
+    @Test
+    void sync(@TempDir File data) throws IOException {
+        final Map<String, Long> metrics = writeAndCompact(data, Durability.Policy.SYNC);
+        assertTrue(metrics.get("fsync.count") > 0);
+        assertEquals(0L, (long) metrics.get("fsync.pending"));
+    }
+
+    @Test
+    void async(@TempDir File data) throws IOException {
+        final Map<String, Long> metrics = writeAndCompact(data, Durability.Policy.ASYNC);
+        // Compaction is synced at once
+        assertTrue(metrics.get("fsync.count") > 0);
+    }
+
+    @Test
+    void asyncRenamesSyncedTables(@TempDir File data) throws IOException, InterruptedException {
+        final StorageConfig config = StorageConfig.defaults(64 * 1024);
+        config.durability = Durability.Policy.ASYNC;
+        config.syncIntervalMs = 60_000;
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            while (dao.metrics().get("fsync.pending") == 0) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            while (dao.metrics().get("flush.pending") > 0) {
+                Thread.sleep(10);
+            }
+            // Flushed table is read, but its name is not visible until batch syncs its data
+            assertEquals(0, tables(data, LSMDao.SUFFIX_DAT));
+            assertTrue(tables(data, LSMDao.SUFFIX_TMP) > 0);
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+        assertEquals(0, tables(data, LSMDao.SUFFIX_TMP));
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void staleTmpTablesAreDeleted(@TempDir File data) throws IOException {
+        final File stale = new File(data, LSMDao.FILE_NAME + 1 + LSMDao.SUFFIX_TMP);
+        // Table waiting for batched rename when storage crashed
+        Files.write(stale.toPath(), new byte[]{1, 2, 3});
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.durability = Durability.Policy.ASYNC;
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertEquals(0, tables(data, LSMDao.SUFFIX_TMP));
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = randomValueBuffer();
+            dao.upsert(key, value);
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void none(@TempDir File data) throws IOException {
+        final Map<String, Long> metrics = writeAndCompact(data, Durability.Policy.NONE);
+        assertEquals(0L, (long) metrics.get("fsync.count"));
+    }
+
+    private static Map<String, Long> writeAndCompact(final File data,
+                                                     final Durability.Policy policy) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.durability = policy;
+        config.syncIntervalMs = 60_000;
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        for (int round = 0; round < 2; round++) {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                for (int i = 0; i < KEYS; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomValueBuffer();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            dao.compact();
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            return dao.metrics();
+        }
+    }
+
+    private static int tables(final File directory,
+                              final String suffix) {
+        final String[] files = directory.list(
+                (dir, name) -> name.startsWith(LSMDao.FILE_NAME) && name.endsWith(suffix));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,107 @@
+package ru.mail.polis.dao;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Failed flushes of {@link DAO} mem tables.
+ */
+class FlushFailureTest extends TestBase {
+    private static final int VALUE_SIZE = 1024;
+    private static final int GENERATIONS = 100;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    void writersFailAndRecover(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(64 * 1024);
+        config.memoryBudget = 256 * 1024;
+        final int[] written = new int[1];
+        try (DAO dao = DAOFactory.create(data, config)) {
+            // Temporary file of every flush is taken by non empty directory
+            block(data, true);
+
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                assertThrows(IOException.class, () -> {
+                    for (; written[0] < GENERATIONS * 64; written[0]++) {
+                        dao.upsert(key(written[0]), value(written[0]));
+                    }
+                });
+                assertThrows(IOException.class, () -> ((LSMDao) dao).checkpoint("failed"));
+            });
+            // Not flushed records are still readable
+            assertEquals(value(0), dao.get(key(0)));
+
+            block(data, false);
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                while (true) {
+                    try {
+                        dao.upsert(key(written[0]), value(written[0]));
+                        break;
+                    } catch (IOException e) {
+                        Thread.sleep(50);
+                    }
+                }
+                written[0]++;
+                for (int i = 0; i < 1000; i++, written[0]++) {
+                    dao.upsert(key(written[0]), value(written[0]));
+                }
+            });
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < written[0]; i++) {
+                assertEquals(value(i), dao.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    void closeIsNotStuck(@TempDir File data) {
+        final StorageConfig config = StorageConfig.defaults(64 * 1024);
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                block(data, true);
+                dao.upsert(key(0), value(0));
+            }
+        });
+    }
+
+    private static void block(@NotNull final File data,
+                              final boolean blocked) throws IOException {
+        for (int generation = 0; generation < GENERATIONS; generation++) {
+            final File tmp = new File(data, LSMDao.FILE_NAME + generation + LSMDao.SUFFIX_TMP);
+            final File child = new File(tmp, "blocked");
+            if (blocked) {
+                Files.createDirectories(child.toPath());
+            } else {
+                Files.delete(child.toPath());
+                Files.delete(tmp.toPath());
+            }
+        }
+    }
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).rewind();
+    }
+
+    private static ByteBuffer value(final int i) {
+        final ByteBuffer value = ByteBuffer.allocate(VALUE_SIZE);
+        while (value.hasRemaining()) {
+            value.putInt(i);
+        }
+        return value.rewind();
+    }
+}
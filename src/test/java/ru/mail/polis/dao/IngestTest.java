@@ -0,0 +1,144 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+import ru.mail.polis.dao.storage.table.IngestStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bulk ingestion of sorted streams for {@link DAO} implementations.
+ */
+class IngestTest extends TestBase {
+    private static final int RECORDS = 100;
+
+    @Test
+    void ingestOverExisting(@TempDir File data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int i = 0; i < RECORDS; i++) {
+                IngestStream.write(out, key(i), i == 1 ? null : value(i));
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key(0), randomValueBuffer());
+            dao.upsert(key(1), randomValueBuffer());
+            dao.ingest(new ByteArrayInputStream(bytes.toByteArray()));
+
+            assertEquals(value(0), dao.get(key(0)));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key(1)));
+
+            dao.upsert(key(2), value(-2));
+            assertEquals(value(-2), dao.get(key(2)));
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            final Iterator<Record> records = dao.iterator(key(0));
+            assertEquals(value(0), records.next().getValue());
+            assertEquals(value(-2), records.next().getValue());
+            for (int i = 3; i < RECORDS; i++) {
+                final Record record = records.next();
+                assertEquals(key(i), record.getKey());
+                assertEquals(value(i), record.getValue());
+            }
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    void unsorted(@TempDir File data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            IngestStream.write(out, key(2), value(2));
+            IngestStream.write(out, key(1), value(1));
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> dao.ingest(new ByteArrayInputStream(bytes.toByteArray())));
+            assertFalse(dao.iterator(key(0)).hasNext());
+        }
+        final String[] files = data.list();
+        assertEquals(0, files == null ? 0 : files.length);
+    }
+
+    @Test
+    void splitToLimitedTables(@TempDir File data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int i = 0; i < RECORDS; i++) {
+                IngestStream.write(out, key(i), value(i));
+            }
+        }
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.tableSizeLimit = 256;
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            dao.ingest(new ByteArrayInputStream(bytes.toByteArray()));
+        }
+        final File[] tables = data.listFiles((dir, name) -> name.startsWith(LSMDao.FILE_NAME));
+        assertTrue(tables.length > 10);
+        for (final File table : tables) {
+            assertTrue(table.getName().endsWith(LSMDao.SUFFIX_DAT));
+            assertTrue(table.length() < 2 * config.tableSizeLimit);
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            final Iterator<Record> records = dao.iterator(key(0));
+            for (int i = 0; i < RECORDS; i++) {
+                final Record record = records.next();
+                assertEquals(key(i), record.getKey());
+                assertEquals(value(i), record.getValue());
+            }
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    void overStaleTmpTables(@TempDir File data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int i = 0; i < RECORDS; i++) {
+                IngestStream.write(out, key(i), value(i));
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            // Left by crash at generations ingest reserves
+            for (int generation = 0; generation < 10; generation++) {
+                Files.write(new File(data, LSMDao.FILE_NAME + generation + LSMDao.SUFFIX_TMP).toPath(),
+                        new byte[]{1, 2, 3});
+            }
+            dao.ingest(new ByteArrayInputStream(bytes.toByteArray()));
+            for (int i = 0; i < RECORDS; i++) {
+                assertEquals(value(i), dao.get(key(i)));
+            }
+        }
+    }
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).rewind();
+    }
+
+    private static ByteBuffer value(final int i) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(i * 31L).rewind();
+    }
+}
@@ -0,0 +1,53 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throttling of background writes for {@link DAO} implementations.
+ */
+class IoRateLimitTest extends TestBase {
+    private static final int VALUE_SIZE = 4 * 1024;
+    private static final int KEY_COUNT = 64;
+    private static final long RATE = 512 * 1024;
+
+    @Test
+    void throttledFlushAndCompaction(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.ioRateLimit = RATE;
+
+        final Collection<ByteBuffer> keys = new ArrayList<>(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add(randomKeyBuffer());
+        }
+        final ByteBuffer value = randomBuffer(VALUE_SIZE);
+
+        for (int round = 0; round < 2; round++) {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                for (final ByteBuffer key : keys) {
+                    dao.upsert(key, join(key, value));
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            dao.compact();
+            for (final ByteBuffer key : keys) {
+                assertEquals(join(key, value), dao.get(key));
+            }
+            assertEquals(RATE, dao.metrics().get("io.rate.bytes").longValue());
+            assertTrue(dao.metrics().get("io.throttled.ms") > 0);
+        }
+    }
+}
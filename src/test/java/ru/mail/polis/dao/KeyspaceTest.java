@@ -0,0 +1,55 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Named keyspaces of {@link DAO} implementations.
+ */
+class KeyspaceTest extends TestBase {
+
+    @Test
+    void keyspacesAreIsolatedAndPersistent(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.keyspaces = Collections.singletonMap("counters", StorageConfig.defaults(64 * 1024));
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        final ByteBuffer other = randomValueBuffer();
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertNull(dao.keyspace("missing"));
+            final DAO counters = dao.keyspace("counters");
+            assertNotNull(counters);
+            counters.upsert(key, value);
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            dao.upsert(key, other);
+            counters.compact();
+            assertEquals(value, counters.get(key));
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertEquals(other, dao.get(key));
+            assertEquals(value, dao.keyspace("counters").get(key));
+        }
+    }
+
+    @Test
+    void wrongKeyspaceName(@TempDir File data) {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.keyspaces = Collections.singletonMap("../escape", StorageConfig.defaults(1024 * 1024));
+        assertThrows(IllegalArgumentException.class, () -> DAOFactory.create(data, config));
+    }
+}
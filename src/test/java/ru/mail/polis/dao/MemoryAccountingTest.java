@@ -0,0 +1,59 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Heap accounting of mem tables for {@link DAO} implementations.
+ */
+class MemoryAccountingTest extends TestBase {
+    private static final int RECORDS = 10_000;
+
+    @Test
+    void smallValuesAccountOverhead(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(64 * 1024 * 1024);
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < RECORDS; i++) {
+                dao.upsert(key(i), ByteBuffer.wrap(new byte[]{(byte) i}));
+            }
+            final long bytes = dao.metrics().get("memtable.bytes");
+            // Much more than payload of 5 bytes per record
+            assertTrue(bytes > RECORDS * 100L);
+
+            for (int i = 0; i < RECORDS; i++) {
+                dao.upsert(key(i), ByteBuffer.wrap(new byte[]{(byte) -i}));
+            }
+            assertEquals(bytes, dao.metrics().get("memtable.bytes").longValue());
+        }
+    }
+
+    @Test
+    void budgetFlushesSmallValues(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(64 * 1024 * 1024);
+        config.memoryBudget = 1024 * 1024;
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < RECORDS * 10; i++) {
+                dao.upsert(key(i), ByteBuffer.wrap(new byte[]{(byte) i}));
+            }
+            assertTrue(dao.metrics().get("memtable.bytes") <= config.memoryBudget);
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < RECORDS * 10; i += 1000) {
+                assertEquals(ByteBuffer.wrap(new byte[]{(byte) i}), dao.get(key(i)));
+            }
+        }
+    }
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).rewind();
+    }
+}
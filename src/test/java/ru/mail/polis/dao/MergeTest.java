@@ -0,0 +1,81 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.cell.MergeOperator;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Merge operator tests for {@link DAO} implementations.
+ */
+class MergeTest extends TestBase {
+
+    @Test
+    void counterAcrossFlushes(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.merge(key, BytesUtils.fromLong(1), MergeOperator.COUNTER_ADD);
+            dao.merge(key, BytesUtils.fromLong(2), MergeOperator.COUNTER_ADD);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.merge(key, BytesUtils.fromLong(10), MergeOperator.COUNTER_ADD);
+            assertEquals(BytesUtils.fromLong(13), dao.get(key));
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.compact();
+            assertEquals(BytesUtils.fromLong(13), dao.get(key));
+            dao.merge(key, BytesUtils.fromLong(-3), MergeOperator.COUNTER_ADD);
+            assertEquals(BytesUtils.fromLong(10), dao.get(key));
+        }
+    }
+
+    @Test
+    void appendOverValue(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        final ByteBuffer operand = randomValueBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.merge(key, operand, MergeOperator.BYTES_APPEND);
+            assertEquals(join(value, operand), dao.get(key));
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.compact();
+            assertEquals(join(value, operand), dao.get(key));
+        }
+    }
+
+    @Test
+    void mergeAfterRemove(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer operand = randomValueBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, randomValueBuffer());
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.remove(key);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.merge(key, operand, MergeOperator.BYTES_APPEND);
+            assertEquals(operand, dao.get(key));
+        }
+    }
+}
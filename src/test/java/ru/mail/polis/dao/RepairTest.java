@@ -0,0 +1,70 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Repair writes with original timestamps for {@link DAO} implementations.
+ */
+class RepairTest extends TestBase {
+
+    @Test
+    void repairAbsent(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.repair(key, new Value(value, Value.State.PRESENT, 1));
+            assertEquals(value, dao.get(key));
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void olderRepairIsIgnored(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+            dao.repair(key, new Value(randomValueBuffer(), Value.State.PRESENT, 1));
+            dao.repair(key, new Value(null, Value.State.REMOVED, 1));
+            assertEquals(value, dao.get(key));
+        }
+
+        // Older repair in newer table is shadowed by timestamp
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.repair(key, new Value(randomValueBuffer(), Value.State.PRESENT, 1));
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void repairTombstone(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, randomValueBuffer());
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.repair(key, new Value(null, Value.State.REMOVED, System.currentTimeMillis() + 1000));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            dao.compact();
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+}
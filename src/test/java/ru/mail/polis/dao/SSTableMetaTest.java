@@ -0,0 +1,89 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.IoRateLimiter;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.dao.storage.table.SSTable;
+import ru.mail.polis.dao.storage.table.SSTableMeta;
+import ru.mail.polis.dao.storage.vlog.ValueLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Footer of SSTables and range scans over tables with disjoint keys.
+ */
+class SSTableMetaTest extends TestBase {
+    private static final int TABLES = 5;
+    private static final int KEYS = 100;
+
+    @Test
+    void footer(@TempDir File data) throws IOException {
+        final List<Cell> cells = new ArrayList<>();
+        cells.add(Cell.of(ByteBuffer.wrap(new byte[]{1}), new Value(randomValueBuffer(), Value.State.PRESENT, 10), 1));
+        cells.add(Cell.of(ByteBuffer.wrap(new byte[]{2}), new Value(null, Value.State.REMOVED, 30), 1));
+        cells.add(Cell.of(ByteBuffer.wrap(new byte[]{3}), new Value(randomValueBuffer(), Value.State.PRESENT, 20), 1));
+
+        final IoRateLimiter limiter = new IoRateLimiter(0, false, () -> 0);
+        try (ValueLog valueLog = new ValueLog(data, 0, limiter)) {
+            final File file = new File(data, "SSTable_1.dat");
+            SSTable.writeToFile(cells.iterator(), file, valueLog, limiter);
+            final SSTable table = new SSTable(file, 1, valueLog);
+
+            final SSTableMeta meta = table.getMeta();
+            assertEquals(ByteBuffer.wrap(new byte[]{1}), meta.getMinKey());
+            assertEquals(ByteBuffer.wrap(new byte[]{3}), meta.getMaxKey());
+            assertEquals(10, meta.getMinTimestamp());
+            assertEquals(30, meta.getMaxTimestamp());
+            assertEquals(2, meta.getLiveCount());
+            assertEquals(1, meta.getTombstoneCount());
+            assertEquals(3, meta.getKeyBytes());
+            assertTrue(meta.overlaps(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.wrap(new byte[]{2})));
+            assertFalse(meta.overlaps(ByteBuffer.wrap(new byte[]{4}), null));
+            assertFalse(meta.overlaps(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.wrap(new byte[]{1})));
+
+            final Iterator<Cell> iterator = table.iterator(ByteBuffer.allocate(0));
+            for (final Cell cell : cells) {
+                assertEquals(cell.getKey(), iterator.next().getKey());
+            }
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    void rangeOverDisjointTables(@TempDir File data) throws IOException {
+        for (int table = 0; table < TABLES; table++) {
+            try (DAO dao = DAOFactory.create(data)) {
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(key(table, i), key(table, i));
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int table = 0; table < TABLES; table++) {
+                final Iterator<Record> range = dao.range(key(table, 10), key(table, 20));
+                for (int i = 10; i < 20; i++) {
+                    assertEquals(key(table, i), range.next().getValue());
+                }
+                assertFalse(range.hasNext());
+            }
+        }
+    }
+
+    private static ByteBuffer key(final int table, final int i) {
+        return ByteBuffer.allocate(Integer.BYTES * 2).putInt(table).putInt(i).rewind();
+    }
+}
@@ -0,0 +1,73 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.LSMDao;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compaction concurrent with readers of {@link DAO} implementations.
+ */
+class SnapshotTest extends TestBase {
+    private static final int ROUNDS = 3;
+    private static final int KEYS = 10;
+
+    @Test
+    void compactionWaitsForReaders(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                for (int i = 0; i < KEYS; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomValueBuffer();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries = expected.entrySet().iterator();
+            final Record first = records.next();
+            assertEquals(entries.next().getKey(), first.getKey());
+
+            dao.compact();
+            assertTrue(obsolete(data) > 0);
+
+            while (entries.hasNext()) {
+                final Map.Entry<ByteBuffer, ByteBuffer> entry = entries.next();
+                final Record record = records.next();
+                assertEquals(entry.getKey(), record.getKey());
+                assertEquals(entry.getValue(), record.getValue());
+            }
+            assertFalse(records.hasNext());
+            assertEquals(0, obsolete(data));
+
+            try (CloseableIterator<Record> unfinished = (CloseableIterator<Record>) dao.iterator(first.getKey())) {
+                assertTrue(unfinished.hasNext());
+                dao.compact();
+            }
+            assertEquals(0, obsolete(data));
+        }
+    }
+
+    private static int obsolete(final File directory) {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(LSMDao.SUFFIX_OBSOLETE));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Files;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.storage.StorageConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Key-value separation tests for {@link DAO} implementations.
+ */
+class ValueLogTest extends TestBase {
+    private static final int VALUE_SIZE = 64 * 1024;
+    private static final int KEY_COUNT = 50;
+
+    @Test
+    void overwriteAndCompact(@TempDir File data) throws IOException {
+        final StorageConfig config = StorageConfig.defaults(1024 * 1024);
+        config.valueLogThreshold = 1024;
+
+        final Collection<ByteBuffer> keys = new ArrayList<>(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add(randomKeyBuffer());
+        }
+        final ByteBuffer value = randomBuffer(VALUE_SIZE);
+
+        for (int round = 0; round < 3; round++) {
+            try (DAO dao = DAOFactory.create(data, config)) {
+                for (final ByteBuffer key : keys) {
+                    dao.upsert(key, join(key, value));
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            dao.compact();
+            for (final ByteBuffer key : keys) {
+                assertEquals(join(key, value), dao.get(key));
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final ByteBuffer key : keys) {
+                assertEquals(join(key, value), dao.get(key));
+            }
+        }
+
+        // Stale values are collected
+        final long size = Files.directorySize(data);
+        assertTrue(size < 2L * KEY_COUNT * VALUE_SIZE);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.mail.polis.dao.storage.cell;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Values taken from {@link Digest} of read replica for the newest version of the others.
+ */
+class DigestTest {
+
+    @Test
+    void sameVersion() {
+        final Value read = new Value(data("value"), Value.State.PRESENT, 1L);
+        final Digest digest = Digest.of(read);
+        assertSame(read, digest.valueOf(Digest.of(Value.State.PRESENT, 1L, Digest.hash(data("value")))));
+    }
+
+    @Test
+    void equalDataOfNewerVersion() {
+        final Digest digest = Digest.of(new Value(data("value"), Value.State.PRESENT, 1L));
+        final Value value = digest.valueOf(Digest.of(Value.State.PRESENT, 2L, Digest.hash(data("value"))));
+        assertNotNull(value);
+        assertEquals(Value.State.PRESENT, value.getState());
+        assertEquals(2L, value.getTimestamp());
+        assertEquals(data("value"), value.getData());
+    }
+
+    @Test
+    void equalTombstoneOfNewerVersion() {
+        final Digest digest = Digest.of(new Value(null, Value.State.REMOVED, 1L));
+        final Value value = digest.valueOf(Digest.of(Value.State.REMOVED, 2L, 0));
+        assertNotNull(value);
+        assertEquals(Value.State.REMOVED, value.getState());
+        assertEquals(2L, value.getTimestamp());
+    }
+
+    @Test
+    void differentData() {
+        final Digest digest = Digest.of(new Value(data("stale"), Value.State.PRESENT, 1L));
+        assertNull(digest.valueOf(Digest.of(Value.State.PRESENT, 2L, Digest.hash(data("fresh")))));
+        assertNull(digest.valueOf(Digest.of(Value.State.REMOVED, 2L, 0)));
+    }
+
+    @Test
+    void digestOnly() {
+        final Digest digest = Digest.of(Value.State.PRESENT, 1L, Digest.hash(data("value")));
+        assertNull(digest.valueOf(digest));
+    }
+
+    private static ByteBuffer data(final String data) {
+        return ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
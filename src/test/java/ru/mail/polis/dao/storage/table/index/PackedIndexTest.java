@@ -0,0 +1,230 @@
+package ru.mail.polis.dao.storage.table.index;
+
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chunks of {@link PackedIndex} split under sequential and concurrent writes.
+ */
+class PackedIndexTest {
+    private static final int CHUNK = 128;
+    private static final int KEY_LENGTH = 8;
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+    @Test
+    void splitAtFullChunk() {
+        final PackedIndex index = new PackedIndex();
+        for (int i = 0; i < CHUNK; i++) {
+            index.put(key(i * 2), value(i * 2));
+        }
+        assertEquals(1, index.chunks());
+
+        // The first key after full chunk goes to the lower half
+        index.put(key(1), value(1));
+        assertEquals(2, index.chunks());
+        // And the next one to the upper half
+        index.put(key(CHUNK * 2 - 1), value(CHUNK * 2 - 1));
+        assertEquals(2, index.chunks());
+
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < CHUNK * 2; i += 2) {
+            expected.add(i);
+        }
+        expected.add(1, 1);
+        expected.add(CHUNK * 2 - 1);
+        expected.sort(null);
+        assertEquals(expected, keys(index, key(0)));
+        for (final int i : expected) {
+            assertEquals(value(i).getData(), index.get(key(i)).getData());
+        }
+        assertNull(index.get(key(3)));
+    }
+
+    @Test
+    void overwriteAndRemove() {
+        final PackedIndex index = new PackedIndex();
+        for (int i = 0; i < CHUNK * 4; i++) {
+            assertNull(index.put(key(i), value(i)));
+        }
+        final Value removed = Value.of(ByteBuffer.allocate(0));
+        for (int i = 0; i < CHUNK * 4; i += 3) {
+            final Value previous = index.get(key(i));
+            assertSame(previous, index.put(key(i), value(-i)));
+            assertFalse(index.replace(key(i), previous, removed));
+            assertTrue(index.replace(key(i), index.get(key(i)), removed));
+            assertSame(removed, index.putIfAbsent(key(i), value(i)));
+        }
+        for (int i = 0; i < CHUNK * 4; i++) {
+            final Value value = index.get(key(i));
+            if (i % 3 == 0) {
+                assertSame(removed, value);
+            } else {
+                assertEquals(value(i).getData(), value.getData());
+            }
+        }
+        assertEquals(CHUNK * 4, keys(index, key(0)).size());
+    }
+
+    @Test
+    void iteratorFromKey() {
+        final PackedIndex index = new PackedIndex();
+        for (int i = CHUNK * 3; i >= 0; i--) {
+            index.put(key(i * 2), value(i * 2));
+        }
+        final List<Integer> keys = keys(index, key(CHUNK + 1));
+        assertEquals(CHUNK + 2, (int) keys.get(0));
+        assertEquals(CHUNK * 3 * 2, (int) keys.get(keys.size() - 1));
+        assertEquals(CHUNK * 3 - CHUNK / 2, keys.size());
+        assertTrue(keys(index, key(CHUNK * 6 + 1)).isEmpty());
+    }
+
+    @Test
+    void iterateWhileSplitting() throws Exception {
+        final PackedIndex index = new PackedIndex();
+        final int count = CHUNK * 64;
+        // Even keys are there before iteration, odd ones split chunks concurrently
+        for (int i = 0; i < count; i += 2) {
+            index.put(key(i), value(i));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                final List<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < 2; t++) {
+                    final int first = t * 2 + 1;
+                    writers.add(executor.submit(() -> {
+                        for (int i = first; i < count; i += 4) {
+                            index.put(key(i), value(i));
+                        }
+                    }));
+                }
+                final int from = count / 4;
+                while (!writers.stream().allMatch(Future::isDone)) {
+                    final List<Integer> keys = keys(index, key(from));
+                    int previous = from - 1;
+                    int even = 0;
+                    for (final int key : keys) {
+                        assertTrue(key > previous, "Keys are sorted without duplicates");
+                        previous = key;
+                        if (key % 2 == 0) {
+                            even++;
+                        }
+                    }
+                    assertEquals((count - from) / 2, even);
+                }
+                for (final Future<?> writer : writers) {
+                    writer.get();
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        assertEquals(count, keys(index, key(0)).size());
+        assertTrue(index.chunks() >= count / CHUNK);
+    }
+
+    @Test
+    void staleChunksUnderContention() throws Exception {
+        final PackedIndex index = new PackedIndex();
+        final int count = CHUNK * 256;
+        final int threads = 4;
+        final AtomicBoolean failed = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads * 2);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final int first = t;
+                    // Writer interleaved with others, so everyone splits chunks found by the others
+                    futures.add(executor.submit(() -> {
+                        for (int i = first; i < count; i += threads) {
+                            index.put(key(i), value(i));
+                            // Reader of own keys finds chunks which may be split just now
+                            if (index.get(key(i)) == null || index.get(key(first)) == null) {
+                                failed.set(true);
+                            }
+                        }
+                    }));
+                    futures.add(executor.submit(() -> {
+                        for (int i = first; i < count; i += threads) {
+                            index.putIfAbsent(key(i), value(i));
+                        }
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        assertFalse(failed.get());
+        final List<Integer> keys = keys(index, key(0));
+        assertEquals(count, keys.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) keys.get(i));
+            assertEquals(value(i).getData(), index.get(key(i)).getData());
+        }
+    }
+
+    @Test
+    void directKeys() {
+        final PackedIndex index = new PackedIndex();
+        for (int i = 0; i < CHUNK * 2; i++) {
+            final ByteBuffer key = ByteBuffer.allocateDirect(KEY_LENGTH).put(key(i)).flip();
+            index.put(key, value(i));
+            assertEquals(KEY_LENGTH, key.remaining());
+        }
+        for (int i = 0; i < CHUNK * 2; i++) {
+            final ByteBuffer key = ByteBuffer.allocateDirect(KEY_LENGTH).put(key(i)).flip();
+            assertEquals(value(i).getData(), index.get(key).getData());
+        }
+        // Key is compared from its position
+        final ByteBuffer shifted = ByteBuffer.allocate(KEY_LENGTH + 1).put((byte) 7).put(key(5));
+        shifted.position(1);
+        assertEquals(value(5).getData(), index.get(shifted).getData());
+    }
+
+    private static List<Integer> keys(final PackedIndex index,
+                                      final ByteBuffer from) {
+        final List<Integer> result = new ArrayList<>();
+        final Iterator<Map.Entry<ByteBuffer, Value>> iterator = index.iterator(from);
+        while (iterator.hasNext()) {
+            result.add(Integer.parseInt(StandardCharsets.US_ASCII.decode(iterator.next().getKey()).toString()));
+        }
+        return result;
+    }
+
+    /**
+     * Key ordered like number, bytes are compared signed.
+     */
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.wrap(String.format("%08d", i).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Value value(final int i) {
+        return Value.of(ByteBuffer.allocate(Integer.BYTES).putInt(i).rewind());
+    }
+}
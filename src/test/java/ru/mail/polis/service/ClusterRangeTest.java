@@ -0,0 +1,170 @@
+package ru.mail.polis.service;
+
+import one.nio.http.Response;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Range requests merging records of all nodes of three node cluster.
+ */
+class ClusterRangeTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private int port0;
+    private int port1;
+    private int port2;
+    private File data0;
+    private File data1;
+    private File data2;
+    private DAO dao0;
+    private DAO dao1;
+    private DAO dao2;
+    private Service storage0;
+    private Service storage1;
+    private Service storage2;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        port0 = randomPort();
+        port1 = randomPort();
+        port2 = randomPort();
+        endpoints = new LinkedHashSet<>(Arrays.asList(endpoint(port0), endpoint(port1), endpoint(port2)));
+        data0 = Files.createTempDirectory();
+        data1 = Files.createTempDirectory();
+        data2 = Files.createTempDirectory();
+        dao0 = DAOFactory.create(data0);
+        dao1 = DAOFactory.create(data1);
+        dao2 = DAOFactory.create(data2);
+        storage0 = ServiceFactory.create(port0, dao0, endpoints);
+        start(0, storage0);
+        storage1 = ServiceFactory.create(port1, dao1, endpoints);
+        start(1, storage1);
+        storage2 = ServiceFactory.create(port2, dao2, endpoints);
+        start(2, storage2);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        stop(0, storage0);
+        dao0.close();
+        Files.recursiveDelete(data0);
+        stop(1, storage1);
+        dao1.close();
+        Files.recursiveDelete(data1);
+        stop(2, storage2);
+        dao2.close();
+        Files.recursiveDelete(data2);
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void mergeOfAllNodes() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "merge";
+            // Each key is written only to its primary node
+            for (int i = 1; i <= 6; i++) {
+                assertEquals(201, upsert(0, prefix + i, ("value" + i).getBytes(StandardCharsets.UTF_8), 1, 1)
+                        .getStatus());
+            }
+            assertEquals(202, delete(1, prefix + 3, 1, 1).getStatus());
+            assertEquals(201, upsert(2, prefix + 4, "updated".getBytes(StandardCharsets.UTF_8), 1, 1)
+                    .getStatus());
+
+            final byte[] expected = chunksOf(
+                    prefix + 1, "value1",
+                    prefix + 2, "value2",
+                    prefix + 4, "updated",
+                    prefix + 5, "value5");
+            for (int node = 0; node < 3; node++) {
+                final Response response = range(node, prefix + 1, prefix + 6);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(expected, response.getBody());
+            }
+        });
+    }
+
+    @Test
+    void newestReplicaWins() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = "newest";
+            assertEquals(201, upsert(0, key, "old".getBytes(StandardCharsets.UTF_8), 3, 3).getStatus());
+            // Only the primary replica is updated
+            assertEquals(201, upsert(1, key, "new".getBytes(StandardCharsets.UTF_8), 1, 1).getStatus());
+
+            for (int node = 0; node < 3; node++) {
+                final Response response = range(node, key, null);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(chunksOf(key, "new"), response.getBody());
+            }
+        });
+    }
+
+    @Test
+    void quorumOfNodes() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "quorum";
+            assertEquals(201, upsert(0, prefix + 1, "value1".getBytes(StandardCharsets.UTF_8), 3, 3).getStatus());
+            assertEquals(201, upsert(0, prefix + 2, "value2".getBytes(StandardCharsets.UTF_8), 2, 3).getStatus());
+
+            stop(2, storage2);
+            final Response response = range(0, prefix + 1, prefix + 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(chunksOf(prefix + 1, "value1", prefix + 2, "value2"), response.getBody());
+
+            stop(1, storage1);
+            assertEquals(504, range(0, prefix + 1, prefix + 3).getStatus());
+        });
+    }
+
+    @Test
+    void manyChunksOfNodes() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String prefix = "chunks";
+            final int count = 300;
+            final int large = count / 2;
+            // Records are read from all nodes, span several chunks of 64 KB and one value is larger than chunk
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int i = 0; i < count; i++) {
+                final String key = prefix + String.format("%04d", i);
+                final byte[] value = randomBuffer(i == large ? 200 * 1024 : 1000).array();
+                assertEquals(201, upsert(i % 3, key, value, 1, 1).getStatus());
+                final byte[] chunk = (key + '\n').getBytes(StandardCharsets.UTF_8);
+                expected.write(chunk, 0, chunk.length);
+                expected.write(value, 0, value.length);
+            }
+
+            for (int node = 0; node < 3; node++) {
+                final Response response = range(node, prefix, null);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(expected.toByteArray(), response.getBody());
+            }
+        });
+    }
+
+    @NotNull
+    private static byte[] chunksOf(@NotNull final String... keyValues) {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            final byte[] chunk = (keyValues[i] + '\n' + keyValues[i + 1]).getBytes(StandardCharsets.UTF_8);
+            result.write(chunk, 0, chunk.length);
+        }
+        return result.toByteArray();
+    }
+}
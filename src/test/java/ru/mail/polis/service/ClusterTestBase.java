@@ -21,6 +21,7 @@ import one.nio.http.HttpClient;
 import one.nio.http.Response;
 import one.nio.net.ConnectionString;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.TestBase;
 
 import java.time.Duration;
@@ -132,4 +133,11 @@ abstract class ClusterTestBase extends TestBase {
             final int from) throws Exception {
         return client(node).put(path(key, ack, from), data);
     }
+
+    Response range(
+            final int node,
+            @NotNull final String start,
+            @Nullable final String end) throws Exception {
+        return client(node).get("/v0/entities?start=" + start + (end != null ? "&end=" + end : ""));
+    }
 }
@@ -0,0 +1,129 @@
+package ru.mail.polis.service;
+
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Three node cluster reading data from one replica and digests from the others.
+ */
+class DigestReadTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final int NODES = 3;
+    private final int[] ports = new int[NODES];
+    private final List<File> data = new ArrayList<>();
+    private final List<DAO> daos = new ArrayList<>();
+    private final List<Service> storages = new ArrayList<>();
+    private ClientConfig clientConfig;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final List<String> urls = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            ports[i] = randomPort();
+            urls.add(endpoint(ports[i]));
+        }
+        endpoints = new LinkedHashSet<>(urls);
+        clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.POOLED;
+        clientConfig.digestReads = true;
+        for (int i = 0; i < NODES; i++) {
+            final File directory = Files.createTempDirectory();
+            final DAO dao = DAOFactory.create(directory);
+            final Service storage = ServiceFactory.create(ports[i], dao, endpoints, clientConfig);
+            start(i, storage);
+            data.add(directory);
+            daos.add(dao);
+            storages.add(storage);
+        }
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        for (int i = 0; i < NODES; i++) {
+            stop(i, storages.get(i));
+            daos.get(i).close();
+            Files.recursiveDelete(data.get(i));
+        }
+        data.clear();
+        daos.clear();
+        storages.clear();
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void lifecycle() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            for (int i = 0; i < 10; i++) {
+                final String key = randomId();
+                final byte[] value = randomValue();
+                assertEquals(201, upsert(i % NODES, key, value, 3, 3).getStatus());
+
+                final Response response = get((i + 1) % NODES, key, 3, 3);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(value, response.getBody());
+
+                assertEquals(202, delete(i % NODES, key, 3, 3).getStatus());
+                assertEquals(404, get((i + 1) % NODES, key, 3, 3).getStatus());
+            }
+            assertEquals(404, get(0, randomId(), 2, 3).getStatus());
+        });
+    }
+
+    @Test
+    void staleDataReplica() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] stale = randomValue();
+            final byte[] fresh = randomValue();
+            assertEquals(201, upsert(0, key, stale, 3, 3).getStatus());
+
+            stop(2, storages.get(2));
+            assertEquals(201, upsert(0, key, fresh, 2, 3).getStatus());
+            storages.set(2, ServiceFactory.create(ports[2], daos.get(2), endpoints, clientConfig));
+            start(2, storages.get(2));
+
+            // Coordinator reads its stale data and fetches the fresh one by digest
+            final Response response = get(2, key, 3, 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(fresh, response.getBody());
+        });
+    }
+
+    @Test
+    void equalDataOfNewerDigest() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+            final ByteBuffer k = ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < NODES; i++) {
+                daos.get(i).repair(k, new Value(ByteBuffer.wrap(value), Value.State.PRESENT, i + 1L));
+            }
+
+            // Coordinator reads the oldest copy and takes it, since digests of the others are of equal data
+            final Response response = get(0, key, 3, 3);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+        });
+    }
+}
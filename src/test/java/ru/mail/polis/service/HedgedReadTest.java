@@ -0,0 +1,111 @@
+package ru.mail.polis.service;
+
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Three node cluster reading first from ack replicas only.
+ */
+class HedgedReadTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final int NODES = 3;
+    private final List<File> data = new ArrayList<>();
+    private final List<DAO> daos = new ArrayList<>();
+    private final List<Service> storages = new ArrayList<>();
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final List<String> urls = new ArrayList<>();
+        final int[] ports = new int[NODES];
+        for (int i = 0; i < NODES; i++) {
+            ports[i] = randomPort();
+            urls.add(endpoint(ports[i]));
+        }
+        endpoints = new LinkedHashSet<>(urls);
+        final ClientConfig clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.POOLED;
+        clientConfig.readFromAck = true;
+        clientConfig.hedgeDelayMs = 1;
+        for (int i = 0; i < NODES; i++) {
+            final File directory = Files.createTempDirectory();
+            final DAO dao = DAOFactory.create(directory);
+            final Service storage = ServiceFactory.create(ports[i], dao, endpoints, clientConfig);
+            start(i, storage);
+            data.add(directory);
+            daos.add(dao);
+            storages.add(storage);
+        }
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        for (int i = 0; i < NODES; i++) {
+            stop(i, storages.get(i));
+            daos.get(i).close();
+            Files.recursiveDelete(data.get(i));
+        }
+        data.clear();
+        daos.clear();
+        storages.clear();
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void lifecycle() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            for (int i = 0; i < 20; i++) {
+                final String key = randomId();
+                final byte[] value = randomValue();
+                assertEquals(201, upsert(i % NODES, key, value, 3, 3).getStatus());
+
+                final Response response = get((i + 1) % NODES, key, 2, 3);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(value, response.getBody());
+
+                assertEquals(202, delete(i % NODES, key, 3, 3).getStatus());
+                assertEquals(404, get((i + 1) % NODES, key, 2, 3).getStatus());
+            }
+        });
+    }
+
+    @Test
+    void failedReplicaIsReplaced() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final List<String> keys = new ArrayList<>();
+            final List<byte[]> values = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                keys.add(randomId());
+                values.add(randomValue());
+                assertEquals(201, upsert(0, keys.get(i), values.get(i), 3, 3).getStatus());
+            }
+
+            stop(2, storages.get(2));
+
+            for (int i = 0; i < keys.size(); i++) {
+                final Response response = get(i % 2, keys.get(i), 2, 3);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(values.get(i), response.getBody());
+            }
+            assertEquals(504, get(0, keys.get(0), 3, 3).getStatus());
+        });
+    }
+}
@@ -0,0 +1,134 @@
+package ru.mail.polis.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Two node cluster replaying writes missed by stopped node.
+ */
+class HintedHandoffTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private int port0;
+    private int port1;
+    private File data0;
+    private File data1;
+    private File hints;
+    private DAO dao0;
+    private DAO dao1;
+    private Service storage0;
+    private Service storage1;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        port0 = randomPort();
+        port1 = randomPort();
+        endpoints = new LinkedHashSet<>(Arrays.asList(endpoint(port0), endpoint(port1)));
+        hints = Files.createTempDirectory();
+        data0 = Files.createTempDirectory();
+        dao0 = DAOFactory.create(data0);
+        storage0 = ServiceFactory.create(port0, dao0, endpoints, clientConfig(Long.MAX_VALUE));
+        start(0, storage0);
+        data1 = Files.createTempDirectory();
+        dao1 = DAOFactory.create(data1);
+        storage1 = ServiceFactory.create(port1, dao1, endpoints, ClientConfig.defaults());
+        start(1, storage1);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        stop(0, storage0);
+        dao0.close();
+        Files.recursiveDelete(data0);
+        Files.recursiveDelete(hints);
+        stop(1, storage1);
+        dao1.close();
+        Files.recursiveDelete(data1);
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void replayAfterRestart() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String upserted = randomId();
+            final byte[] value = randomValue();
+            final String deleted = randomId();
+            assertEquals(201, upsert(0, deleted, randomValue(), 2, 2).getStatus());
+
+            stop(1, storage1);
+            assertEquals(201, upsert(0, upserted, value, 1, 2).getStatus());
+            assertEquals(202, delete(0, deleted, 1, 2).getStatus());
+
+            // Coordinator is restarted too, hints survive it
+            stop(0, storage0);
+            storage0 = ServiceFactory.create(port0, dao0, endpoints, clientConfig(Long.MAX_VALUE));
+            start(0, storage0);
+            storage1 = ServiceFactory.create(port1, dao1, endpoints, ClientConfig.defaults());
+            start(1, storage1);
+
+            final ByteBuffer key = BytesUtils.keyByteBuffer(upserted);
+            while (!present(key)) {
+                Thread.sleep(10);
+            }
+            assertEquals(ByteBuffer.wrap(value), dao1.get(key));
+            while (present(BytesUtils.keyByteBuffer(deleted))) {
+                Thread.sleep(10);
+            }
+        });
+    }
+
+    @Test
+    void expiredHintsAreDropped() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storage0);
+            storage0 = ServiceFactory.create(port0, dao0, endpoints, clientConfig(0));
+            start(0, storage0);
+
+            final String id = randomId();
+            stop(1, storage1);
+            assertEquals(201, upsert(0, id, randomValue(), 1, 2).getStatus());
+            storage1 = ServiceFactory.create(port1, dao1, endpoints, ClientConfig.defaults());
+            start(1, storage1);
+
+            // Hints are replayed every 10 ms
+            Thread.sleep(500);
+            assertThrows(NoSuchElementException.class, () -> dao1.get(BytesUtils.keyByteBuffer(id)));
+        });
+    }
+
+    private ClientConfig clientConfig(final long hintTtlMs) {
+        final ClientConfig clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.POOLED;
+        clientConfig.hintsDirectory = hints.toPath();
+        clientConfig.hintTtlMs = hintTtlMs;
+        clientConfig.hintReplayIntervalMs = 10;
+        return clientConfig;
+    }
+
+    private boolean present(final ByteBuffer key) throws IOException {
+        try {
+            dao1.get(key);
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+}
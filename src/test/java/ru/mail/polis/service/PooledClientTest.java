@@ -0,0 +1,91 @@
+package ru.mail.polis.service;
+
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.DAOFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Two node cluster proxying by pooled one-nio connections.
+ */
+class PooledClientTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private File data0;
+    private File data1;
+    private DAO dao0;
+    private DAO dao1;
+    private Service storage0;
+    private Service storage1;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final int port0 = randomPort();
+        final int port1 = randomPort();
+        endpoints = new LinkedHashSet<>(Arrays.asList(endpoint(port0), endpoint(port1)));
+        final ClientConfig clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.POOLED;
+        clientConfig.poolSize = 2;
+        data0 = Files.createTempDirectory();
+        dao0 = DAOFactory.create(data0);
+        storage0 = ServiceFactory.create(port0, dao0, endpoints, clientConfig);
+        start(0, storage0);
+        data1 = Files.createTempDirectory();
+        dao1 = DAOFactory.create(data1);
+        storage1 = ServiceFactory.create(port1, dao1, endpoints, clientConfig);
+        start(1, storage1);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        stop(0, storage0);
+        dao0.close();
+        Files.recursiveDelete(data0);
+        stop(1, storage1);
+        dao1.close();
+        Files.recursiveDelete(data1);
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void lifecycle() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            for (int i = 0; i < 10; i++) {
+                final String key = randomId();
+                final byte[] value = randomValue();
+
+                assertEquals(201, upsert(i % 2, key, value, 2, 2).getStatus());
+
+                final Response response = get((i + 1) % 2, key, 2, 2);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(value, response.getBody());
+
+                assertEquals(202, delete(i % 2, key, 2, 2).getStatus());
+                assertEquals(404, get((i + 1) % 2, key, 2, 2).getStatus());
+            }
+        });
+    }
+
+    @Test
+    void unreachable() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storage0);
+            assertEquals(504, get(1, randomId(), 2, 2).getStatus());
+            assertEquals(504, upsert(1, randomId(), randomValue(), 2, 2).getStatus());
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package ru.mail.polis.service;
+
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.DAOFactory;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Two node cluster repairing replica missed by writes on read.
+ */
+class ReadRepairTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private int port1;
+    private File data0;
+    private File data1;
+    private DAO dao0;
+    private DAO dao1;
+    private Service storage0;
+    private Service storage1;
+    private ClientConfig clientConfig;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final int port0 = randomPort();
+        port1 = randomPort();
+        endpoints = new LinkedHashSet<>(Arrays.asList(endpoint(port0), endpoint(port1)));
+        clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.POOLED;
+        clientConfig.readRepair = ClientConfig.ReadRepair.BLOCKING;
+        data0 = Files.createTempDirectory();
+        dao0 = DAOFactory.create(data0);
+        storage0 = ServiceFactory.create(port0, dao0, endpoints, clientConfig);
+        start(0, storage0);
+        data1 = Files.createTempDirectory();
+        dao1 = DAOFactory.create(data1);
+        storage1 = ServiceFactory.create(port1, dao1, endpoints, clientConfig);
+        start(1, storage1);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        stop(0, storage0);
+        dao0.close();
+        Files.recursiveDelete(data0);
+        stop(1, storage1);
+        dao1.close();
+        Files.recursiveDelete(data1);
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void missedUpsert() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+
+            stop(1, storage1);
+            assertEquals(201, upsert(0, key, value, 1, 2).getStatus());
+            storage1 = ServiceFactory.create(port1, dao1, endpoints, clientConfig);
+            start(1, storage1);
+
+            final Response response = get(1, key, 2, 2);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+
+            // The only replica left is repaired one
+            stop(0, storage0);
+            final Response repaired = get(1, key, 1, 2);
+            assertEquals(200, repaired.getStatus());
+            assertArrayEquals(value, repaired.getBody());
+        });
+    }
+
+    @Test
+    void missedDelete() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+
+            assertEquals(201, upsert(0, key, randomValue(), 2, 2).getStatus());
+            stop(1, storage1);
+            assertEquals(202, delete(0, key, 1, 2).getStatus());
+            storage1 = ServiceFactory.create(port1, dao1, endpoints, clientConfig);
+            start(1, storage1);
+
+            assertEquals(404, get(1, key, 2, 2).getStatus());
+
+            stop(0, storage0);
+            assertEquals(404, get(1, key, 1, 2).getStatus());
+        });
+    }
+
+    @Test
+    void equalDataIsNotRepaired() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = randomValue();
+            final ByteBuffer k = BytesUtils.keyByteBuffer(key);
+            dao0.repair(k, new Value(ByteBuffer.wrap(value), Value.State.PRESENT, 1L));
+            dao1.repair(k, new Value(ByteBuffer.wrap(value), Value.State.PRESENT, 2L));
+
+            final Response response = get(0, key, 2, 2);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+
+            // Older replica keeps its version, since its data is equal to the newest one
+            assertEquals(1L, version(dao0, key).getTimestamp());
+        });
+    }
+
+    private static Value version(final DAO dao,
+                                 final String id) {
+        final ByteBuffer key = BytesUtils.keyByteBuffer(id);
+        try (CloseableIterator<Cell> cells = dao.latestIterator(key)) {
+            return Value.fromIterator(key, cells);
+        }
+    }
+}
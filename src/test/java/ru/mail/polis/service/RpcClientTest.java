@@ -0,0 +1,161 @@
+package ru.mail.polis.service;
+
+import one.nio.http.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.Files;
+import ru.mail.polis.client.ClientConfig;
+import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.CloseableIterator;
+import ru.mail.polis.dao.DAOFactory;
+import ru.mail.polis.dao.storage.cell.Cell;
+import ru.mail.polis.dao.storage.cell.Value;
+import ru.mail.polis.utils.BytesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Two node cluster sending replica requests by binary protocol.
+ */
+class RpcClientTest extends ClusterTestBase {
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private File data0;
+    private File data1;
+    private DAO dao0;
+    private DAO dao1;
+    private Service storage0;
+    private Service storage1;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final int port0 = randomPort();
+        final int port1 = randomPort();
+        endpoints = new LinkedHashSet<>(Arrays.asList(endpoint(port0), endpoint(port1)));
+        final ClientConfig clientConfig = ClientConfig.defaults();
+        clientConfig.type = ClientConfig.Type.RPC;
+        data0 = Files.createTempDirectory();
+        dao0 = DAOFactory.create(data0);
+        storage0 = ServiceFactory.create(port0, dao0, endpoints, clientConfig);
+        start(0, storage0);
+        data1 = Files.createTempDirectory();
+        dao1 = DAOFactory.create(data1);
+        storage1 = ServiceFactory.create(port1, dao1, endpoints, clientConfig);
+        start(1, storage1);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        stop(0, storage0);
+        dao0.close();
+        Files.recursiveDelete(data0);
+        stop(1, storage1);
+        dao1.close();
+        Files.recursiveDelete(data1);
+        endpoints = Collections.emptySet();
+    }
+
+    @Test
+    void lifecycle() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            for (int i = 0; i < 10; i++) {
+                final String key = randomId();
+                final byte[] value = randomValue();
+
+                assertEquals(201, upsert(i % 2, key, value, 2, 2).getStatus());
+
+                final Response response = get((i + 1) % 2, key, 2, 2);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(value, response.getBody());
+
+                assertEquals(202, delete(i % 2, key, 2, 2).getStatus());
+                assertEquals(404, get((i + 1) % 2, key, 2, 2).getStatus());
+            }
+        });
+    }
+
+    @Test
+    void concurrentWrites() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            // Clients of test base are created before they are shared by threads
+            assertEquals(404, get(0, randomId(), 2, 2).getStatus());
+            assertEquals(404, get(1, randomId(), 2, 2).getStatus());
+
+            final Map<String, byte[]> entities = new HashMap<>();
+            for (int i = 0; i < 256; i++) {
+                entities.put(randomId(), randomValue());
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(16);
+            try {
+                final List<Future<Integer>> statuses = new ArrayList<>();
+                for (final Map.Entry<String, byte[]> entity : entities.entrySet()) {
+                    statuses.add(executor.submit(() -> upsert(0, entity.getKey(), entity.getValue(), 2, 2).getStatus()));
+                }
+                for (final Future<Integer> status : statuses) {
+                    assertEquals(201, status.get().intValue());
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            for (final Map.Entry<String, byte[]> entity : entities.entrySet()) {
+                final Response response = get(1, entity.getKey(), 1, 1);
+                assertEquals(200, response.getStatus());
+                assertArrayEquals(entity.getValue(), response.getBody());
+            }
+        });
+    }
+
+    @Test
+    void replicasStoreVersionOfCoordinator() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            for (int i = 0; i < 10; i++) {
+                final String key = randomId();
+                final byte[] value = randomValue();
+                assertEquals(201, upsert(i % 2, key, value, 2, 2).getStatus());
+                final Value written = version(dao0, key);
+                assertEquals(ByteBuffer.wrap(value), written.getData());
+                assertEquals(written.getTimestamp(), version(dao1, key).getTimestamp());
+
+                assertEquals(202, delete(i % 2, key, 2, 2).getStatus());
+                final Value removed = version(dao0, key);
+                assertEquals(Value.State.REMOVED, removed.getState());
+                assertEquals(removed.getTimestamp(), version(dao1, key).getTimestamp());
+            }
+        });
+    }
+
+    @Test
+    void unreachable() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            stop(0, storage0);
+            assertEquals(504, get(1, randomId(), 2, 2).getStatus());
+            assertEquals(504, upsert(1, randomId(), randomValue(), 2, 2).getStatus());
+        });
+    }
+
+    private static Value version(final DAO dao,
+                                 final String id) {
+        final ByteBuffer key = BytesUtils.keyByteBuffer(id);
+        try (CloseableIterator<Cell> cells = dao.latestIterator(key)) {
+            return Value.fromIterator(key, cells);
+        }
+    }
+}
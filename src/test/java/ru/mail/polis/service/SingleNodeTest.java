@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -152,6 +153,23 @@ class SingleNodeTest extends TestBase {
         });
     }
 
+    @Test
+    void insertLarge() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            final String key = randomId();
+            final byte[] value = new byte[50 * 1024];
+            ThreadLocalRandom.current().nextBytes(value);
+
+            // Insert
+            assertEquals(201, upsert(key, value).getStatus());
+
+            // Body is written from storage buffer
+            final Response response = get(key);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(value, response.getBody());
+        });
+    }
+
     @Test
     void insertEmpty() {
         assertTimeoutPreemptively(TIMEOUT, () -> {
@@ -29,6 +29,7 @@ import ru.mail.polis.TestBase;
 import ru.mail.polis.dao.DAO;
 import ru.mail.polis.dao.DAOFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.time.Duration;
@@ -225,4 +226,28 @@ class SingleRangeTest extends TestBase {
             assertEquals(0, response.getBody().length);
         });
     }
+
+    @Test
+    void manyChunks() {
+        final String prefix = "chunks";
+        final int count = 300;
+        final int large = count / 2;
+
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            // Records span several chunks of 64 KB, one value is larger than chunk
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int i = 0; i < count; i++) {
+                final String key = prefix + String.format("%04d", i);
+                final byte[] value = randomBuffer(i == large ? 200 * 1024 : 1000).array();
+                assertEquals(201, upsert(key, value).getStatus());
+                final byte[] chunk = chunkOf(key, "");
+                expected.write(chunk, 0, chunk.length);
+                expected.write(value, 0, value.length);
+            }
+
+            final Response response = range(prefix, null);
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(expected.toByteArray(), response.getBody());
+        });
+    }
 }
@@ -0,0 +1,82 @@
+package ru.mail.polis.service.hint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.dao.storage.cell.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Incremental replay of hint log.
+ */
+class HintLogTest {
+    private static final int HINTS = 100;
+
+    @Test
+    void resumeFromSavedOffset(@TempDir File directory) throws IOException {
+        final Path file = directory.toPath().resolve("node" + HintLog.SUFFIX);
+        try (HintLog log = new HintLog(file)) {
+            for (int i = 0; i < HINTS; i++) {
+                log.append(hint(i));
+            }
+            for (int i = 0; i < HINTS / 2; i++) {
+                assertEquals("id" + i, log.peek().getId());
+                log.advance();
+            }
+            // Not sent hint is read again
+            assertEquals("id" + HINTS / 2, log.peek().getId());
+            log.save();
+        }
+
+        try (HintLog log = new HintLog(file)) {
+            // Appended while replay goes to the next replay
+            log.append(hint(HINTS));
+            for (int i = HINTS / 2; i < HINTS; i++) {
+                final Hint hint = log.peek();
+                assertEquals("id" + i, hint.getId());
+                assertEquals(data(i), hint.getValue().getData());
+                log.advance();
+            }
+            assertNull(log.peek());
+            assertEquals("id" + HINTS, log.peek().getId());
+            log.advance();
+            assertNull(log.peek());
+            assertNull(log.peek());
+        }
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    void tornRecordIsDropped(@TempDir File directory) throws IOException {
+        final Path file = directory.toPath().resolve("node" + HintLog.SUFFIX);
+        try (HintLog log = new HintLog(file)) {
+            log.append(hint(0));
+            log.append(hint(1));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try (HintLog log = new HintLog(file)) {
+            assertEquals("id0", log.peek().getId());
+            log.advance();
+            assertNull(log.peek());
+        }
+    }
+
+    private static Hint hint(final int i) {
+        return new Hint("", "id" + i, new Value(data(i), Value.State.PRESENT, i));
+    }
+
+    private static ByteBuffer data(final int i) {
+        return ByteBuffer.wrap(("value" + i).getBytes(StandardCharsets.UTF_8));
+    }
+}
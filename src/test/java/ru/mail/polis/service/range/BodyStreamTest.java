@@ -0,0 +1,80 @@
+package ru.mail.polis.service.range;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Body of range response read with flow control and read timeout.
+ */
+class BodyStreamTest {
+    private static final long TIMEOUT_MS = 100;
+
+    @Test
+    void nextPartIsRequestedWhenReadOne() throws IOException {
+        final BodyStream body = new BodyStream(TIMEOUT_MS);
+        final Subscription subscription = new Subscription();
+        body.onSubscribe(subscription);
+        assertEquals(1, subscription.requested.get());
+
+        body.onNext(List.of(ByteBuffer.allocate(Integer.BYTES).putInt(0, 42), ByteBuffer.allocate(0)));
+        final DataInputStream in = new DataInputStream(body);
+        assertEquals(42, in.readInt());
+        assertEquals(2, subscription.requested.get());
+
+        body.onNext(List.of(ByteBuffer.wrap(new byte[]{1})));
+        body.onComplete();
+        assertEquals(1, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void stalledBodyTimesOut() {
+        final BodyStream body = new BodyStream(TIMEOUT_MS);
+        body.onSubscribe(new Subscription());
+        assertThrows(SocketTimeoutException.class, body::read);
+    }
+
+    @Test
+    void brokenBodyFails() {
+        final BodyStream body = new BodyStream(TIMEOUT_MS);
+        body.onSubscribe(new Subscription());
+        body.onError(new IOException("Connection reset"));
+        assertThrows(IOException.class, body::read);
+    }
+
+    @Test
+    void closeCancelsBody() {
+        final BodyStream body = new BodyStream(TIMEOUT_MS);
+        final Subscription subscription = new Subscription();
+        body.onSubscribe(subscription);
+        body.close();
+        assertTrue(subscription.cancelled.get());
+    }
+
+    private static final class Subscription implements Flow.Subscription {
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public void request(final long n) {
+            requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.mail.polis.service.rest.service;
+
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.service.topology.node.ServiceNode;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Time windows of replica latencies.
+ */
+class ReplicaLatenciesTest {
+    private static final long DEFAULT_DELAY_MS = 7;
+    private static final long WINDOW_MS = 500;
+    private static final int SAMPLES = 100;
+
+    @Test
+    void defaultUntilEnoughSamples() throws MalformedURLException {
+        final ReplicaLatencies latencies = new ReplicaLatencies(99, DEFAULT_DELAY_MS, WINDOW_MS);
+        final ServiceNode node = node();
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(DEFAULT_DELAY_MS), latencies.hedgeDelayMicros(node));
+        record(latencies, node, SAMPLES - 1, 1);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(DEFAULT_DELAY_MS), latencies.hedgeDelayMicros(node));
+        record(latencies, node, 1, 1);
+        assertTrue(latencies.hedgeDelayMicros(node) < TimeUnit.MILLISECONDS.toMicros(2));
+    }
+
+    @Test
+    void slowLatenciesAreForgotten() throws MalformedURLException, InterruptedException {
+        final ReplicaLatencies latencies = new ReplicaLatencies(99, DEFAULT_DELAY_MS, WINDOW_MS);
+        final ServiceNode node = node();
+        record(latencies, node, SAMPLES, 100);
+        assertTrue(latencies.hedgeDelayMicros(node) >= TimeUnit.MILLISECONDS.toMicros(50));
+
+        // The previous window is still counted
+        Thread.sleep(WINDOW_MS);
+        record(latencies, node, SAMPLES, 1);
+        assertTrue(latencies.hedgeDelayMicros(node) >= TimeUnit.MILLISECONDS.toMicros(50));
+
+        Thread.sleep(WINDOW_MS);
+        record(latencies, node, SAMPLES, 1);
+        assertTrue(latencies.hedgeDelayMicros(node) < TimeUnit.MILLISECONDS.toMicros(2));
+    }
+
+    @Test
+    void idleReplicaStartsOver() throws MalformedURLException, InterruptedException {
+        final ReplicaLatencies latencies = new ReplicaLatencies(99, DEFAULT_DELAY_MS, WINDOW_MS);
+        final ServiceNode node = node();
+        record(latencies, node, SAMPLES, 100);
+
+        Thread.sleep(2 * WINDOW_MS);
+        record(latencies, node, 1, 1);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(DEFAULT_DELAY_MS), latencies.hedgeDelayMicros(node));
+    }
+
+    private static void record(final ReplicaLatencies latencies,
+                               final ServiceNode node,
+                               final int count,
+                               final long millis) {
+        for (int i = 0; i < count; i++) {
+            latencies.record(node, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    private static ServiceNode node() throws MalformedURLException {
+        return new ServiceNode(new URL("http://localhost:8080"));
+    }
+}